@@ -0,0 +1,98 @@
+-- Insert throughput and index size of three message keys:
+--   messages_v4_char  random UUIDv4 as CHAR(36), the schema before time-ordered ids
+--   messages_v4       random UUIDv4 as BINARY(16)
+--   messages_v7       time-ordered UUIDv7 as BINARY(16), the schema now
+-- v4_char against v7 is the change as shipped; v4 splits it into the cost of the
+-- wider key and the cost of random insert order.
+-- Run on a scratch schema of the Docker MySQL (port 3307):
+--   mysql -u root -p -P 3307 -e "CREATE DATABASE IF NOT EXISTS id_bench"
+--   mysql -u root -p -P 3307 id_bench < BENCHMARK_MESSAGE_IDS.sql
+-- Set @rows to the table size you want to measure, e.g. 5000000.
+-- Keep innodb_buffer_pool_size smaller than the table so page splits and
+-- random I/O show up the way they do in production.
+--
+-- Results (fill in with the MySQL version, buffer pool size and @rows of the run):
+--   id_kind        rows_per_second   data_mb   secondary_index_mb
+--   uuid v4 char   -                 -         -
+--   uuid v4        -                 -         -
+--   uuid v7        -                 -         -
+-- Not yet run: the environment this was written in has no MySQL.
+
+SET @rows = 5000000;
+
+DROP TABLE IF EXISTS messages_v4_char, messages_v4, messages_v7;
+CREATE TABLE messages_v4_char (
+    id CHAR(36) PRIMARY KEY,
+    chat_room_id CHAR(36) NOT NULL,
+    sender_id CHAR(36) NOT NULL,
+    receiver_id CHAR(36) NOT NULL,
+    content TEXT NOT NULL,
+    timestamp DATETIME(6) NOT NULL,
+    status VARCHAR(20) NOT NULL,
+    message_type VARCHAR(20),
+    KEY idx_room (chat_room_id, timestamp)
+);
+CREATE TABLE messages_v4 (
+    id BINARY(16) PRIMARY KEY,
+    chat_room_id BINARY(16) NOT NULL,
+    sender_id BINARY(16) NOT NULL,
+    receiver_id BINARY(16) NOT NULL,
+    content TEXT NOT NULL,
+    timestamp DATETIME(6) NOT NULL,
+    status VARCHAR(20) NOT NULL,
+    message_type VARCHAR(20),
+    KEY idx_room (chat_room_id, timestamp)
+);
+CREATE TABLE messages_v7 LIKE messages_v4;
+
+DROP PROCEDURE IF EXISTS fill;
+DELIMITER //
+CREATE PROCEDURE fill(IN id_kind VARCHAR(10))
+BEGIN
+    DECLARE i INT DEFAULT 0;
+    DECLARE ms BIGINT DEFAULT FLOOR(UNIX_TIMESTAMP(NOW(3)) * 1000);
+    DECLARE started DATETIME(6) DEFAULT NOW(6);
+    WHILE i < @rows DO
+        START TRANSACTION;
+        REPEAT
+            SET i = i + 1;
+            CASE id_kind
+                WHEN 'v7' THEN
+                    INSERT INTO messages_v7 VALUES (
+                        UNHEX(CONCAT(LPAD(HEX(ms + i), 12, '0'), '7', SUBSTR(MD5(i), 1, 3), '8', SUBSTR(MD5(i), 5, 15))),
+                        UUID_TO_BIN(UUID()), UUID_TO_BIN(UUID()), UUID_TO_BIN(UUID()),
+                        'benchmark message body', NOW(6), 'DELIVERED', 'TEXT');
+                WHEN 'v4' THEN
+                    INSERT INTO messages_v4 VALUES (
+                        RANDOM_BYTES(16),
+                        UUID_TO_BIN(UUID()), UUID_TO_BIN(UUID()), UUID_TO_BIN(UUID()),
+                        'benchmark message body', NOW(6), 'DELIVERED', 'TEXT');
+                ELSE
+                    -- Same random bits as v4, in the text form Hibernate wrote to CHAR(36)
+                    INSERT INTO messages_v4_char VALUES (
+                        BIN_TO_UUID(RANDOM_BYTES(16)),
+                        UUID(), UUID(), UUID(),
+                        'benchmark message body', NOW(6), 'DELIVERED', 'TEXT');
+            END CASE;
+        UNTIL i % 1000 = 0 OR i >= @rows END REPEAT;
+        COMMIT;
+    END WHILE;
+    SELECT CASE id_kind WHEN 'v7' THEN 'uuid v7' WHEN 'v4' THEN 'uuid v4' ELSE 'uuid v4 char' END AS id_kind,
+           @rows AS rows_inserted,
+           TIMESTAMPDIFF(MICROSECOND, started, NOW(6)) / 1000000 AS seconds,
+           @rows / (TIMESTAMPDIFF(MICROSECOND, started, NOW(6)) / 1000000) AS rows_per_second;
+END //
+DELIMITER ;
+
+CALL fill('v4_char');
+CALL fill('v4');
+CALL fill('v7');
+ANALYZE TABLE messages_v4_char, messages_v4, messages_v7;
+
+SELECT table_name,
+       ROUND(data_length / 1024 / 1024) AS data_mb,
+       ROUND(index_length / 1024 / 1024) AS secondary_index_mb
+FROM information_schema.tables
+WHERE table_schema = DATABASE() AND table_name IN ('messages_v4_char', 'messages_v4', 'messages_v7');
+
+DROP PROCEDURE fill;
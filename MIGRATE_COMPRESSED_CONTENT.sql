@@ -0,0 +1,31 @@
+-- Allows message bodies to be stored compressed (see MessageBodyCodec).
+-- Connect to MySQL: mysql -u root -p -P 3307
+-- Then: USE chatapp;
+-- Safe to run while the backend is up, and safe to run again.
+
+-- Step 1: schema. Hibernate's ddl-auto=update adds the column but never relaxes NOT NULL,
+-- so run this even if the backend has already started with the new entity.
+-- MySQL 8 has no ADD COLUMN IF NOT EXISTS: the column is added only when missing.
+SET @add_column = (SELECT IF(COUNT(*) = 0,
+                             'ALTER TABLE messages ADD COLUMN content_compressed BLOB',
+                             'DO 0')
+                   FROM information_schema.COLUMNS
+                   WHERE TABLE_SCHEMA = DATABASE()
+                     AND TABLE_NAME = 'messages'
+                     AND COLUMN_NAME = 'content_compressed');
+PREPARE stmt FROM @add_column;
+EXECUTE stmt;
+DEALLOCATE PREPARE stmt;
+
+ALTER TABLE messages MODIFY content TEXT NULL;
+
+-- Existing rows stay plain TEXT and are read as before; only new long bodies are compressed.
+-- Share of rows and bytes held compressed:
+SELECT COUNT(*)                            AS messages,
+       SUM(content_compressed IS NOT NULL) AS compressed,
+       SUM(LENGTH(content))                AS plain_bytes,
+       SUM(LENGTH(content_compressed))     AS compressed_bytes
+FROM messages;
+
+-- Step 2: reclaim space once a large share of rows is compressed
+-- OPTIMIZE TABLE messages;
@@ -0,0 +1,46 @@
+-- Backfills per-room sequence numbers for messages written before messages.seq existed.
+-- Connect to MySQL: mysql -u root -p -P 3307
+-- Then: USE chatapp;
+-- Run with the backend stopped; new messages continue from chat_rooms.last_seq.
+-- Safe to run again, including after ddl-auto=update has already added the columns.
+
+-- MySQL 8 has no ADD COLUMN IF NOT EXISTS: each column is added only when missing.
+SET @ddl = (SELECT IF(COUNT(*) = 0,
+                      'ALTER TABLE chat_rooms ADD COLUMN last_seq BIGINT NOT NULL DEFAULT 0',
+                      'DO 0')
+            FROM information_schema.COLUMNS
+            WHERE TABLE_SCHEMA = DATABASE() AND TABLE_NAME = 'chat_rooms' AND COLUMN_NAME = 'last_seq');
+PREPARE stmt FROM @ddl;
+EXECUTE stmt;
+DEALLOCATE PREPARE stmt;
+
+SET @ddl = (SELECT IF(COUNT(*) = 0,
+                      'ALTER TABLE messages ADD COLUMN seq BIGINT',
+                      'DO 0')
+            FROM information_schema.COLUMNS
+            WHERE TABLE_SCHEMA = DATABASE() AND TABLE_NAME = 'messages' AND COLUMN_NAME = 'seq');
+PREPARE stmt FROM @ddl;
+EXECUTE stmt;
+DEALLOCATE PREPARE stmt;
+
+-- Number existing rows in history order, room by room
+UPDATE messages m
+    JOIN (SELECT id,
+                 ROW_NUMBER() OVER (PARTITION BY chat_room_id ORDER BY timestamp, id) AS rn
+          FROM messages) numbered ON numbered.id = m.id
+SET m.seq = numbered.rn
+WHERE m.seq IS NULL;
+
+UPDATE chat_rooms cr
+SET cr.last_seq = COALESCE((SELECT MAX(m.seq) FROM messages m WHERE m.chat_room_id = cr.id), 0);
+
+-- The same non-unique index the entity declares (not UNIQUE, so PARTITION_MESSAGES.sql still applies).
+-- ddl-auto=update creates it on startup; it is added here only if the backend has not run yet.
+SET @ddl = (SELECT IF(COUNT(*) = 0,
+                      'ALTER TABLE messages ADD INDEX idx_messages_room_seq (chat_room_id, seq)',
+                      'DO 0')
+            FROM information_schema.STATISTICS
+            WHERE TABLE_SCHEMA = DATABASE() AND TABLE_NAME = 'messages' AND INDEX_NAME = 'idx_messages_room_seq');
+PREPARE stmt FROM @ddl;
+EXECUTE stmt;
+DEALLOCATE PREPARE stmt;
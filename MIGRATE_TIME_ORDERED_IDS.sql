@@ -0,0 +1,154 @@
+-- Migrates chat_rooms, messages and appointments to time-ordered BINARY(16) ids.
+-- Connect to MySQL: mysql -u root -p -P 3307
+-- Then: USE chatapp;
+-- Take a backup first and run with the backend stopped, after OutboxRelay has drained
+-- message_outbox. Run it before PARTITION_MESSAGES.sql.
+
+-- ------------------------------------------------------------------
+-- Step 0: drop the foreign keys Hibernate created between these tables.
+-- Both steps below rewrite key columns, which MySQL refuses while a constraint
+-- covers them. ddl-auto=update adds the constraints back on the next start.
+-- ------------------------------------------------------------------
+DROP PROCEDURE IF EXISTS drop_foreign_keys;
+DELIMITER //
+CREATE PROCEDURE drop_foreign_keys()
+BEGIN
+    DECLARE done BOOLEAN DEFAULT FALSE;
+    DECLARE tbl, fk VARCHAR(64);
+    DECLARE fks CURSOR FOR
+        SELECT TABLE_NAME, CONSTRAINT_NAME
+        FROM information_schema.REFERENTIAL_CONSTRAINTS
+        WHERE CONSTRAINT_SCHEMA = DATABASE()
+          AND REFERENCED_TABLE_NAME IN ('users', 'chat_rooms', 'messages', 'appointments',
+                                        'doctors', 'doctor_availability', 'human_agents');
+    DECLARE CONTINUE HANDLER FOR NOT FOUND SET done = TRUE;
+    OPEN fks;
+    next_fk: LOOP
+        FETCH fks INTO tbl, fk;
+        IF done THEN
+            LEAVE next_fk;
+        END IF;
+        SET @ddl = CONCAT('ALTER TABLE `', tbl, '` DROP FOREIGN KEY `', fk, '`');
+        PREPARE stmt FROM @ddl;
+        EXECUTE stmt;
+        DEALLOCATE PREPARE stmt;
+    END LOOP;
+    CLOSE fks;
+END //
+DELIMITER ;
+CALL drop_foreign_keys();
+DROP PROCEDURE drop_foreign_keys;
+
+-- ------------------------------------------------------------------
+-- Step 1: every id and id reference the entities map becomes BINARY(16).
+-- Tables from the old schema.sql hold CHAR(36) text; Hibernate-created ones are
+-- already binary and are left alone. Converting in place keeps keys and indexes.
+-- ------------------------------------------------------------------
+DROP PROCEDURE IF EXISTS to_binary_id;
+DELIMITER //
+CREATE PROCEDURE to_binary_id(tbl VARCHAR(64), col VARCHAR(64))
+BEGIN
+    IF EXISTS (SELECT 1 FROM information_schema.COLUMNS
+               WHERE TABLE_SCHEMA = DATABASE() AND TABLE_NAME = tbl AND COLUMN_NAME = col
+                 AND DATA_TYPE IN ('char', 'varchar')) THEN
+        -- Keep the text as bytes, replace it with the 16-byte form, then fix the width
+        SET @ddl = CONCAT('ALTER TABLE `', tbl, '` MODIFY `', col, '` VARBINARY(36)');
+        PREPARE stmt FROM @ddl;
+        EXECUTE stmt;
+        DEALLOCATE PREPARE stmt;
+        SET @dml = CONCAT('UPDATE `', tbl, '` SET `', col, '` = UUID_TO_BIN(`', col, '`) WHERE `', col, '` IS NOT NULL');
+        PREPARE stmt FROM @dml;
+        EXECUTE stmt;
+        DEALLOCATE PREPARE stmt;
+        SET @ddl = CONCAT('ALTER TABLE `', tbl, '` MODIFY `', col, '` BINARY(16)');
+        PREPARE stmt FROM @ddl;
+        EXECUTE stmt;
+        DEALLOCATE PREPARE stmt;
+    END IF;
+END //
+DELIMITER ;
+
+CALL to_binary_id('users', 'id');
+CALL to_binary_id('chat_rooms', 'id');
+CALL to_binary_id('chat_rooms', 'user1_id');
+CALL to_binary_id('chat_rooms', 'user2_id');
+CALL to_binary_id('messages', 'id');
+CALL to_binary_id('messages', 'chat_room_id');
+CALL to_binary_id('messages', 'sender_id');
+CALL to_binary_id('messages', 'receiver_id');
+CALL to_binary_id('appointments', 'id');
+CALL to_binary_id('appointments', 'doctor_id');
+CALL to_binary_id('appointments', 'patient_id');
+CALL to_binary_id('appointments', 'chat_room_id');
+CALL to_binary_id('doctors', 'id');
+CALL to_binary_id('doctor_availability', 'id');
+CALL to_binary_id('doctor_availability', 'doctor_id');
+CALL to_binary_id('human_agents', 'id');
+CALL to_binary_id('human_agents', 'current_chat_room_id');
+DROP PROCEDURE to_binary_id;
+
+-- Must be empty: a row here means a column above was not converted
+SELECT TABLE_NAME, COLUMN_NAME, COLUMN_TYPE
+FROM information_schema.COLUMNS
+WHERE TABLE_SCHEMA = DATABASE()
+  AND (COLUMN_NAME = 'id' OR COLUMN_NAME LIKE '%\_id')
+  AND TABLE_NAME IN ('users', 'chat_rooms', 'messages', 'appointments',
+                     'doctors', 'doctor_availability', 'human_agents')
+  AND COLUMN_TYPE <> 'binary(16)';
+
+-- ------------------------------------------------------------------
+-- Step 2: re-key existing rows with time-ordered ids.
+-- The 48-bit millisecond prefix comes from the row's own time, so old rows
+-- sort before new ones. The remaining bits come from MD5 of the old id.
+-- Parents and children are re-keyed in separate statements, so the checks stay
+-- off until all of them agree again (Step 0 dropped the constraints already;
+-- this covers any added by hand).
+-- ------------------------------------------------------------------
+DROP FUNCTION IF EXISTS uuid7_from;
+DELIMITER //
+CREATE FUNCTION uuid7_from(ts DATETIME(6), seed BINARY(16)) RETURNS BINARY(16) DETERMINISTIC
+BEGIN
+    DECLARE h CHAR(32) DEFAULT MD5(seed);
+    RETURN UNHEX(CONCAT(
+            LPAD(HEX(FLOOR(UNIX_TIMESTAMP(ts) * 1000)), 12, '0'),
+            '7', SUBSTR(h, 1, 3),
+            HEX(8 | (CONV(SUBSTR(h, 4, 1), 16, 10) & 3)), SUBSTR(h, 5, 15)));
+END //
+DELIMITER ;
+
+SET FOREIGN_KEY_CHECKS = 0;
+
+-- Chat rooms have no creation time of their own; use their first message
+ALTER TABLE chat_rooms ADD COLUMN new_id BINARY(16);
+UPDATE chat_rooms cr
+SET cr.new_id = uuid7_from(
+        COALESCE((SELECT MIN(m.timestamp) FROM messages m WHERE m.chat_room_id = cr.id), NOW(6)),
+        cr.id);
+UPDATE messages m JOIN chat_rooms cr ON m.chat_room_id = cr.id SET m.chat_room_id = cr.new_id;
+UPDATE appointments a JOIN chat_rooms cr ON a.chat_room_id = cr.id SET a.chat_room_id = cr.new_id;
+UPDATE human_agents h JOIN chat_rooms cr ON h.current_chat_room_id = cr.id SET h.current_chat_room_id = cr.new_id;
+UPDATE chat_rooms SET id = new_id;
+ALTER TABLE chat_rooms DROP COLUMN new_id;
+
+-- Only message_client_ids points at message ids (if it exists yet); nothing points at
+-- appointment ids. Changing the primary key rebuilds the clustered index in time order.
+ALTER TABLE messages ADD COLUMN new_id BINARY(16);
+UPDATE messages SET new_id = uuid7_from(timestamp, id);
+SET @dml = (SELECT IF(COUNT(*) > 0,
+                      'UPDATE message_client_ids k JOIN messages m ON k.message_id = m.id SET k.message_id = m.new_id',
+                      'DO 0')
+            FROM information_schema.TABLES
+            WHERE TABLE_SCHEMA = DATABASE() AND TABLE_NAME = 'message_client_ids');
+PREPARE stmt FROM @dml;
+EXECUTE stmt;
+DEALLOCATE PREPARE stmt;
+UPDATE messages SET id = new_id;
+ALTER TABLE messages DROP COLUMN new_id;
+
+UPDATE appointments SET id = uuid7_from(created_at, id);
+
+SET FOREIGN_KEY_CHECKS = 1;
+
+OPTIMIZE TABLE messages, chat_rooms, appointments;
+
+DROP FUNCTION uuid7_from;
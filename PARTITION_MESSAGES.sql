@@ -0,0 +1,57 @@
+-- Splits the messages table into monthly partitions (see MessagePartitionRepository).
+-- Connect to MySQL: mysql -u root -p -P 3307
+-- Then: USE chatapp;
+-- Take a backup first and run with the backend stopped; step 3 rebuilds the table.
+-- Afterwards MessageArchiver adds next months' partitions and drops archived ones.
+
+-- ------------------------------------------------------------------
+-- Step 1: partitioned InnoDB tables cannot have foreign keys.
+-- List them, then drop each one:
+-- ------------------------------------------------------------------
+SELECT CONSTRAINT_NAME
+FROM information_schema.TABLE_CONSTRAINTS
+WHERE TABLE_SCHEMA = DATABASE() AND TABLE_NAME = 'messages' AND CONSTRAINT_TYPE = 'FOREIGN KEY';
+-- ALTER TABLE messages DROP FOREIGN KEY <constraint_name>;
+
+-- ------------------------------------------------------------------
+-- Step 2: every unique key must contain the partitioning column.
+-- The primary key becomes (id, timestamp). The seq index (idx_messages_room_seq) is
+-- already a plain index; a unique seq key left by an earlier backfill is dropped.
+-- ------------------------------------------------------------------
+ALTER TABLE messages
+    MODIFY timestamp DATETIME(6) NOT NULL,
+    DROP PRIMARY KEY,
+    ADD PRIMARY KEY (id, timestamp);
+SET @ddl = (SELECT IF(COUNT(*) > 0, 'ALTER TABLE messages DROP INDEX uk_messages_room_seq', 'DO 0')
+            FROM information_schema.STATISTICS
+            WHERE TABLE_SCHEMA = DATABASE() AND TABLE_NAME = 'messages' AND INDEX_NAME = 'uk_messages_room_seq');
+PREPARE stmt FROM @ddl;
+EXECUTE stmt;
+DEALLOCATE PREPARE stmt;
+
+-- ------------------------------------------------------------------
+-- Step 3: one partition per month, named pYYYYMM, plus pmax for anything newer.
+-- Adjust the months: start at the oldest month you want to archive by DROP PARTITION;
+-- older rows go to p_old and are archived with batched DELETEs instead.
+-- ------------------------------------------------------------------
+ALTER TABLE messages PARTITION BY RANGE COLUMNS(timestamp) (
+    PARTITION p_old   VALUES LESS THAN ('2026-01-01'),
+    PARTITION p202601 VALUES LESS THAN ('2026-02-01'),
+    PARTITION p202602 VALUES LESS THAN ('2026-03-01'),
+    PARTITION p202603 VALUES LESS THAN ('2026-04-01'),
+    PARTITION p202604 VALUES LESS THAN ('2026-05-01'),
+    PARTITION p202605 VALUES LESS THAN ('2026-06-01'),
+    PARTITION p202606 VALUES LESS THAN ('2026-07-01'),
+    PARTITION p202607 VALUES LESS THAN ('2026-08-01'),
+    PARTITION p202608 VALUES LESS THAN ('2026-09-01'),
+    PARTITION p202609 VALUES LESS THAN ('2026-10-01'),
+    PARTITION p202610 VALUES LESS THAN ('2026-11-01'),
+    PARTITION p202611 VALUES LESS THAN ('2026-12-01'),
+    PARTITION pmax    VALUES LESS THAN (MAXVALUE)
+);
+
+-- Verify: history queries for recent pages should only touch the newest partitions
+SELECT PARTITION_NAME, TABLE_ROWS
+FROM information_schema.PARTITIONS
+WHERE TABLE_SCHEMA = DATABASE() AND TABLE_NAME = 'messages';
+-- EXPLAIN SELECT * FROM messages WHERE chat_room_id = UUID_TO_BIN('...') AND timestamp >= NOW() - INTERVAL 7 DAY;
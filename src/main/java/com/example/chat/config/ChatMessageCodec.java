@@ -0,0 +1,167 @@
+package com.example.chat.config;
+
+import com.example.chat.dto.ChatMessageDto;
+import com.example.chat.entity.MessageStatus;
+import com.example.chat.entity.MessageType;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.apache.kafka.common.errors.SerializationException;
+import org.springframework.kafka.support.JacksonUtils;
+
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.time.DateTimeException;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.UUID;
+
+/**
+ * Wire format of chat.messages record values. Version 1:
+ * <pre>
+ *   version       1 byte
+ *   present       2 bytes, bit i set when field i follows
+ *   0 id, 1 chatRoomId, 2 clientMessageId, 4 from, 5 to   16 raw bytes each
+ *   3 seq                                                  unsigned varint
+ *   6 timestamp        varint UTC epoch second, then varint nano-of-second
+ *   7 status, 8 messageType                                enum ordinal, 1 byte
+ *   9 content                                              varint length, UTF-8
+ * </pre>
+ * Ordinals are on the wire, so new MessageStatus / MessageType constants go at the end.
+ * Fields can be added behind new bits; anything that changes existing ones needs a new
+ * version byte. Values written by the old JsonSerializer start with '{' and still decode.
+ */
+public final class ChatMessageCodec {
+
+    public static final byte V1 = 1;
+
+    private static final int ID = 1, CHAT_ROOM_ID = 1 << 1, CLIENT_MESSAGE_ID = 1 << 2, SEQ = 1 << 3,
+            FROM = 1 << 4, TO = 1 << 5, TIMESTAMP = 1 << 6, STATUS = 1 << 7, MESSAGE_TYPE = 1 << 8, CONTENT = 1 << 9;
+
+    private static final MessageStatus[] STATUSES = MessageStatus.values();
+    private static final MessageType[] TYPES = MessageType.values();
+
+    // Only for records queued before the switch to this format
+    private static final ObjectMapper LEGACY_JSON = JacksonUtils.enhancedObjectMapper();
+
+    private ChatMessageCodec() {
+    }
+
+    public static byte[] encode(ChatMessageDto dto) {
+        byte[] content = dto.getContent() == null ? null : dto.getContent().getBytes(StandardCharsets.UTF_8);
+        long epochSecond = dto.getTimestamp() == null ? 0 : dto.getTimestamp().toEpochSecond(ZoneOffset.UTC);
+
+        int present = 0;
+        int size = 3;
+        if (dto.getId() != null) { present |= ID; size += 16; }
+        if (dto.getChatRoomId() != null) { present |= CHAT_ROOM_ID; size += 16; }
+        if (dto.getClientMessageId() != null) { present |= CLIENT_MESSAGE_ID; size += 16; }
+        if (dto.getSeq() != null) { present |= SEQ; size += varSize(dto.getSeq()); }
+        if (dto.getFrom() != null) { present |= FROM; size += 16; }
+        if (dto.getTo() != null) { present |= TO; size += 16; }
+        if (dto.getTimestamp() != null) {
+            present |= TIMESTAMP;
+            size += varSize(epochSecond) + varSize(dto.getTimestamp().getNano());
+        }
+        if (dto.getStatus() != null) { present |= STATUS; size += 1; }
+        if (dto.getMessageType() != null) { present |= MESSAGE_TYPE; size += 1; }
+        if (content != null) { present |= CONTENT; size += varSize(content.length) + content.length; }
+
+        ByteBuffer out = ByteBuffer.allocate(size);
+        out.put(V1);
+        out.putShort((short) present);
+        if (dto.getId() != null) putUuid(out, dto.getId());
+        if (dto.getChatRoomId() != null) putUuid(out, dto.getChatRoomId());
+        if (dto.getClientMessageId() != null) putUuid(out, dto.getClientMessageId());
+        if (dto.getSeq() != null) putVar(out, dto.getSeq());
+        if (dto.getFrom() != null) putUuid(out, dto.getFrom());
+        if (dto.getTo() != null) putUuid(out, dto.getTo());
+        if (dto.getTimestamp() != null) {
+            putVar(out, epochSecond);
+            putVar(out, dto.getTimestamp().getNano());
+        }
+        if (dto.getStatus() != null) out.put((byte) dto.getStatus().ordinal());
+        if (dto.getMessageType() != null) out.put((byte) dto.getMessageType().ordinal());
+        if (content != null) {
+            putVar(out, content.length);
+            out.put(content);
+        }
+        return out.array();
+    }
+
+    public static ChatMessageDto decode(byte[] data) {
+        if (data.length > 0 && data[0] == '{') {
+            return decodeLegacyJson(data);
+        }
+        if (data.length == 0 || data[0] != V1) {
+            throw new SerializationException("Unknown chat message format: " + (data.length == 0 ? "empty" : data[0]));
+        }
+        try {
+            ByteBuffer in = ByteBuffer.wrap(data, 1, data.length - 1);
+            int present = in.getShort() & 0xFFFF;
+            ChatMessageDto dto = new ChatMessageDto();
+            if ((present & ID) != 0) dto.setId(getUuid(in));
+            if ((present & CHAT_ROOM_ID) != 0) dto.setChatRoomId(getUuid(in));
+            if ((present & CLIENT_MESSAGE_ID) != 0) dto.setClientMessageId(getUuid(in));
+            if ((present & SEQ) != 0) dto.setSeq(getVar(in));
+            if ((present & FROM) != 0) dto.setFrom(getUuid(in));
+            if ((present & TO) != 0) dto.setTo(getUuid(in));
+            if ((present & TIMESTAMP) != 0) {
+                long epochSecond = getVar(in);
+                dto.setTimestamp(LocalDateTime.ofEpochSecond(epochSecond, (int) getVar(in), ZoneOffset.UTC));
+            }
+            if ((present & STATUS) != 0) dto.setStatus(STATUSES[in.get()]);
+            if ((present & MESSAGE_TYPE) != 0) dto.setMessageType(TYPES[in.get()]);
+            if ((present & CONTENT) != 0) {
+                int length = (int) getVar(in);
+                dto.setContent(new String(data, in.position(), length, StandardCharsets.UTF_8));
+                in.position(in.position() + length);
+            }
+            return dto;
+        } catch (BufferUnderflowException | IndexOutOfBoundsException | IllegalArgumentException | DateTimeException e) {
+            throw new SerializationException("Corrupt chat message record", e);
+        }
+    }
+
+    private static ChatMessageDto decodeLegacyJson(byte[] data) {
+        try {
+            return LEGACY_JSON.readValue(data, ChatMessageDto.class);
+        } catch (IOException e) {
+            throw new SerializationException("Corrupt JSON chat message record", e);
+        }
+    }
+
+    private static void putUuid(ByteBuffer out, UUID uuid) {
+        out.putLong(uuid.getMostSignificantBits());
+        out.putLong(uuid.getLeastSignificantBits());
+    }
+
+    private static UUID getUuid(ByteBuffer in) {
+        return new UUID(in.getLong(), in.getLong());
+    }
+
+    // LEB128: 7 bits per byte, high bit set on all but the last
+    private static void putVar(ByteBuffer out, long value) {
+        while ((value & ~0x7FL) != 0) {
+            out.put((byte) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        out.put((byte) value);
+    }
+
+    private static long getVar(ByteBuffer in) {
+        long value = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            byte b = in.get();
+            value |= (long) (b & 0x7F) << shift;
+            if (b >= 0) {
+                return value;
+            }
+        }
+        throw new SerializationException("Malformed varint");
+    }
+
+    private static int varSize(long value) {
+        return value == 0 ? 1 : (64 - Long.numberOfLeadingZeros(value) + 6) / 7;
+    }
+}
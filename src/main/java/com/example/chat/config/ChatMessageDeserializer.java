@@ -0,0 +1,13 @@
+package com.example.chat.config;
+
+import com.example.chat.dto.ChatMessageDto;
+import org.apache.kafka.common.serialization.Deserializer;
+
+/** Value deserializer for chat.messages, see {@link ChatMessageCodec}. */
+public class ChatMessageDeserializer implements Deserializer<ChatMessageDto> {
+
+    @Override
+    public ChatMessageDto deserialize(String topic, byte[] data) {
+        return data == null ? null : ChatMessageCodec.decode(data);
+    }
+}
@@ -0,0 +1,13 @@
+package com.example.chat.config;
+
+import com.example.chat.dto.ChatMessageDto;
+import org.apache.kafka.common.serialization.Serializer;
+
+/** Value serializer for chat.messages, see {@link ChatMessageCodec}. Adds no headers. */
+public class ChatMessageSerializer implements Serializer<ChatMessageDto> {
+
+    @Override
+    public byte[] serialize(String topic, ChatMessageDto data) {
+        return data == null ? null : ChatMessageCodec.encode(data);
+    }
+}
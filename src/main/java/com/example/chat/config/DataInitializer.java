@@ -2,9 +2,11 @@ package com.example.chat.config;
 
 import com.example.chat.entity.*;
 import com.example.chat.repository.*;
+import com.example.chat.service.UserChangedEvent;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.boot.CommandLineRunner;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.security.crypto.password.PasswordEncoder;
 import org.springframework.stereotype.Component;
 
@@ -21,6 +23,7 @@ public class DataInitializer implements CommandLineRunner {
     private final DoctorAvailabilityRepository availabilityRepository;
     private final HumanAgentRepository agentRepository;
     private final PasswordEncoder passwordEncoder;
+    private final ApplicationEventPublisher eventPublisher;
 
     @Override
     public void run(String... args) {
@@ -39,6 +42,8 @@ public class DataInitializer implements CommandLineRunner {
                     .isBot(true)
                     .build();
             userRepository.save(bot);
+            // The user directory is loaded before this runs
+            eventPublisher.publishEvent(new UserChangedEvent(bot.getId(), bot.getUsername()));
             log.info("DoctorAssistant bot user created");
         }
     }
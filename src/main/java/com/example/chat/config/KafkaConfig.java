@@ -1,14 +1,67 @@
 package com.example.chat.config;
 
+import com.example.chat.dto.ChatMessageDto;
 import org.apache.kafka.clients.admin.NewTopic;
+import org.apache.kafka.common.TopicPartition;
+import org.apache.kafka.common.serialization.ByteArraySerializer;
+import org.apache.kafka.common.serialization.Serializer;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.kafka.ConcurrentKafkaListenerContainerFactoryConfigurer;
+import org.springframework.boot.autoconfigure.kafka.DefaultKafkaProducerFactoryCustomizer;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.kafka.config.ConcurrentKafkaListenerContainerFactory;
+import org.springframework.kafka.core.ConsumerFactory;
+import org.springframework.kafka.core.DefaultKafkaProducerFactory;
+import org.springframework.kafka.core.KafkaOperations;
+import org.springframework.kafka.listener.DeadLetterPublishingRecoverer;
+import org.springframework.kafka.support.serializer.DelegatingByTypeSerializer;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
 
 @Configuration
 public class KafkaConfig {
 
+    public static final String CHAT_MESSAGES_TOPIC = "chat.messages";
+    // Created with chat.messages-retry-0..n by the @RetryableTopic on KafkaConsumerService
+    public static final String CHAT_MESSAGES_DLT = CHAT_MESSAGES_TOPIC + "-dlt";
+
+    // Records are keyed by chat room, so per-room order holds for any partition count.
+    // Listener concurrency reads the same property so every partition gets a consumer thread.
+    @Value("${chat.kafka.partitions:6}")
+    private int chatMessagesPartitions;
+
     @Bean
     public NewTopic chatMessagesTopic() {
-        return new NewTopic("chat.messages", 1, (short) 1);
+        return new NewTopic(CHAT_MESSAGES_TOPIC, chatMessagesPartitions, (short) 1);
+    }
+
+    // Same settings as Boot's default factory, but hands the listener a whole poll at once
+    @Bean
+    public ConcurrentKafkaListenerContainerFactory<Object, Object> batchKafkaListenerContainerFactory(
+            ConcurrentKafkaListenerContainerFactoryConfigurer configurer,
+            ConsumerFactory<Object, Object> consumerFactory) {
+        ConcurrentKafkaListenerContainerFactory<Object, Object> factory = new ConcurrentKafkaListenerContainerFactory<>();
+        configurer.configure(factory, consumerFactory);
+        factory.setBatchListener(true);
+        return factory;
+    }
+
+    // Chat records use ChatMessageCodec. Records that could not be decoded reach the
+    // dead-letter topic as their original bytes, so those pass through untouched.
+    @Bean
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    public DefaultKafkaProducerFactoryCustomizer chatMessageValueSerializer() {
+        Map<Class<?>, Serializer<?>> serializers = new LinkedHashMap<>();
+        serializers.put(ChatMessageDto.class, new ChatMessageSerializer());
+        serializers.put(byte[].class, new ByteArraySerializer());
+        return factory -> ((DefaultKafkaProducerFactory) factory).setValueSerializer(new DelegatingByTypeSerializer(serializers));
+    }
+
+    // Batch mode has no retry topics: records the batch listener gives up on go straight to the DLT
+    @Bean
+    public DeadLetterPublishingRecoverer chatMessagesDeadLetterPublisher(KafkaOperations<?, ?> kafkaTemplate) {
+        return new DeadLetterPublishingRecoverer(kafkaTemplate, (record, e) -> new TopicPartition(CHAT_MESSAGES_DLT, -1));
     }
 }
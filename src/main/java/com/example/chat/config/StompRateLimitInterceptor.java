@@ -0,0 +1,54 @@
+package com.example.chat.config;
+
+import com.example.chat.service.InboundRateLimiter;
+import com.example.chat.service.InboundRateLimiter.Limit;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.MessageChannel;
+import org.springframework.messaging.simp.stomp.StompCommand;
+import org.springframework.messaging.simp.stomp.StompHeaderAccessor;
+import org.springframework.messaging.support.ChannelInterceptor;
+import org.springframework.stereotype.Component;
+
+import java.security.Principal;
+import java.util.Map;
+
+/**
+ * Drops SEND frames from users over their limit before they reach a controller.
+ * Registered after WebSocketUserPresenceInterceptor, which binds the session's user on CONNECT.
+ * Signals have their own throttle in SignalService; messages to the bot are limited in
+ * ChatController, where the receiver is known.
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class StompRateLimitInterceptor implements ChannelInterceptor {
+
+    private static final Map<String, Limit> LIMITS = Map.of(
+            "/app/chat.send", Limit.SEND,
+            "/app/chat.updateStatus", Limit.STATUS,
+            "/app/chat.read", Limit.STATUS);
+
+    private final InboundRateLimiter rateLimiter;
+
+    @Override
+    public Message<?> preSend(Message<?> message, MessageChannel channel) {
+        StompHeaderAccessor accessor = StompHeaderAccessor.wrap(message);
+        if (!StompCommand.SEND.equals(accessor.getCommand())) {
+            return message;
+        }
+        Limit limit = LIMITS.get(accessor.getDestination());
+        if (limit == null) {
+            return message;
+        }
+
+        Principal principal = accessor.getUser();
+        String user = principal != null ? principal.getName() : "session:" + accessor.getSessionId();
+        if (rateLimiter.tryAcquire(limit, user)) {
+            return message;
+        }
+        log.debug("Rate limited {} on {}", user, accessor.getDestination());
+        return null;
+    }
+}
@@ -0,0 +1,113 @@
+package com.example.chat.config;
+
+import com.example.chat.service.UserChangedEvent;
+import com.example.chat.service.UserDirectory;
+import com.example.chat.service.UserIdentityCache;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.redis.connection.RedisConnectionFactory;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+import org.springframework.stereotype.Component;
+
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * Relays user changes over a Redis pub/sub channel so every node drops the same
+ * UserIdentityCache entries and updates its UserDirectory. Messages are "epoch|n|id|username",
+ * id or username may be empty. A node also receives its own message back; dropping an entry
+ * twice is harmless, and its UserDirectory applies the change only then.
+ *
+ * The UserDirectory version comes from a counter kept next to the channel. One script bumps
+ * it and publishes, so the channel carries versions in order and every node ends up on the
+ * same one.
+ */
+@Slf4j
+@Component
+@ConditionalOnProperty(name = "chat.user-cache.invalidation", havingValue = "redis")
+public class UserCacheRedisInvalidation {
+
+    // KEYS: counter, epoch. ARGV: channel, epoch to start if there is none, "id|username".
+    private static final RedisScript<Long> PUBLISH = new DefaultRedisScript<>("""
+            local n = redis.call('INCR', KEYS[1])
+            local epoch = redis.call('GET', KEYS[2])
+            if not epoch then
+                epoch = ARGV[2]
+                redis.call('SET', KEYS[2], epoch)
+            end
+            redis.call('PUBLISH', ARGV[1], epoch .. '|' .. n .. '|' .. ARGV[3])
+            return n
+            """, Long.class);
+    // KEYS: counter, epoch. ARGV: epoch to start if there is none. Returns "{epoch}.{n}".
+    private static final RedisScript<String> CURRENT = new DefaultRedisScript<>("""
+            local epoch = redis.call('GET', KEYS[2])
+            if not epoch then
+                epoch = ARGV[1]
+                redis.call('SET', KEYS[2], epoch)
+                redis.call('SET', KEYS[1], 0)
+            end
+            return epoch .. '.' .. (redis.call('GET', KEYS[1]) or 0)
+            """, String.class);
+
+    private final StringRedisTemplate redisTemplate;
+    private final String channel;
+    private final List<String> versionKeys;
+    private final RedisMessageListenerContainer container;
+
+    public UserCacheRedisInvalidation(StringRedisTemplate redisTemplate,
+                                      RedisConnectionFactory connectionFactory,
+                                      UserIdentityCache userIdentityCache,
+                                      UserDirectory userDirectory,
+                                      @Value("${chat.user-cache.redis-channel:chat:user-changed}") String channel) {
+        this.redisTemplate = redisTemplate;
+        this.channel = channel;
+        List<String> keys = List.of(channel + ":version", channel + ":epoch");
+        this.versionKeys = keys;
+        userDirectory.useSharedVersions(() -> redisTemplate.execute(CURRENT, keys, newEpoch()));
+
+        this.container = new RedisMessageListenerContainer();
+        container.setConnectionFactory(connectionFactory);
+        container.addMessageListener((message, pattern) -> {
+            String[] parts = new String(message.getBody(), StandardCharsets.UTF_8).split("\\|", 4);
+            UserChangedEvent event = decode(parts[2], parts[3]);
+            userIdentityCache.invalidate(event);
+            userDirectory.onSharedChange(event, parts[0], Long.parseLong(parts[1]));
+        }, new ChannelTopic(channel));
+        container.afterPropertiesSet();
+        container.start();
+    }
+
+    @EventListener
+    public void publish(UserChangedEvent event) {
+        String id = event.getId() == null ? "" : event.getId().toString();
+        String username = event.getUsername() == null ? "" : event.getUsername();
+        try {
+            redisTemplate.execute(PUBLISH, versionKeys, channel, newEpoch(), id + "|" + username);
+        } catch (RuntimeException e) {
+            // Other nodes keep the old snapshot until it is evicted or the user changes again,
+            // and no UserDirectory lists the change until it is next loaded
+            log.warn("Failed to publish user cache invalidation for {}: {}", username, e.getMessage());
+        }
+    }
+
+    private static String newEpoch() {
+        return Long.toString(System.currentTimeMillis(), 36);
+    }
+
+    private static UserChangedEvent decode(String id, String username) {
+        return new UserChangedEvent(id.isEmpty() ? null : UUID.fromString(id), username.isEmpty() ? null : username);
+    }
+
+    @PreDestroy
+    public void shutdown() throws Exception {
+        container.destroy();
+    }
+}
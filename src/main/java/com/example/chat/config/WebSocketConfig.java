@@ -13,10 +13,13 @@ public class WebSocketConfig implements WebSocketMessageBrokerConfigurer {
 
     @Autowired
     private ObjectProvider<WebSocketUserPresenceInterceptor> presenceInterceptorProvider;
+    @Autowired
+    private ObjectProvider<StompRateLimitInterceptor> rateLimitInterceptorProvider;
 
     @Override
     public void configureMessageBroker(MessageBrokerRegistry config) {
-        config.enableSimpleBroker("/topic"); // message, status, presence
+        config.enableSimpleBroker("/topic", "/queue"); // topic: message, status, presence, signals; queue: per-user acks
+        config.setUserDestinationPrefix("/user");
         config.setApplicationDestinationPrefixes("/app");
     }
 
@@ -31,5 +34,10 @@ public class WebSocketConfig implements WebSocketMessageBrokerConfigurer {
         if (interceptor != null) {
             registration.interceptors(interceptor);
         }
+        // After presence, which resolves the session's username on CONNECT
+        StompRateLimitInterceptor rateLimitInterceptor = rateLimitInterceptorProvider.getIfAvailable();
+        if (rateLimitInterceptor != null) {
+            registration.interceptors(rateLimitInterceptor);
+        }
     }
 }
@@ -1,15 +1,25 @@
 package com.example.chat.config;
 
+import com.example.chat.service.JwtPrincipal;
 import com.example.chat.service.JwtProvider;
+import com.example.chat.service.UserIdentityCache;
 import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
 import org.springframework.data.redis.core.RedisTemplate;
 import org.springframework.messaging.Message;
 import org.springframework.messaging.MessageChannel;
 import org.springframework.messaging.simp.stomp.StompCommand;
 import org.springframework.messaging.simp.stomp.StompHeaderAccessor;
 import org.springframework.messaging.support.ChannelInterceptor;
+import org.springframework.messaging.support.MessageHeaderAccessor;
 import org.springframework.stereotype.Component;
 
+/**
+ * Authenticates a STOMP session once, on CONNECT. The verified JwtPrincipal becomes
+ * the session's user, so every later frame carries it and handlers take the sender
+ * from there rather than from the payload. A CONNECT without a valid token is refused.
+ */
+@Slf4j
 @Component
 @RequiredArgsConstructor
 public class WebSocketUserPresenceInterceptor implements ChannelInterceptor {
@@ -18,24 +28,38 @@ public class WebSocketUserPresenceInterceptor implements ChannelInterceptor {
 
     private final RedisTemplate<String, String> redisTemplate;
     private final JwtProvider jwtProvider;
+    private final UserIdentityCache userIdentityCache;
 
     @Override
     public Message<?> preSend(Message<?> message, MessageChannel channel) {
-        StompHeaderAccessor accessor = StompHeaderAccessor.wrap(message);
-        if (StompCommand.CONNECT.equals(accessor.getCommand())) {
-            String authHeader = accessor.getFirstNativeHeader("Authorization");
-            if (authHeader != null && authHeader.startsWith("Bearer ")) {
-                String token = authHeader.substring(7);
-                try {
-                    String username = jwtProvider.extractUsername(token);
-                    redisTemplate.opsForSet().add(ONLINE_USERS_KEY, username);
-                } catch (Exception ignored) {}
-            }
-        } else if (StompCommand.DISCONNECT.equals(accessor.getCommand())) {
-            // Optionally mark offline on disconnect if desired
-            // String username = ... (requires session tracking)
+        // The accessor itself, not a copy: setUser on it is what binds the principal to the session
+        StompHeaderAccessor accessor = MessageHeaderAccessor.getAccessor(message, StompHeaderAccessor.class);
+        if (accessor == null || !StompCommand.CONNECT.equals(accessor.getCommand())) {
+            return message;
+        }
+
+        String authHeader = accessor.getFirstNativeHeader("Authorization");
+        if (authHeader == null || !authHeader.startsWith("Bearer ")) {
+            throw new RuntimeException("Missing bearer token");
+        }
+        JwtPrincipal principal = withUserId(jwtProvider.verify(authHeader.substring(7)));
+        accessor.setUser(principal);
+
+        try {
+            redisTemplate.opsForSet().add(ONLINE_USERS_KEY, principal.getUsername());
+        } catch (Exception e) {
+            log.warn("Failed to mark {} online: {}", principal.getUsername(), e.getMessage());
         }
         return message;
     }
-}
 
+    // Tokens issued before the "uid" claim name the user only; resolved once here instead of per frame
+    private JwtPrincipal withUserId(JwtPrincipal principal) {
+        if (principal.getUserId() != null) {
+            return principal;
+        }
+        return userIdentityCache.byUsername(principal.getUsername())
+                .map(user -> new JwtPrincipal(user.getId(), principal.getUsername(), principal.getExpiresAt()))
+                .orElseThrow(() -> new RuntimeException("User not found"));
+    }
+}
@@ -2,54 +2,137 @@ package com.example.chat.controller;
 
 import com.example.chat.dto.ChatMessageDto;
 import com.example.chat.dto.IncomingChatMessageDto;
+import com.example.chat.dto.PendingMessagesDto;
+import com.example.chat.dto.ReadWatermarkDto;
+import com.example.chat.dto.SignalDto;
 import com.example.chat.dto.StatusUpdateDto;
-import com.example.chat.entity.User;
+import com.example.chat.dto.UserIdentity;
 import com.example.chat.repository.MessageRepository;
-import com.example.chat.repository.UserRepository;
+import com.example.chat.service.InboundRateLimiter;
+import com.example.chat.service.JwtPrincipal;
+import com.example.chat.service.KafkaProducerService;
 import com.example.chat.service.MessageProcessor;
+import com.example.chat.service.PendingDeliveryService;
+import com.example.chat.service.ReadReceiptService;
+import com.example.chat.service.RecentMessageCache;
+import com.example.chat.service.SendDeduplicator;
+import com.example.chat.service.SignalService;
+import com.example.chat.service.UserIdentityCache;
 import lombok.RequiredArgsConstructor;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.messaging.handler.annotation.MessageMapping;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
 import org.springframework.messaging.simp.SimpMessagingTemplate;
+import org.springframework.messaging.simp.annotation.SubscribeMapping;
 import org.springframework.web.bind.annotation.RestController;
 
+import java.security.Principal;
+
 @RestController
 @RequiredArgsConstructor
 public class ChatController {
 
     private final MessageProcessor messageProcessor;
+    private final KafkaProducerService kafkaProducerService;
     private final MessageRepository messageRepository;
     private final SimpMessagingTemplate messagingTemplate;
-    private final UserRepository userRepository;
+    private final UserIdentityCache userIdentityCache;
+    private final RecentMessageCache recentMessageCache;
+    private final PendingDeliveryService pendingDeliveryService;
+    private final ReadReceiptService readReceiptService;
+    private final SignalService signalService;
+    private final SendDeduplicator sendDeduplicator;
+    private final InboundRateLimiter rateLimiter;
+
+    // "kafka" only validates and enqueues; "inline" processes on the inbound channel thread
+    @Value("${chat.send-mode:kafka}")
+    private String sendMode;
 
     @MessageMapping("/chat.send")
-    public void sendMessage(IncomingChatMessageDto incomingMessage) {
-        // Convert incoming message to internal format
-        User sender = userRepository.findByUsername(incomingMessage.getFrom().getUsername())
-                .orElseThrow(() -> new RuntimeException("Sender not found: " + incomingMessage.getFrom().getUsername()));
-        
-        User receiver = userRepository.findByUsername(incomingMessage.getTo())
+    public void sendMessage(IncomingChatMessageDto incomingMessage, Principal principal) {
+        // The sender is whoever authenticated this session; a "from" in the payload is not trusted
+        JwtPrincipal sender = sessionUser(principal);
+        if (incomingMessage.getChatRoomId() == null) {
+            throw new RuntimeException("Chat room is required");
+        }
+        if (incomingMessage.getTo() == null) {
+            throw new RuntimeException("Receiver is required");
+        }
+        if (incomingMessage.getContent() == null || incomingMessage.getContent().isBlank()) {
+            throw new RuntimeException("Message content is required");
+        }
+
+        // A client retry of a send that is already stored is acked again and not re-queued
+        if (incomingMessage.getClientMessageId() != null
+                && sendDeduplicator.replay(sender.getUserId(), incomingMessage.getClientMessageId())) {
+            return;
+        }
+
+        UserIdentity receiver = userIdentityCache.byId(incomingMessage.getTo())
                 .orElseThrow(() -> new RuntimeException("Receiver not found: " + incomingMessage.getTo()));
+
+        // Each bot message costs an OpenAI turn, so it has a much tighter limit than sends in general
+        if (receiver.isBot()
+                && !rateLimiter.tryAcquire(InboundRateLimiter.Limit.BOT, sender.getUsername())) {
+            return;
+        }
         
         ChatMessageDto messageDto = new ChatMessageDto();
         messageDto.setChatRoomId(incomingMessage.getChatRoomId());
-        messageDto.setFrom(sender.getId());
+        messageDto.setClientMessageId(incomingMessage.getClientMessageId());
+        messageDto.setFrom(sender.getUserId());
         messageDto.setTo(receiver.getId());
         messageDto.setContent(incomingMessage.getContent());
         messageDto.setMessageType(incomingMessage.getMessageType());
-        
-        messageProcessor.processIncomingMessage(messageDto);
+
+        if ("inline".equalsIgnoreCase(sendMode)) {
+            messageProcessor.processIncomingMessage(messageDto);
+        } else {
+            // Keyed by chat room, so the consumer sees each room's messages in send order
+            kafkaProducerService.sendMessage(messageDto);
+        }
     }
 
     @MessageMapping("/chat.updateStatus")
     public void updateMessageStatus(StatusUpdateDto statusUpdate) {
-        messageRepository.findById(statusUpdate.getMessageId()).ifPresent(msg -> {
-            msg.setStatus(statusUpdate.getStatus());
-            messageRepository.save(msg);
+        messageRepository.findChatRoomIdById(statusUpdate.getMessageId()).ifPresent(chatRoomId -> {
+            messageRepository.updateStatus(statusUpdate.getMessageId(), statusUpdate.getStatus());
+            recentMessageCache.updateStatus(chatRoomId,
+                    m -> m.getId().equals(statusUpdate.getMessageId()), statusUpdate.getStatus());
 
             messagingTemplate.convertAndSend(
-                    "/topic/status/" + msg.getChatRoom().getId(),
+                    "/topic/status/" + chatRoomId,
                     statusUpdate
             );
         });
     }
+
+    /**
+     * Clients subscribe to /app/pending right after CONNECT. The reply goes straight
+     * back to this session as one frame holding the next batch of offline messages.
+     */
+    @SubscribeMapping("/pending")
+    public PendingMessagesDto drainPending(Principal principal) {
+        return pendingDeliveryService.drain(sessionUser(principal).getUsername());
+    }
+
+    // "Read up to here" for a whole room; applied and broadcast in debounced batches
+    @MessageMapping("/chat.read")
+    public void markRead(ReadWatermarkDto watermark, Principal principal) {
+        readReceiptService.acknowledge(sessionUser(principal).getUsername(), watermark);
+    }
+
+    // Typing / viewing pings: throttled per session and relayed without touching the database
+    @MessageMapping("/chat.signal")
+    public void signal(SignalDto signal, SimpMessageHeaderAccessor headerAccessor, Principal principal) {
+        signalService.relay(headerAccessor.getSessionId(), sessionUser(principal).getUsername(), signal);
+    }
+
+    // Bound on CONNECT by WebSocketUserPresenceInterceptor
+    private static JwtPrincipal sessionUser(Principal principal) {
+        if (principal instanceof JwtPrincipal user) {
+            return user;
+        }
+        throw new RuntimeException("Session is not authenticated");
+    }
 }
@@ -1,12 +1,19 @@
 package com.example.chat.controller;
 
 import com.example.chat.dto.ChatRoomWithHistoryDto;
+import com.example.chat.dto.MessagePageDto;
+import com.example.chat.dto.SearchPageDto;
+import com.example.chat.dto.SyncPageDto;
 import com.example.chat.service.ChatRoomService;
+import com.example.chat.service.MessageSearchService;
 import lombok.RequiredArgsConstructor;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.core.Authentication;
 import org.springframework.web.bind.annotation.*;
 
+import java.util.Map;
+import java.util.UUID;
+
 @RestController
 @RequestMapping("/api")
 @RequiredArgsConstructor
@@ -14,6 +21,7 @@ import org.springframework.web.bind.annotation.*;
 public class ChatRoomController {
 
     private final ChatRoomService chatRoomService;
+    private final MessageSearchService messageSearchService;
 
     @GetMapping("/chatroom/{username}")
     public ResponseEntity<?> getOrCreateChatRoom(@PathVariable String username, Authentication auth) {
@@ -21,5 +29,46 @@ public class ChatRoomController {
         ChatRoomWithHistoryDto dto = chatRoomService.getOrCreateChatRoom(currentUsername, username);
         return ResponseEntity.ok(dto);
     }
-}
 
+    @GetMapping("/chatroom/{chatRoomId}/messages")
+    public ResponseEntity<?> getHistory(@PathVariable UUID chatRoomId,
+                                        @RequestParam(required = false) String before,
+                                        @RequestParam(required = false) String after,
+                                        @RequestParam(required = false) Integer limit,
+                                        Authentication auth) {
+        try {
+            MessagePageDto page = chatRoomService.getHistory(auth.getName(), chatRoomId, before, after, limit);
+            return ResponseEntity.ok(page);
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(Map.of("error", e.getMessage()));
+        }
+    }
+
+    // Ranked full-text search over the caller's rooms, or one room with ?chatRoomId=
+    @GetMapping("/messages/search")
+    public ResponseEntity<?> search(@RequestParam String q,
+                                    @RequestParam(required = false) UUID chatRoomId,
+                                    @RequestParam(required = false) Integer page,
+                                    @RequestParam(required = false) Integer size,
+                                    Authentication auth) {
+        try {
+            SearchPageDto results = messageSearchService.search(auth.getName(), q, chatRoomId, page, size);
+            return ResponseEntity.ok(results);
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(Map.of("error", e.getMessage()));
+        }
+    }
+
+    @GetMapping("/chatroom/{chatRoomId}/sync")
+    public ResponseEntity<?> sync(@PathVariable UUID chatRoomId,
+                                  @RequestParam(defaultValue = "0") long afterSeq,
+                                  @RequestParam(required = false) Integer limit,
+                                  Authentication auth) {
+        try {
+            SyncPageDto page = chatRoomService.getSince(auth.getName(), chatRoomId, afterSeq, limit);
+            return ResponseEntity.ok(page);
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(Map.of("error", e.getMessage()));
+        }
+    }
+}
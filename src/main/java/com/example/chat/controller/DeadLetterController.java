@@ -0,0 +1,57 @@
+package com.example.chat.controller;
+
+import com.example.chat.service.DeadLetterService;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.security.core.Authentication;
+import org.springframework.web.bind.annotation.*;
+
+import java.util.List;
+import java.util.Map;
+
+// Dead letters hold other users' messages, so only chat.admin.usernames may read or replay them
+@RestController
+@RequestMapping("/api/dead-letters")
+@CrossOrigin
+public class DeadLetterController {
+
+    private final DeadLetterService deadLetterService;
+    private final List<String> admins;
+
+    public DeadLetterController(DeadLetterService deadLetterService,
+                                @Value("${chat.admin.usernames:}") List<String> admins) {
+        this.deadLetterService = deadLetterService;
+        this.admins = admins;
+    }
+
+    @GetMapping
+    public ResponseEntity<?> latest(@RequestParam(defaultValue = "50") int limit, Authentication auth) {
+        if (!admins.contains(auth.getName())) {
+            return forbidden();
+        }
+        try {
+            return ResponseEntity.ok(deadLetterService.latest(Math.min(limit, 500)));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(Map.of("error", e.getMessage()));
+        }
+    }
+
+    @PostMapping("/{partition}/{offset}/replay")
+    public ResponseEntity<?> replay(@PathVariable int partition, @PathVariable long offset, Authentication auth) {
+        if (!admins.contains(auth.getName())) {
+            return forbidden();
+        }
+        try {
+            return deadLetterService.replay(partition, offset)
+                    .<ResponseEntity<?>>map(ResponseEntity::ok)
+                    .orElseGet(() -> ResponseEntity.notFound().build());
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(Map.of("error", e.getMessage()));
+        }
+    }
+
+    private static ResponseEntity<?> forbidden() {
+        return ResponseEntity.status(HttpStatus.FORBIDDEN).body(Map.of("error", "Not allowed"));
+    }
+}
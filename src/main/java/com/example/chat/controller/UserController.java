@@ -1,11 +1,14 @@
 package com.example.chat.controller;
 
-import com.example.chat.dto.UserDto;
-import com.example.chat.service.UserService;
+import com.example.chat.service.UserDirectory;
 import lombok.RequiredArgsConstructor;
+import org.springframework.http.CacheControl;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.WebRequest;
 
-import java.util.List;
+import java.util.Map;
 
 @RestController
 @RequestMapping("/api/users")
@@ -13,10 +16,33 @@ import java.util.List;
 @CrossOrigin
 public class UserController {
 
-    private final UserService userService;
+    private final UserDirectory userDirectory;
 
+    // Paged; ?q= matches the start of a username, first name or last name.
+    // The ETag is the directory version, so an unchanged directory answers 304 before any work.
     @GetMapping
-    public List<UserDto> getAllUsers() {
-        return userService.listUsers();
+    public ResponseEntity<?> getUsers(@RequestParam(required = false) String q,
+                                      @RequestParam(required = false) String cursor,
+                                      @RequestParam(required = false) Integer limit,
+                                      WebRequest request) {
+        if (request.checkNotModified("\"" + userDirectory.version() + "\"")) {
+            return null;
+        }
+        try {
+            UserDirectory.RenderedPage page = userDirectory.render(q, cursor, limit);
+            return ResponseEntity.ok()
+                    .eTag("\"" + page.getVersion() + "\"")
+                    .cacheControl(CacheControl.noCache().cachePrivate())
+                    .contentType(MediaType.APPLICATION_JSON)
+                    .body(page.getBody());
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(Map.of("error", e.getMessage()));
+        }
+    }
+
+    // Registrations since ?since= (the version from an ETag or an earlier delta)
+    @GetMapping("/changes")
+    public ResponseEntity<?> getChanges(@RequestParam String since) {
+        return ResponseEntity.ok(userDirectory.changesSince(since));
     }
 }
@@ -0,0 +1,18 @@
+package com.example.chat.dto;
+
+import com.example.chat.entity.MessageStatus;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+import java.util.UUID;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class BulkStatusUpdateDto {
+    private UUID chatRoomId;
+    private List<UUID> messageIds;
+    private MessageStatus status;
+}
@@ -9,7 +9,10 @@ import java.util.UUID;
 
 @Data
 public class ChatMessageDto {
+    private UUID id;
     private UUID chatRoomId;
+    private UUID clientMessageId;
+    private Long seq;
     private UUID from;
     private UUID to;
     private String content;
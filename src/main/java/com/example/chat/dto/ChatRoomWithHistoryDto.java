@@ -1,6 +1,5 @@
 package com.example.chat.dto;
 
-import com.example.chat.entity.Message;
 import lombok.*;
 
 import java.util.List;
@@ -12,5 +11,7 @@ import java.util.UUID;
 @AllArgsConstructor
 public class ChatRoomWithHistoryDto {
     private UUID chatRoomId;
-    private List<Message> history;
+    private List<MessageView> history;
+    private List<UserDto> users; // display info for senderId/receiverId in history
+    private String before; // cursor for /api/chatroom/{id}/messages?before=, null when there is no older history
 }
@@ -0,0 +1,22 @@
+package com.example.chat.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class DeadLetterDto {
+    // Position in chat.messages-dlt; replay takes these two
+    private int partition;
+    private long offset;
+    private LocalDateTime deadLetteredAt;
+    private String originalTopic;
+    private String exception;
+    private String error;
+    // Null when the record could not be decoded
+    private ChatMessageDto message;
+}
@@ -8,13 +8,10 @@ import java.util.UUID;
 @Data
 public class IncomingChatMessageDto {
     private UUID chatRoomId;
-    private UserInfo from;
-    private String to; // username
+    // Generated by the client per send and reused on retries; duplicates are not written again
+    private UUID clientMessageId;
+    // Receiver's user id; the sender is the session's authenticated user
+    private UUID to;
     private String content;
     private MessageType messageType;
-    
-    @Data
-    public static class UserInfo {
-        private String username;
-    }
 }
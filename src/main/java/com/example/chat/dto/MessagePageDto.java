@@ -0,0 +1,16 @@
+package com.example.chat.dto;
+
+import lombok.*;
+
+import java.util.List;
+
+@Getter
+@Setter
+@NoArgsConstructor
+@AllArgsConstructor
+public class MessagePageDto {
+    private List<MessageView> messages; // oldest first
+    private List<UserDto> users;        // everyone referenced by senderId/receiverId on this page
+    private String before;              // pass as ?before= for older messages, null when none are left
+    private String after;               // pass as ?after= for newer messages
+}
@@ -0,0 +1,49 @@
+package com.example.chat.dto;
+
+import com.example.chat.entity.Message;
+import com.example.chat.entity.MessageBodyCodec;
+import com.example.chat.entity.MessageStatus;
+import com.example.chat.entity.MessageType;
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import lombok.Value;
+
+import java.time.LocalDateTime;
+import java.util.UUID;
+
+/**
+ * Read-only row of chat history, built directly by a JPQL constructor expression.
+ * Sender and receiver are ids only; their display info travels once per page.
+ * Compressed bodies stay compressed (also in RecentMessageCache) until serialized.
+ */
+@Value
+public class MessageView {
+    UUID id;
+    UUID chatRoomId;
+    Long seq;
+    UUID senderId;
+    UUID receiverId;
+    String content;
+    @JsonIgnore
+    byte[] contentCompressed;
+    LocalDateTime timestamp;
+    MessageStatus status;
+    MessageType messageType;
+
+    public static MessageView of(Message m) {
+        return new MessageView(m.getId(), m.getChatRoom().getId(), m.getSeq(), m.getSender().getId(), m.getReceiver().getId(),
+                m.getContentCompressed() == null ? m.getContent() : null, m.getContentCompressed(), m.getTimestamp(), m.getStatus(), m.getMessageType());
+    }
+
+    public String getContent() {
+        return content != null || contentCompressed == null ? content : MessageBodyCodec.decompress(contentCompressed);
+    }
+
+    // Heap held by the body as stored, for cache accounting
+    public long storedBytes() {
+        return contentCompressed != null ? contentCompressed.length : content == null ? 0 : 2L * content.length();
+    }
+
+    public MessageView withStatus(MessageStatus newStatus) {
+        return new MessageView(id, chatRoomId, seq, senderId, receiverId, content, contentCompressed, timestamp, newStatus, messageType);
+    }
+}
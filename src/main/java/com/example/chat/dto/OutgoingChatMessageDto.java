@@ -1,5 +1,6 @@
 package com.example.chat.dto;
 
+import com.example.chat.entity.Message;
 import com.example.chat.entity.MessageStatus;
 import com.example.chat.entity.MessageType;
 import lombok.Data;
@@ -9,17 +10,44 @@ import java.util.UUID;
 
 @Data
 public class OutgoingChatMessageDto {
+    private UUID id;
     private UUID chatRoomId;
+    // Lets the sender match the broadcast to its optimistic copy
+    private UUID clientMessageId;
+    private Long seq;
     private UserInfo from;
     private UserInfo to;
     private String content;
     private LocalDateTime timestamp;
     private MessageStatus status;
     private MessageType messageType;
+
+    // Content is passed in as it may be stored compressed
+    public static OutgoingChatMessageDto of(Message m, String content, UserIdentity from, UserIdentity to) {
+        OutgoingChatMessageDto outgoing = new OutgoingChatMessageDto();
+        outgoing.setId(m.getId());
+        outgoing.setChatRoomId(m.getChatRoom().getId());
+        outgoing.setClientMessageId(m.getClientMessageId());
+        outgoing.setSeq(m.getSeq());
+        outgoing.setFrom(UserInfo.of(from));
+        outgoing.setTo(UserInfo.of(to));
+        outgoing.setContent(content);
+        outgoing.setTimestamp(m.getTimestamp());
+        outgoing.setStatus(m.getStatus());
+        outgoing.setMessageType(m.getMessageType());
+        return outgoing;
+    }
     
     @Data
     public static class UserInfo {
         private UUID id;
         private String username;
+
+        public static UserInfo of(UserIdentity user) {
+            UserInfo info = new UserInfo();
+            info.setId(user.getId());
+            info.setUsername(user.getUsername());
+            return info;
+        }
     }
 }
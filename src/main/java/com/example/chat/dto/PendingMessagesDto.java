@@ -0,0 +1,15 @@
+package com.example.chat.dto;
+
+import lombok.*;
+
+import java.util.List;
+
+@Getter
+@Setter
+@NoArgsConstructor
+@AllArgsConstructor
+public class PendingMessagesDto {
+    private List<MessageView> messages; // oldest first, now DELIVERED
+    private List<UserDto> users;        // senders of the messages in this batch
+    private boolean hasMore;            // subscribe to /app/pending again for the next batch
+}
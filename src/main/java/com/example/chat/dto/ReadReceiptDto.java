@@ -0,0 +1,20 @@
+package com.example.chat.dto;
+
+import com.example.chat.entity.MessageStatus;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+import java.util.UUID;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class ReadReceiptDto {
+    private UUID chatRoomId;
+    private UUID readerId;
+    private MessageStatus status; // always READ
+    private LocalDateTime upToTimestamp;
+    private UUID upToMessageId;
+}
@@ -0,0 +1,13 @@
+package com.example.chat.dto;
+
+import lombok.Data;
+
+import java.time.LocalDateTime;
+import java.util.UUID;
+
+@Data
+public class ReadWatermarkDto {
+    private UUID chatRoomId;
+    private LocalDateTime upToTimestamp; // everything received in the room up to here has been read
+    private UUID upToMessageId;          // optional tie-breaker for messages sharing upToTimestamp
+}
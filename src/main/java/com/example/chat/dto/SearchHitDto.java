@@ -0,0 +1,12 @@
+package com.example.chat.dto;
+
+import lombok.*;
+
+@Getter
+@Setter
+@NoArgsConstructor
+@AllArgsConstructor
+public class SearchHitDto {
+    private MessageView message;
+    private double score; // BM25; only comparable within one result set
+}
@@ -0,0 +1,16 @@
+package com.example.chat.dto;
+
+import lombok.*;
+
+import java.util.List;
+
+@Getter
+@Setter
+@NoArgsConstructor
+@AllArgsConstructor
+public class SearchPageDto {
+    private List<SearchHitDto> hits; // best match first
+    private int total;               // messages matching every term in the searched rooms
+    private int page;
+    private int size;
+}
@@ -0,0 +1,26 @@
+package com.example.chat.dto;
+
+import com.example.chat.entity.MessageStatus;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+import java.util.UUID;
+
+/**
+ * Sent to the sender's /user/queue/acks once a send carrying a client message id is stored.
+ * A retry of a stored send gets the original message's ack again, marked duplicate.
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class SendAckDto {
+    private UUID clientMessageId;
+    private UUID id;
+    private UUID chatRoomId;
+    private Long seq;
+    private LocalDateTime timestamp;
+    private MessageStatus status;
+    private boolean duplicate;
+}
@@ -0,0 +1,12 @@
+package com.example.chat.dto;
+
+import lombok.Data;
+
+import java.util.UUID;
+
+@Data
+public class SignalDto {
+    private UUID chatRoomId;
+    private SignalType type;
+    private String from; // set by the server from the session; anything the client sends is overwritten
+}
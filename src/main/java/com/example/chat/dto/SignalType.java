@@ -0,0 +1,7 @@
+package com.example.chat.dto;
+
+public enum SignalType {
+    TYPING,
+    STOPPED_TYPING,
+    VIEWING
+}
@@ -0,0 +1,15 @@
+package com.example.chat.dto;
+
+import lombok.*;
+
+import java.util.List;
+
+@Getter
+@Setter
+@NoArgsConstructor
+@AllArgsConstructor
+public class SyncPageDto {
+    private List<MessageView> messages; // seq ascending, all greater than the requested afterSeq
+    private long latestSeq;             // highest seq in the room when the page was read
+    private boolean hasMore;            // call again with the last seq received when true
+}
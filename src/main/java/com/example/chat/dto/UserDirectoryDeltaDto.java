@@ -0,0 +1,17 @@
+package com.example.chat.dto;
+
+import lombok.*;
+
+import java.util.List;
+import java.util.UUID;
+
+@Getter
+@Setter
+@NoArgsConstructor
+@AllArgsConstructor
+public class UserDirectoryDeltaDto {
+    private String version;     // pass as ?since= next time
+    private boolean reset;      // the changes since the given version are gone: reload /api/users
+    private List<UserDto> changed;
+    private List<UUID> removed;
+}
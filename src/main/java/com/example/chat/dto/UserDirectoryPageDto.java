@@ -0,0 +1,14 @@
+package com.example.chat.dto;
+
+import lombok.*;
+
+import java.util.List;
+
+@Getter
+@Setter
+@NoArgsConstructor
+@AllArgsConstructor
+public class UserDirectoryPageDto {
+    private List<UserDto> users; // bots first on the first page, then by the matched name
+    private String next;         // pass as ?cursor= for the next page, null when none are left
+}
@@ -1,5 +1,6 @@
 package com.example.chat.dto;
 
+import com.example.chat.entity.User;
 import lombok.Builder;
 import lombok.Data;
 
@@ -13,4 +14,24 @@ public class UserDto {
     private String firstName;
     private String lastName;
     private Boolean isBot;
+
+    public static UserDto from(User u) {
+        return UserDto.builder()
+                .id(u.getId())
+                .username(u.getUsername())
+                .firstName(u.getFirstName())
+                .lastName(u.getLastName())
+                .isBot(u.getIsBot())
+                .build();
+    }
+
+    public static UserDto from(UserIdentity u) {
+        return UserDto.builder()
+                .id(u.getId())
+                .username(u.getUsername())
+                .firstName(u.getFirstName())
+                .lastName(u.getLastName())
+                .isBot(u.isBot())
+                .build();
+    }
 }
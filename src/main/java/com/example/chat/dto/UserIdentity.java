@@ -0,0 +1,24 @@
+package com.example.chat.dto;
+
+import com.example.chat.entity.User;
+import lombok.Value;
+
+import java.util.UUID;
+
+/**
+ * Immutable snapshot of the user fields the message pipeline reads, held by
+ * UserIdentityCache. Never carries the password hash.
+ */
+@Value
+public class UserIdentity {
+    UUID id;
+    String username;
+    String firstName;
+    String lastName;
+    boolean bot;
+
+    public static UserIdentity of(User u) {
+        return new UserIdentity(u.getId(), u.getUsername(), u.getFirstName(), u.getLastName(),
+                Boolean.TRUE.equals(u.getIsBot()));
+    }
+}
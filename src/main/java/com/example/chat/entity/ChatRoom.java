@@ -2,7 +2,8 @@ package com.example.chat.entity;
 
 import jakarta.persistence.*;
 import lombok.*;
-import org.hibernate.annotations.UuidGenerator;
+import org.hibernate.annotations.JdbcTypeCode;
+import org.hibernate.type.SqlTypes;
 
 import java.util.UUID;
 
@@ -17,8 +18,9 @@ import java.util.UUID;
 public class ChatRoom {
 
     @Id
-    @GeneratedValue
-    @UuidGenerator
+    @TimeOrderedUuid
+    @JdbcTypeCode(SqlTypes.BINARY)
+    @Column(length = 16)
     private UUID id;
 
     @ManyToOne
@@ -28,4 +30,9 @@ public class ChatRoom {
     @ManyToOne
     @JoinColumn(name = "user2_id", nullable = false)
     private User user2;
+
+    // Highest Message.seq handed out in this room; bumped by MessageWriter under the row lock
+    @Column(name = "last_seq", nullable = false)
+    @Builder.Default
+    private Long lastSeq = 0L;
 }
@@ -2,7 +2,8 @@ package com.example.chat.entity;
 
 import jakarta.persistence.*;
 import lombok.*;
-import org.hibernate.annotations.UuidGenerator;
+import org.hibernate.annotations.JdbcTypeCode;
+import org.hibernate.type.SqlTypes;
 
 import java.time.LocalDateTime;
 import java.util.UUID;
@@ -13,29 +14,46 @@ import java.util.UUID;
 @NoArgsConstructor
 @AllArgsConstructor
 @Builder
-@Table(name = "messages")
+@Table(name = "messages",
+       indexes = {
+               @Index(name = "idx_messages_room_ts_id", columnList = "chat_room_id, timestamp, id"),
+               @Index(name = "idx_messages_receiver_status", columnList = "receiver_id, status, timestamp"),
+               // Not UNIQUE: MySQL partitioning requires every unique key to contain the timestamp.
+               // MessageWriter hands out each seq once under the chat room's row lock.
+               @Index(name = "idx_messages_room_seq", columnList = "chat_room_id, seq")
+       })
 public class Message {
 
     @Id
-    @GeneratedValue
-    @UuidGenerator
+    @TimeOrderedUuid
+    @JdbcTypeCode(SqlTypes.BINARY)
+    @Column(length = 16)
     private UUID id;
 
+    // No foreign keys: partitioned InnoDB tables cannot have them
     @ManyToOne
-    @JoinColumn(name = "chat_room_id", nullable = false)
+    @JoinColumn(name = "chat_room_id", nullable = false, foreignKey = @ForeignKey(ConstraintMode.NO_CONSTRAINT))
     private ChatRoom chatRoom;
 
+    // Per-room, gap-free, strictly increasing; assigned by MessageWriter
+    @Column(name = "seq")
+    private Long seq;
+
     @ManyToOne
-    @JoinColumn(name = "sender_id", nullable = false)
+    @JoinColumn(name = "sender_id", nullable = false, foreignKey = @ForeignKey(ConstraintMode.NO_CONSTRAINT))
     private User sender;
 
     @ManyToOne
-    @JoinColumn(name = "receiver_id", nullable = false)
+    @JoinColumn(name = "receiver_id", nullable = false, foreignKey = @ForeignKey(ConstraintMode.NO_CONSTRAINT))
     private User receiver;
 
-    @Column(nullable = false, columnDefinition = "TEXT")
+    // Exactly one of content / contentCompressed is set; MessageWriter decides which
+    @Column(columnDefinition = "TEXT")
     private String content;
 
+    @Column(name = "content_compressed", columnDefinition = "BLOB")
+    private byte[] contentCompressed;
+
     @Column(nullable = false)
     private LocalDateTime timestamp;
 
@@ -46,4 +64,12 @@ public class Message {
     @Enumerated(EnumType.STRING)
     @Column(name = "message_type")
     private MessageType messageType; // TEXT, SYSTEM, BOT
+
+    // Idempotency key of the send, if the client gave one; MessageWriter records it in message_client_ids
+    @Transient
+    private UUID clientMessageId;
+
+    public String getContent() {
+        return content != null || contentCompressed == null ? content : MessageBodyCodec.decompress(contentCompressed);
+    }
 }
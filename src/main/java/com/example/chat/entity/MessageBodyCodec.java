@@ -0,0 +1,69 @@
+package com.example.chat.entity;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Stored format of messages.content_compressed: one format byte, then the body.
+ * Only {@link #DEFLATE} (raw RFC 1951, UTF-8 text) is written today; the byte leaves
+ * room for another codec without rewriting old rows.
+ */
+public final class MessageBodyCodec {
+
+    public static final byte DEFLATE = 1;
+
+    // Level 1 keeps nearly all of level 6's ratio on chat text at a fraction of the CPU
+    private static final int LEVEL = Deflater.BEST_SPEED;
+
+    private MessageBodyCodec() {
+    }
+
+    public static byte[] compress(String content) {
+        return compress(content.getBytes(StandardCharsets.UTF_8));
+    }
+
+    // For callers that already hold the UTF-8 bytes, e.g. to compare the stored sizes
+    public static byte[] compress(byte[] input) {
+        Deflater deflater = new Deflater(LEVEL, true);
+        try {
+            deflater.setInput(input);
+            deflater.finish();
+            ByteArrayOutputStream out = new ByteArrayOutputStream(input.length / 2 + 16);
+            out.write(DEFLATE);
+            byte[] buffer = new byte[4096];
+            while (!deflater.finished()) {
+                out.write(buffer, 0, deflater.deflate(buffer));
+            }
+            return out.toByteArray();
+        } finally {
+            deflater.end();
+        }
+    }
+
+    public static String decompress(byte[] stored) {
+        if (stored.length == 0 || stored[0] != DEFLATE) {
+            throw new IllegalStateException("Unknown message body format: " + (stored.length == 0 ? "empty" : stored[0]));
+        }
+        Inflater inflater = new Inflater(true);
+        try {
+            inflater.setInput(stored, 1, stored.length - 1);
+            ByteArrayOutputStream out = new ByteArrayOutputStream(stored.length * 4);
+            byte[] buffer = new byte[8192];
+            while (!inflater.finished()) {
+                int n = inflater.inflate(buffer);
+                if (n == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+                    throw new IllegalStateException("Truncated message body");
+                }
+                out.write(buffer, 0, n);
+            }
+            return out.toString(StandardCharsets.UTF_8);
+        } catch (DataFormatException e) {
+            throw new IllegalStateException("Corrupt message body", e);
+        } finally {
+            inflater.end();
+        }
+    }
+}
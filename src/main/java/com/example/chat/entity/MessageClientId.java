@@ -0,0 +1,64 @@
+package com.example.chat.entity;
+
+import jakarta.persistence.*;
+import lombok.*;
+import org.hibernate.annotations.JdbcTypeCode;
+import org.hibernate.type.SqlTypes;
+import org.springframework.data.domain.Persistable;
+
+import java.io.Serializable;
+import java.time.LocalDateTime;
+import java.util.UUID;
+
+/**
+ * Idempotency key of a client send, written in the same transaction as the message.
+ * Kept out of the messages table: a partitioned table only allows unique keys that
+ * contain the timestamp, which would not stop a retry written a moment later.
+ */
+@Entity
+@Getter
+@Setter
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+@IdClass(MessageClientId.Key.class)
+@Table(name = "message_client_ids",
+       indexes = @Index(name = "idx_message_client_ids_created", columnList = "created_at"))
+public class MessageClientId implements Persistable<MessageClientId.Key> {
+
+    @Id
+    @JdbcTypeCode(SqlTypes.BINARY)
+    @Column(name = "client_message_id", length = 16)
+    private UUID clientMessageId;
+
+    @Id
+    @JdbcTypeCode(SqlTypes.BINARY)
+    @Column(name = "sender_id", length = 16)
+    private UUID senderId;
+
+    @JdbcTypeCode(SqlTypes.BINARY)
+    @Column(name = "message_id", length = 16, nullable = false)
+    private UUID messageId;
+
+    @Column(name = "created_at", nullable = false)
+    private LocalDateTime createdAt;
+
+    @Override
+    public Key getId() {
+        return new Key(clientMessageId, senderId);
+    }
+
+    // Only ever inserted, so saveAll persists straight away instead of selecting first
+    @Override
+    public boolean isNew() {
+        return true;
+    }
+
+    @Data
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class Key implements Serializable {
+        private UUID clientMessageId;
+        private UUID senderId;
+    }
+}
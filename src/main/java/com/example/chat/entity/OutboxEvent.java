@@ -0,0 +1,45 @@
+package com.example.chat.entity;
+
+import jakarta.persistence.*;
+import lombok.*;
+import org.hibernate.annotations.JdbcTypeCode;
+import org.hibernate.type.SqlTypes;
+
+import java.time.LocalDateTime;
+import java.util.UUID;
+
+/**
+ * A room broadcast written in the same transaction as its message and removed once
+ * OutboxRelay has handed it to the broker. The payload is the finished
+ * OutgoingChatMessageDto JSON, so relaying needs no further lookups.
+ */
+@Entity
+@Getter
+@Setter
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+@Table(name = "message_outbox")
+public class OutboxEvent {
+
+    // Time-ordered, so relaying in primary key order is close to commit order
+    @Id
+    @TimeOrderedUuid
+    @JdbcTypeCode(SqlTypes.BINARY)
+    @Column(length = 16)
+    private UUID id;
+
+    @JdbcTypeCode(SqlTypes.BINARY)
+    @Column(name = "chat_room_id", length = 16, nullable = false)
+    private UUID chatRoomId;
+
+    @JdbcTypeCode(SqlTypes.BINARY)
+    @Column(name = "message_id", length = 16, nullable = false)
+    private UUID messageId;
+
+    @Column(columnDefinition = "TEXT", nullable = false)
+    private String payload;
+
+    @Column(name = "created_at", nullable = false)
+    private LocalDateTime createdAt;
+}
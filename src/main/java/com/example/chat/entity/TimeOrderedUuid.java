@@ -0,0 +1,19 @@
+package com.example.chat.entity;
+
+import org.hibernate.annotations.IdGeneratorType;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Generates UUIDv7-style identifiers: a 48-bit millisecond timestamp followed by a
+ * counter and random bits. Stored as BINARY(16), new rows land at the right-hand
+ * edge of the primary key instead of on a random InnoDB page.
+ */
+@IdGeneratorType(TimeOrderedUuidGenerator.class)
+@Retention(RetentionPolicy.RUNTIME)
+@Target({ElementType.FIELD, ElementType.METHOD})
+public @interface TimeOrderedUuid {
+}
@@ -0,0 +1,59 @@
+package com.example.chat.entity;
+
+import org.hibernate.engine.spi.SharedSessionContractImplementor;
+import org.hibernate.generator.BeforeExecutionGenerator;
+import org.hibernate.generator.EventType;
+import org.hibernate.generator.EventTypeSets;
+
+import java.security.SecureRandom;
+import java.util.Comparator;
+import java.util.EnumSet;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicLong;
+
+public class TimeOrderedUuidGenerator implements BeforeExecutionGenerator {
+
+    private static final SecureRandom RANDOM = new SecureRandom();
+
+    // Last (millis << 12 | counter) handed out, so ids stay strictly increasing within this JVM
+    private static final AtomicLong LAST = new AtomicLong();
+
+    /**
+     * Orders ids the way MySQL orders their BINARY(16) form: byte by byte, unsigned.
+     * UUID.compareTo compares signed longs and disagrees once the high bit differs.
+     */
+    public static final Comparator<UUID> BINARY_ORDER = (a, b) -> {
+        int byHigh = Long.compareUnsigned(a.getMostSignificantBits(), b.getMostSignificantBits());
+        return byHigh != 0 ? byHigh : Long.compareUnsigned(a.getLeastSignificantBits(), b.getLeastSignificantBits());
+    };
+
+    /**
+     * Layout (RFC 9562 UUIDv7): 48 bits of Unix millis, version 7, a 12-bit counter
+     * that is bumped for ids within the same millisecond, variant 10, 62 random bits.
+     */
+    public static UUID next() {
+        long now = System.currentTimeMillis() << 12;
+        long stamp = LAST.updateAndGet(last -> Math.max(now, last + 1));
+
+        long millis = stamp >>> 12;
+        long counter = stamp & 0xFFF;
+        long msb = (millis << 16) | 0x7000L | counter;
+        long lsb = (RANDOM.nextLong() & 0x3FFFFFFFFFFFFFFFL) | 0x8000000000000000L;
+        return new UUID(msb, lsb);
+    }
+
+    /** Sorts (as BINARY(16)) before every id generated at or after {@code epochMillis}. */
+    public static UUID floor(long epochMillis) {
+        return new UUID(epochMillis << 16, 0);
+    }
+
+    @Override
+    public Object generate(SharedSessionContractImplementor session, Object owner, Object currentValue, EventType eventType) {
+        return next();
+    }
+
+    @Override
+    public EnumSet<EventType> getEventTypes() {
+        return EventTypeSets.INSERT_ONLY;
+    }
+}
@@ -10,6 +10,9 @@ import java.util.UUID;
 @Entity
 @Table(name = "users", uniqueConstraints = {
         @UniqueConstraint(columnNames = {"username"})
+}, indexes = {
+        // UserDirectory's catch-up on registrations made by other instances
+        @Index(name = "idx_users_created_at", columnList = "created_at")
 })
 @Getter
 @Setter
@@ -2,6 +2,7 @@ package com.example.chat.repository;
 
 import com.example.chat.entity.ChatRoom;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
 
 import java.util.List;
@@ -15,4 +16,15 @@ public interface ChatRoomRepository extends JpaRepository<ChatRoom, UUID> {
     Optional<ChatRoom> findByUserPair(UUID id1, UUID id2);
     Optional<ChatRoom> findByUser1IdAndUser2Id(UUID user1Id, UUID user2Id);
     List<ChatRoom> findByUser1IdOrUser2Id(UUID user1Id, UUID user2Id);
+
+    @Query("SELECT cr.id FROM ChatRoom cr WHERE cr.user1.id = :userId OR cr.user2.id = :userId")
+    List<UUID> findIdsByMember(UUID userId);
+
+    // Takes the room's row lock until commit, so concurrent writers to one room queue up
+    @Modifying
+    @Query("UPDATE ChatRoom cr SET cr.lastSeq = cr.lastSeq + :count WHERE cr.id = :id")
+    int reserveSeq(UUID id, long count);
+
+    @Query("SELECT cr.lastSeq FROM ChatRoom cr WHERE cr.id = :id")
+    long findLastSeq(UUID id);
 }
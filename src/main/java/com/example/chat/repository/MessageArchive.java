@@ -0,0 +1,466 @@
+package com.example.chat.repository;
+
+import com.example.chat.dto.MessageCursor;
+import com.example.chat.dto.MessageView;
+import com.example.chat.entity.MessageStatus;
+import com.example.chat.entity.MessageType;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Repository;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.time.LocalDateTime;
+import java.time.YearMonth;
+import java.time.ZoneOffset;
+import java.util.*;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * Cold tier of the message store: one append-only segment per archived month.
+ * <p>
+ * {@code messages-YYYY-MM.seg} holds Deflate-compressed blocks of at most {@code blockSize}
+ * messages of a single room, oldest first. {@code messages-YYYY-MM.idx} lists every block
+ * with its room, first/last (timestamp, id), seq range, offset and length; it is written
+ * last, so a segment without an index is an interrupted write and is ignored. Indexes are
+ * held in memory, and a read decodes only the blocks that can hold the requested rows.
+ * <p>
+ * The directory is shared by every instance. Only the one holding the archive lock writes
+ * to it; the others pick new segments up through {@link #refresh()}.
+ */
+@Slf4j
+@Repository
+public class MessageArchive {
+
+    private static final int SEGMENT_MAGIC = 0x43534731; // "CSG1"
+    private static final int INDEX_MAGIC = 0x43495831;   // "CIX1"
+    private static final long NO_SEQ = Long.MIN_VALUE;
+
+    private final Path dir;
+    private final int blockSize;
+    private final NavigableMap<YearMonth, Segment> segments = new ConcurrentSkipListMap<>();
+
+    public MessageArchive(@Value("${chat.archive.dir:./data/message-archive}") String dir,
+                          @Value("${chat.archive.block-size:256}") int blockSize) {
+        this.dir = Paths.get(dir);
+        this.blockSize = blockSize;
+        loadSegments();
+    }
+
+    public boolean isArchived(YearMonth month) {
+        return segments.containsKey(month);
+    }
+
+    /** End of the newest archived month; MySQL rows before it are stragglers of archived months. */
+    public Optional<LocalDateTime> archivedUntil() {
+        Map.Entry<YearMonth, Segment> newest = segments.lastEntry();
+        return newest == null ? Optional.empty() : Optional.of(newest.getKey().plusMonths(1).atDay(1).atStartOfDay());
+    }
+
+    /** Newest first, strictly before {@code before}; from the newest archived message when null. */
+    public List<MessageView> findBefore(UUID chatRoomId, MessageCursor before, int limit) {
+        List<MessageView> rows = new ArrayList<>();
+        for (Segment segment : segments.descendingMap().values()) {
+            if (before != null && segment.start().isAfter(before.getTimestamp())) {
+                continue;
+            }
+            List<Block> blocks = segment.blocks(chatRoomId);
+            for (int i = blocks.size() - 1; i >= 0; i--) {
+                Block block = blocks.get(i);
+                if (before != null && compare(block.firstTimestamp, block.firstId, before) >= 0) {
+                    continue;
+                }
+                List<MessageView> decoded = segment.read(chatRoomId, block);
+                for (int j = decoded.size() - 1; j >= 0; j--) {
+                    MessageView row = decoded.get(j);
+                    if (before == null || compare(row.getTimestamp(), row.getId(), before) < 0) {
+                        rows.add(row);
+                        if (rows.size() == limit) {
+                            return rows;
+                        }
+                    }
+                }
+            }
+        }
+        return rows;
+    }
+
+    /** Oldest first, strictly after {@code after}. */
+    public List<MessageView> findAfter(UUID chatRoomId, MessageCursor after, int limit) {
+        List<MessageView> rows = new ArrayList<>();
+        for (Segment segment : segments.values()) {
+            if (!segment.end().isAfter(after.getTimestamp())) {
+                continue;
+            }
+            for (Block block : segment.blocks(chatRoomId)) {
+                if (compare(block.lastTimestamp, block.lastId, after) <= 0) {
+                    continue;
+                }
+                for (MessageView row : segment.read(chatRoomId, block)) {
+                    if (compare(row.getTimestamp(), row.getId(), after) > 0) {
+                        rows.add(row);
+                        if (rows.size() == limit) {
+                            return rows;
+                        }
+                    }
+                }
+            }
+        }
+        return rows;
+    }
+
+    /**
+     * Seq ascending, strictly above {@code afterSeq}. Messages archived without a seq are skipped.
+     * Blocks are in timestamp order, and a message can be timestamped before a smaller seq is
+     * reserved in its room, so every block is considered; once {@code limit} rows are held,
+     * only blocks that can still beat the largest of them are decoded.
+     */
+    public List<MessageView> findAfterSeq(UUID chatRoomId, long afterSeq, int limit) {
+        // Largest seq on top, so it is the one to drop when a smaller one turns up
+        PriorityQueue<MessageView> smallest = new PriorityQueue<>(Comparator.comparing(MessageView::getSeq).reversed());
+        for (Segment segment : segments.values()) {
+            for (Block block : segment.blocks(chatRoomId)) {
+                if (block.maxSeq == NO_SEQ || block.maxSeq <= afterSeq
+                        || (smallest.size() == limit && block.minSeq > smallest.peek().getSeq())) {
+                    continue;
+                }
+                for (MessageView row : segment.read(chatRoomId, block)) {
+                    if (row.getSeq() != null && row.getSeq() > afterSeq) {
+                        smallest.add(row);
+                        if (smallest.size() > limit) {
+                            smallest.poll();
+                        }
+                    }
+                }
+            }
+        }
+        List<MessageView> rows = new ArrayList<>(smallest);
+        rows.sort(Comparator.comparing(MessageView::getSeq));
+        return rows;
+    }
+
+    /** Looks up one archived message; the timestamp narrows the search to the blocks that can hold it. */
+    public Optional<MessageView> find(UUID chatRoomId, LocalDateTime timestamp, UUID id) {
+        Segment segment = segments.get(YearMonth.from(timestamp));
+        if (segment == null) {
+            return Optional.empty();
+        }
+        for (Block block : segment.blocks(chatRoomId)) {
+            // A millisecond of slack for timestamps rounded differently by MySQL
+            if (block.firstTimestamp.isAfter(timestamp.plusNanos(1_000_000))
+                    || block.lastTimestamp.isBefore(timestamp.minusNanos(1_000_000))) {
+                continue;
+            }
+            for (MessageView row : segment.read(chatRoomId, block)) {
+                if (row.getId().equals(id)) {
+                    return Optional.of(row);
+                }
+            }
+        }
+        return Optional.empty();
+    }
+
+    /**
+     * Starts the segment for {@code month}. Rows must be appended room by room, each room's
+     * rows oldest first; nothing is visible to readers until {@link SegmentWriter#commit()}.
+     */
+    public SegmentWriter openSegment(YearMonth month) throws IOException {
+        if (isArchived(month)) {
+            throw new IllegalStateException("Month already archived: " + month);
+        }
+        Files.createDirectories(dir);
+        return new SegmentWriter(month);
+    }
+
+    /** Loads the segments another instance committed since the last look. */
+    public void refresh() throws IOException {
+        int found = scan();
+        if (found > 0) {
+            log.info("Message archive: picked up {} new month(s) in {}", found, dir);
+        }
+    }
+
+    private void loadSegments() {
+        try {
+            scan();
+        } catch (IOException | RuntimeException e) {
+            throw new IllegalStateException("Cannot read message archive in " + dir, e);
+        }
+        log.info("Message archive: {} month(s) in {}", segments.size(), dir);
+    }
+
+    // Indexes are published by an atomic rename, so one that is listed is complete
+    private synchronized int scan() throws IOException {
+        if (!Files.isDirectory(dir)) {
+            return 0;
+        }
+        int found = 0;
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(dir, "messages-*.idx")) {
+            for (Path index : files) {
+                String name = index.getFileName().toString();
+                YearMonth month = YearMonth.parse(name.substring("messages-".length(), name.length() - ".idx".length()));
+                if (!segments.containsKey(month)) {
+                    segments.put(month, new Segment(month, segmentFile(month), index));
+                    found++;
+                }
+            }
+        }
+        return found;
+    }
+
+    private Path segmentFile(YearMonth month) {
+        return dir.resolve("messages-" + month + ".seg");
+    }
+
+    private Path indexFile(YearMonth month) {
+        return dir.resolve("messages-" + month + ".idx");
+    }
+
+    // Same order as the (timestamp, id) keyset in MySQL, where BINARY(16) compares unsigned
+    static int compare(LocalDateTime timestamp, UUID id, MessageCursor cursor) {
+        int byTime = timestamp.compareTo(cursor.getTimestamp());
+        if (byTime != 0) {
+            return byTime;
+        }
+        int byHigh = Long.compareUnsigned(id.getMostSignificantBits(), cursor.getId().getMostSignificantBits());
+        return byHigh != 0 ? byHigh : Long.compareUnsigned(id.getLeastSignificantBits(), cursor.getId().getLeastSignificantBits());
+    }
+
+    public class SegmentWriter implements Closeable {
+
+        private final YearMonth month;
+        private final Path segmentTmp;
+        private final Path indexTmp;
+        private final FileOutputStream out;
+        private final List<Map.Entry<UUID, Block>> index = new ArrayList<>();
+        private long offset;
+        private boolean committed;
+
+        private SegmentWriter(YearMonth month) throws IOException {
+            this.month = month;
+            this.segmentTmp = dir.resolve("messages-" + month + ".seg.tmp");
+            this.indexTmp = dir.resolve("messages-" + month + ".idx.tmp");
+            this.out = new FileOutputStream(segmentTmp.toFile());
+            DataOutputStream header = new DataOutputStream(out);
+            header.writeInt(SEGMENT_MAGIC);
+            header.flush();
+            this.offset = 4;
+        }
+
+        public void append(UUID chatRoomId, List<MessageView> ascending) throws IOException {
+            for (int from = 0; from < ascending.size(); from += blockSize) {
+                writeBlock(chatRoomId, ascending.subList(from, Math.min(ascending.size(), from + blockSize)));
+            }
+        }
+
+        private void writeBlock(UUID chatRoomId, List<MessageView> rows) throws IOException {
+            ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+            Deflater deflater = new Deflater(Deflater.DEFAULT_COMPRESSION, true);
+            long minSeq = NO_SEQ;
+            long maxSeq = NO_SEQ;
+            try (DataOutputStream data = new DataOutputStream(new DeflaterOutputStream(compressed, deflater))) {
+                data.writeInt(rows.size());
+                for (MessageView row : rows) {
+                    writeRow(data, row);
+                    if (row.getSeq() != null) {
+                        minSeq = minSeq == NO_SEQ ? row.getSeq() : Math.min(minSeq, row.getSeq());
+                        maxSeq = Math.max(maxSeq, row.getSeq());
+                    }
+                }
+            } finally {
+                deflater.end();
+            }
+
+            byte[] bytes = compressed.toByteArray();
+            out.write(bytes);
+            MessageView first = rows.get(0);
+            MessageView last = rows.get(rows.size() - 1);
+            index.add(Map.entry(chatRoomId, new Block(first.getTimestamp(), first.getId(), last.getTimestamp(), last.getId(),
+                    minSeq, maxSeq, offset, bytes.length)));
+            offset += bytes.length;
+        }
+
+        /** Makes the segment durable and visible: data first, then the index that publishes it. */
+        public void commit() throws IOException {
+            out.getFD().sync();
+            out.close();
+            try (FileOutputStream indexOut = new FileOutputStream(indexTmp.toFile());
+                 DataOutputStream data = new DataOutputStream(new BufferedOutputStream(indexOut))) {
+                data.writeInt(INDEX_MAGIC);
+                data.writeInt(index.size());
+                for (Map.Entry<UUID, Block> entry : index) {
+                    writeUuid(data, entry.getKey());
+                    entry.getValue().write(data);
+                }
+                data.flush();
+                indexOut.getFD().sync();
+            }
+            Files.move(segmentTmp, segmentFile(month), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            Files.move(indexTmp, indexFile(month), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            segments.put(month, new Segment(month, segmentFile(month), indexFile(month)));
+            committed = true;
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (!committed) {
+                out.close();
+                Files.deleteIfExists(segmentTmp);
+                Files.deleteIfExists(indexTmp);
+            }
+        }
+    }
+
+    private static class Segment {
+
+        private final YearMonth month;
+        private final Path file;
+        private final Map<UUID, List<Block>> blocksByRoom = new HashMap<>();
+
+        Segment(YearMonth month, Path file, Path index) throws IOException {
+            this.month = month;
+            this.file = file;
+            try (DataInputStream data = new DataInputStream(new BufferedInputStream(Files.newInputStream(index)))) {
+                if (data.readInt() != INDEX_MAGIC) {
+                    throw new IOException("Not a message archive index: " + index);
+                }
+                int count = data.readInt();
+                for (int i = 0; i < count; i++) {
+                    UUID chatRoomId = readUuid(data);
+                    blocksByRoom.computeIfAbsent(chatRoomId, id -> new ArrayList<>()).add(Block.read(data));
+                }
+            }
+        }
+
+        LocalDateTime start() {
+            return month.atDay(1).atStartOfDay();
+        }
+
+        LocalDateTime end() {
+            return month.plusMonths(1).atDay(1).atStartOfDay();
+        }
+
+        List<Block> blocks(UUID chatRoomId) {
+            return blocksByRoom.getOrDefault(chatRoomId, List.of());
+        }
+
+        List<MessageView> read(UUID chatRoomId, Block block) {
+            ByteBuffer buffer = ByteBuffer.allocate(block.length);
+            try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+                while (buffer.hasRemaining()) {
+                    if (channel.read(buffer, block.offset + buffer.position()) < 0) {
+                        throw new EOFException("Truncated block in " + file);
+                    }
+                }
+                Inflater inflater = new Inflater(true);
+                try (DataInputStream data = new DataInputStream(new InflaterInputStream(
+                        new ByteArrayInputStream(buffer.array()), inflater))) {
+                    int count = data.readInt();
+                    List<MessageView> rows = new ArrayList<>(count);
+                    for (int i = 0; i < count; i++) {
+                        rows.add(readRow(data, chatRoomId));
+                    }
+                    return rows;
+                } finally {
+                    inflater.end();
+                }
+            } catch (IOException e) {
+                throw new UncheckedIOException("Cannot read archived messages from " + file, e);
+            }
+        }
+    }
+
+    private static class Block {
+
+        final LocalDateTime firstTimestamp;
+        final UUID firstId;
+        final LocalDateTime lastTimestamp;
+        final UUID lastId;
+        final long minSeq;
+        final long maxSeq;
+        final long offset;
+        final int length;
+
+        Block(LocalDateTime firstTimestamp, UUID firstId, LocalDateTime lastTimestamp, UUID lastId,
+              long minSeq, long maxSeq, long offset, int length) {
+            this.firstTimestamp = firstTimestamp;
+            this.firstId = firstId;
+            this.lastTimestamp = lastTimestamp;
+            this.lastId = lastId;
+            this.minSeq = minSeq;
+            this.maxSeq = maxSeq;
+            this.offset = offset;
+            this.length = length;
+        }
+
+        void write(DataOutputStream data) throws IOException {
+            writeTimestamp(data, firstTimestamp);
+            writeUuid(data, firstId);
+            writeTimestamp(data, lastTimestamp);
+            writeUuid(data, lastId);
+            data.writeLong(minSeq);
+            data.writeLong(maxSeq);
+            data.writeLong(offset);
+            data.writeInt(length);
+        }
+
+        static Block read(DataInputStream data) throws IOException {
+            return new Block(readTimestamp(data), readUuid(data), readTimestamp(data), readUuid(data),
+                    data.readLong(), data.readLong(), data.readLong(), data.readInt());
+        }
+    }
+
+    private static void writeRow(DataOutputStream data, MessageView row) throws IOException {
+        writeUuid(data, row.getId());
+        data.writeLong(row.getSeq() == null ? NO_SEQ : row.getSeq());
+        writeUuid(data, row.getSenderId());
+        writeUuid(data, row.getReceiverId());
+        writeTimestamp(data, row.getTimestamp());
+        data.writeUTF(row.getStatus().name());
+        data.writeUTF(row.getMessageType() == null ? "" : row.getMessageType().name());
+        byte[] content = row.getContent() == null ? new byte[0] : row.getContent().getBytes(StandardCharsets.UTF_8);
+        data.writeInt(content.length);
+        data.write(content);
+    }
+
+    private static MessageView readRow(DataInputStream data, UUID chatRoomId) throws IOException {
+        UUID id = readUuid(data);
+        long seq = data.readLong();
+        UUID senderId = readUuid(data);
+        UUID receiverId = readUuid(data);
+        LocalDateTime timestamp = readTimestamp(data);
+        MessageStatus status = MessageStatus.valueOf(data.readUTF());
+        String type = data.readUTF();
+        byte[] content = new byte[data.readInt()];
+        data.readFully(content);
+        return new MessageView(id, chatRoomId, seq == NO_SEQ ? null : seq, senderId, receiverId,
+                new String(content, StandardCharsets.UTF_8), null, timestamp, status,
+                type.isEmpty() ? null : MessageType.valueOf(type));
+    }
+
+    private static void writeUuid(DataOutputStream data, UUID id) throws IOException {
+        data.writeLong(id.getMostSignificantBits());
+        data.writeLong(id.getLeastSignificantBits());
+    }
+
+    private static UUID readUuid(DataInputStream data) throws IOException {
+        return new UUID(data.readLong(), data.readLong());
+    }
+
+    private static void writeTimestamp(DataOutputStream data, LocalDateTime timestamp) throws IOException {
+        data.writeLong(timestamp.toEpochSecond(ZoneOffset.UTC));
+        data.writeInt(timestamp.getNano());
+    }
+
+    private static LocalDateTime readTimestamp(DataInputStream data) throws IOException {
+        long seconds = data.readLong();
+        return LocalDateTime.ofEpochSecond(seconds, data.readInt(), ZoneOffset.UTC);
+    }
+}
@@ -0,0 +1,23 @@
+package com.example.chat.repository;
+
+import com.example.chat.entity.MessageClientId;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.List;
+import java.util.UUID;
+
+public interface MessageClientIdRepository extends JpaRepository<MessageClientId, MessageClientId.Key> {
+
+    // Client ids are random, so the primary key prefix alone narrows this to the sends asked for
+    List<MessageClientId> findByClientMessageIdIn(Collection<UUID> clientMessageIds);
+
+    @Modifying
+    @Transactional
+    @Query("DELETE FROM MessageClientId k WHERE k.createdAt < :cutoff")
+    int deleteOlderThan(LocalDateTime cutoff);
+}
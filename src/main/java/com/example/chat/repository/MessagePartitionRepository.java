@@ -0,0 +1,73 @@
+package com.example.chat.repository;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.dao.DataAccessException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Repository;
+
+import java.time.YearMonth;
+import java.time.format.DateTimeFormatter;
+import java.util.List;
+import java.util.NavigableSet;
+import java.util.TreeSet;
+
+/**
+ * Monthly RANGE COLUMNS(timestamp) partitions of the messages table, named pYYYYMM,
+ * plus a catch-all pmax (see PARTITION_MESSAGES.sql). All methods are no-ops on an
+ * unpartitioned table, so the archive job can run against either layout.
+ */
+@Slf4j
+@Repository
+@RequiredArgsConstructor
+public class MessagePartitionRepository {
+
+    private static final DateTimeFormatter NAME = DateTimeFormatter.ofPattern("'p'yyyyMM");
+    private static final String CATCH_ALL = "pmax";
+
+    private final JdbcTemplate jdbcTemplate;
+
+    /** Months that have their own partition; empty when the table is not partitioned. */
+    public NavigableSet<YearMonth> monthlyPartitions() {
+        NavigableSet<YearMonth> months = new TreeSet<>();
+        for (String name : partitionNames()) {
+            if (!name.equals(CATCH_ALL)) {
+                try {
+                    months.add(YearMonth.parse(name, NAME));
+                } catch (RuntimeException ignored) {
+                    // Partitions from the initial layout (e.g. p_old) are not monthly
+                }
+            }
+        }
+        return months;
+    }
+
+    public boolean hasCatchAll() {
+        return partitionNames().contains(CATCH_ALL);
+    }
+
+    // Splitting an empty pmax is a metadata-only change
+    public void addMonth(YearMonth month) {
+        String name = month.format(NAME);
+        jdbcTemplate.execute("ALTER TABLE messages REORGANIZE PARTITION " + CATCH_ALL + " INTO (" +
+                "PARTITION " + name + " VALUES LESS THAN ('" + month.plusMonths(1).atDay(1) + "'), " +
+                "PARTITION " + CATCH_ALL + " VALUES LESS THAN (MAXVALUE))");
+        log.info("Added messages partition {}", name);
+    }
+
+    public void dropMonth(YearMonth month) {
+        String name = month.format(NAME);
+        jdbcTemplate.execute("ALTER TABLE messages DROP PARTITION " + name);
+        log.info("Dropped messages partition {}", name);
+    }
+
+    private List<String> partitionNames() {
+        try {
+            return jdbcTemplate.queryForList("SELECT PARTITION_NAME FROM information_schema.PARTITIONS " +
+                    "WHERE TABLE_SCHEMA = DATABASE() AND TABLE_NAME = 'messages' AND PARTITION_NAME IS NOT NULL", String.class);
+        } catch (DataAccessException e) {
+            // Not MySQL, or no access to information_schema: treat as unpartitioned
+            return List.of();
+        }
+    }
+}
@@ -1,13 +1,105 @@
 package com.example.chat.repository;
 
-import com.example.chat.entity.ChatRoom;
+import com.example.chat.dto.MessageView;
 import com.example.chat.entity.Message;
+import com.example.chat.entity.MessageStatus;
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.transaction.annotation.Transactional;
 
+import java.time.LocalDateTime;
+import java.util.Collection;
 import java.util.List;
+import java.util.Optional;
 import java.util.UUID;
 
 public interface MessageRepository extends JpaRepository<Message, UUID> {
-    List<Message> findTop50ByChatRoomOrderByTimestampAsc(ChatRoom chatRoom);
-    List<Message> findByChatRoomIdOrderByTimestampAsc(UUID chatRoomId);
+
+    String MESSAGE_VIEW = "SELECT new com.example.chat.dto.MessageView(" +
+            "m.id, m.chatRoom.id, m.seq, m.sender.id, m.receiver.id, m.content, m.contentCompressed, m.timestamp, m.status, m.messageType) FROM Message m ";
+
+    // Keyset pages over idx_messages_room_ts_id; cost depends on the page size, not the room size.
+    // Flat projections: no ChatRoom or User entities are loaded.
+    @Query(MESSAGE_VIEW + "WHERE m.chatRoom.id = :chatRoomId " +
+            "ORDER BY m.timestamp DESC, m.id DESC")
+    List<MessageView> findLatest(UUID chatRoomId, Pageable pageable);
+
+    @Query(MESSAGE_VIEW + "WHERE m.chatRoom.id = :chatRoomId " +
+            "AND (m.timestamp < :timestamp OR (m.timestamp = :timestamp AND m.id < :id)) " +
+            "ORDER BY m.timestamp DESC, m.id DESC")
+    List<MessageView> findBefore(UUID chatRoomId, LocalDateTime timestamp, UUID id, Pageable pageable);
+
+    @Query(MESSAGE_VIEW + "WHERE m.chatRoom.id = :chatRoomId " +
+            "AND (m.timestamp > :timestamp OR (m.timestamp = :timestamp AND m.id > :id)) " +
+            "ORDER BY m.timestamp ASC, m.id ASC")
+    List<MessageView> findAfter(UUID chatRoomId, LocalDateTime timestamp, UUID id, Pageable pageable);
+
+    // Delta sync for reconnecting clients, served by idx_messages_room_seq
+    @Query(MESSAGE_VIEW + "WHERE m.chatRoom.id = :chatRoomId AND m.seq > :afterSeq ORDER BY m.seq ASC")
+    List<MessageView> findAfterSeq(UUID chatRoomId, long afterSeq, Pageable pageable);
+
+    // Offline backlog over idx_messages_receiver_status, oldest first
+    @Query(MESSAGE_VIEW + "WHERE m.receiver.id = :receiverId AND m.status = com.example.chat.entity.MessageStatus.PENDING " +
+            "ORDER BY m.timestamp ASC, m.id ASC")
+    List<MessageView> findPending(UUID receiverId, Pageable pageable);
+
+    // Guarded by status so a message that was already read is not moved back
+    @Modifying
+    @Transactional
+    @Query("UPDATE Message m SET m.status = com.example.chat.entity.MessageStatus.DELIVERED " +
+            "WHERE m.id IN :ids AND m.status = com.example.chat.entity.MessageStatus.PENDING")
+    int markDelivered(Collection<UUID> ids);
+
+    // Read watermark: one ranged UPDATE over everything the reader received up to the position
+    @Modifying
+    @Transactional
+    @Query("UPDATE Message m SET m.status = com.example.chat.entity.MessageStatus.READ " +
+            "WHERE m.chatRoom.id = :chatRoomId AND m.receiver.id = :readerId " +
+            "AND m.status <> com.example.chat.entity.MessageStatus.READ " +
+            "AND (m.timestamp < :timestamp OR (m.timestamp = :timestamp AND m.id <= :id))")
+    int markReadUpTo(UUID chatRoomId, UUID readerId, LocalDateTime timestamp, UUID id);
+
+    @Modifying
+    @Transactional
+    @Query("UPDATE Message m SET m.status = com.example.chat.entity.MessageStatus.READ " +
+            "WHERE m.chatRoom.id = :chatRoomId AND m.receiver.id = :readerId " +
+            "AND m.status <> com.example.chat.entity.MessageStatus.READ " +
+            "AND m.timestamp <= :timestamp")
+    int markReadUpTo(UUID chatRoomId, UUID readerId, LocalDateTime timestamp);
+
+    @Query("SELECT m.chatRoom.id FROM Message m WHERE m.id = :id")
+    Optional<UUID> findChatRoomIdById(UUID id);
+
+    // Search index catch-up walks the primary key; ids are time-ordered
+    @Query("SELECT m.id FROM Message m WHERE m.id > :afterId ORDER BY m.id ASC")
+    List<UUID> findIdsAfter(UUID afterId, Pageable pageable);
+
+    @Query(MESSAGE_VIEW + "WHERE m.id IN :ids")
+    List<MessageView> findViewsByIds(Collection<UUID> ids);
+
+    // Undelivered messages are never archived. By timestamp, not id: legacy random ids sort anywhere.
+    @Query("SELECT MIN(m.timestamp) FROM Message m WHERE m.timestamp >= :from " +
+            "AND m.status <> com.example.chat.entity.MessageStatus.PENDING")
+    Optional<LocalDateTime> findOldestArchivableSince(LocalDateTime from);
+
+    @Query("SELECT m.id FROM Message m WHERE m.timestamp >= :start AND m.timestamp < :end " +
+            "AND m.status = com.example.chat.entity.MessageStatus.PENDING")
+    List<UUID> findPendingIdsBetween(LocalDateTime start, LocalDateTime end);
+
+    @Query("SELECT DISTINCT m.chatRoom.id FROM Message m WHERE m.timestamp >= :start AND m.timestamp < :end")
+    List<UUID> findChatRoomIdsBetween(LocalDateTime start, LocalDateTime end);
+
+    // Archived months on an unpartitioned table are removed in short transactions
+    @Modifying
+    @Transactional
+    @Query(value = "DELETE FROM messages WHERE timestamp >= :start AND timestamp < :end LIMIT :limit", nativeQuery = true)
+    int deleteBetween(LocalDateTime start, LocalDateTime end, int limit);
+
+    // Single-column UPDATE instead of loading and merging the whole entity
+    @Modifying
+    @Transactional
+    @Query("UPDATE Message m SET m.status = :status WHERE m.id = :id")
+    int updateStatus(UUID id, MessageStatus status);
 }
@@ -0,0 +1,58 @@
+package com.example.chat.repository;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.stereotype.Repository;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+
+/**
+ * MySQL named locks (GET_LOCK), so a job every instance schedules runs on one of them at a
+ * time. The lock belongs to a pooled connection held for the length of the job; MySQL frees
+ * it if that connection dies, so a crashed instance never leaves it taken.
+ */
+@Repository
+@RequiredArgsConstructor
+public class NamedLockRepository {
+
+    private final DataSource dataSource;
+
+    public interface Work {
+        void run() throws Exception;
+    }
+
+    /** Runs {@code work} unless another session holds {@code name}; false when it was skipped. */
+    public boolean runExclusively(String name, Work work) throws Exception {
+        try (Connection connection = dataSource.getConnection()) {
+            if (!acquire(connection, name)) {
+                return false;
+            }
+            try {
+                work.run();
+            } finally {
+                release(connection, name);
+            }
+            return true;
+        }
+    }
+
+    // Does not wait: the instance that got there first does the work
+    private static boolean acquire(Connection connection, String name) throws SQLException {
+        try (PreparedStatement statement = connection.prepareStatement("SELECT GET_LOCK(?, 0)")) {
+            statement.setString(1, name);
+            try (ResultSet result = statement.executeQuery()) {
+                return result.next() && result.getInt(1) == 1;
+            }
+        }
+    }
+
+    private static void release(Connection connection, String name) throws SQLException {
+        try (PreparedStatement statement = connection.prepareStatement("SELECT RELEASE_LOCK(?)")) {
+            statement.setString(1, name);
+            statement.executeQuery().close();
+        }
+    }
+}
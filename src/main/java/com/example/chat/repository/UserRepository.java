@@ -1,8 +1,11 @@
 package com.example.chat.repository;
 
 import com.example.chat.entity.User;
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
 
+import java.time.LocalDateTime;
+import java.util.List;
 import java.util.Optional;
 import java.util.UUID;
 
@@ -10,4 +13,10 @@ public interface UserRepository extends JpaRepository<User, UUID> {
     Optional<User> findByUsername(String username);
     boolean existsByUsername(String username);
     Optional<User> findById(UUID id);
+
+    // Keyset batches over the primary key for loading the whole table
+    List<User> findByIdGreaterThanOrderByIdAsc(UUID after, Pageable pageable);
+
+    // Registrations from a point in time on, for instances that only hear about their own
+    List<User> findByCreatedAtGreaterThanEqual(LocalDateTime from, Pageable pageable);
 }
@@ -6,6 +6,7 @@ import com.example.chat.dto.RegisterRequest;
 import com.example.chat.entity.User;
 import com.example.chat.repository.UserRepository;
 import lombok.RequiredArgsConstructor;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.security.authentication.AuthenticationManager;
 import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
 import org.springframework.security.crypto.password.PasswordEncoder;
@@ -19,6 +20,7 @@ public class AuthService {
     private final PasswordEncoder passwordEncoder;
     private final JwtProvider jwtProvider;
     private final AuthenticationManager authenticationManager;
+    private final ApplicationEventPublisher eventPublisher;
 
     public AuthResponse register(RegisterRequest request) {
         if (userRepository.existsByUsername(request.getUsername())) {
@@ -31,13 +33,8 @@ public class AuthService {
                 .lastName(request.getLastName())
                 .build();
         userRepository.save(user);
-        return new AuthResponse(jwtProvider.generateToken(
-                org.springframework.security.core.userdetails.User
-                        .withUsername(user.getUsername())
-                        .password(user.getPassword())
-                        .authorities("USER")
-                        .build()
-        ));
+        eventPublisher.publishEvent(new UserChangedEvent(user.getId(), user.getUsername()));
+        return new AuthResponse(jwtProvider.generateToken(user.getId(), user.getUsername()));
     }
 
     public AuthResponse login(LoginRequest request) {
@@ -46,12 +43,6 @@ public class AuthService {
         );
         var user = userRepository.findByUsername(request.getUsername())
                 .orElseThrow(() -> new RuntimeException("User not found"));
-        return new AuthResponse(jwtProvider.generateToken(
-                org.springframework.security.core.userdetails.User
-                        .withUsername(user.getUsername())
-                        .password(user.getPassword())
-                        .authorities("USER")
-                        .build()
-        ));
+        return new AuthResponse(jwtProvider.generateToken(user.getId(), user.getUsername()));
     }
 }
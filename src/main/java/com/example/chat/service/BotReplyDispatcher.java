@@ -0,0 +1,192 @@
+package com.example.chat.service;
+
+import com.example.chat.dto.ChatMessageDto;
+import com.example.chat.dto.MessageView;
+import com.example.chat.dto.UserIdentity;
+import com.example.chat.entity.ChatRoom;
+import com.example.chat.entity.Message;
+import com.example.chat.entity.MessageStatus;
+import com.example.chat.entity.MessageType;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PreDestroy;
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.time.LocalDateTime;
+import java.util.ArrayDeque;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Runs DoctorAssistant turns off the message pipeline. Turns for the same chat room
+ * run one after another in arrival order; different rooms run in parallel on virtual
+ * threads, with at most {@code chat.bot.max-concurrency} OpenAI calls in flight.
+ * Once {@code chat.bot.queue-capacity} turns are waiting, new turns are answered with
+ * a "busy" reply instead of being queued.
+ */
+@Slf4j
+@Service
+public class BotReplyDispatcher {
+
+    static final String BUSY_REPLY = "I'm helping a lot of patients right now. Please send your message again in a moment.";
+
+    private final ChatBotService chatBotService;
+    private final MessageWriter messageWriter;
+    private final ChatService chatService;
+    private final RecentMessageCache recentMessageCache;
+    private final UserIdentityCache userIdentityCache;
+
+    private final ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor();
+    private final Semaphore inFlight;
+    private final int queueCapacity;
+    private final AtomicInteger queued = new AtomicInteger();
+    // Head of each deque is the turn currently being answered; absent key means the room is idle
+    private final Map<UUID, ArrayDeque<BotTurn>> rooms = new ConcurrentHashMap<>();
+
+    private final Timer replyLatency;
+    private final Counter rejected;
+
+    public BotReplyDispatcher(ChatBotService chatBotService,
+                              MessageWriter messageWriter,
+                              ChatService chatService,
+                              RecentMessageCache recentMessageCache,
+                              UserIdentityCache userIdentityCache,
+                              MeterRegistry meterRegistry,
+                              @Value("${chat.bot.max-concurrency:16}") int maxConcurrency,
+                              @Value("${chat.bot.queue-capacity:200}") int queueCapacity) {
+        this.chatBotService = chatBotService;
+        this.messageWriter = messageWriter;
+        this.chatService = chatService;
+        this.recentMessageCache = recentMessageCache;
+        this.userIdentityCache = userIdentityCache;
+        this.inFlight = new Semaphore(maxConcurrency);
+        this.queueCapacity = queueCapacity;
+
+        Gauge.builder("chat.bot.queue.depth", queued, AtomicInteger::get)
+                .description("Bot turns waiting or being answered")
+                .register(meterRegistry);
+        this.replyLatency = Timer.builder("chat.bot.reply.latency")
+                .description("Time from enqueue to bot reply commit")
+                .register(meterRegistry);
+        this.rejected = Counter.builder("chat.bot.rejected")
+                .description("Bot turns shed because the queue was full")
+                .register(meterRegistry);
+    }
+
+    public void submit(ChatMessageDto messageDto, ChatRoom chatRoom, UserIdentity patient, UserIdentity bot) {
+        BotTurn turn = new BotTurn(chatRoom, patient, bot, messageDto.getContent(),
+                messageDto.getMessageType(), System.nanoTime());
+
+        if (queued.incrementAndGet() > queueCapacity) {
+            queued.decrementAndGet();
+            rejected.increment();
+            deliverBusyReply(turn);
+            return;
+        }
+
+        boolean[] idle = {false};
+        rooms.compute(chatRoom.getId(), (id, turns) -> {
+            if (turns == null) {
+                turns = new ArrayDeque<>();
+                idle[0] = true;
+            }
+            turns.add(turn);
+            return turns;
+        });
+        if (idle[0]) {
+            executor.execute(() -> drain(turn));
+        }
+    }
+
+    private void drain(BotTurn first) {
+        UUID chatRoomId = first.getChatRoom().getId();
+        BotTurn turn = first;
+        while (turn != null) {
+            try {
+                answer(turn);
+            } catch (Exception e) {
+                log.error("Bot reply failed for chat room {}", chatRoomId, e);
+            } finally {
+                queued.decrementAndGet();
+            }
+
+            BotTurn[] next = {null};
+            rooms.computeIfPresent(chatRoomId, (id, turns) -> {
+                turns.poll();
+                next[0] = turns.peek();
+                return turns.isEmpty() ? null : turns;
+            });
+            turn = next[0];
+        }
+    }
+
+    private void answer(BotTurn turn) throws InterruptedException {
+        String botResponse;
+        inFlight.acquire();
+        try {
+            botResponse = MessageProcessor.truncate(chatBotService.processBotMessage(
+                    turn.getContent(),
+                    turn.getChatRoom().getId(),
+                    turn.getPatient().getUsername()
+            ));
+        } finally {
+            inFlight.release();
+        }
+
+        Message botMsg = Message.builder()
+                .chatRoom(turn.getChatRoom())
+                .sender(userIdentityCache.reference(turn.getBot().getId()))
+                .receiver(userIdentityCache.reference(turn.getPatient().getId()))
+                .content(botResponse)
+                .timestamp(LocalDateTime.now())
+                .status(MessageStatus.DELIVERED) // Bot messages are always delivered
+                .messageType(turn.getMessageType())
+                .build();
+        // Broadcast through the outbox once committed
+        messageWriter.insert(List.of(botMsg));
+        recentMessageCache.append(turn.getChatRoom().getId(), MessageView.of(botMsg));
+        replyLatency.record(System.nanoTime() - turn.getEnqueuedAt(), TimeUnit.NANOSECONDS);
+    }
+
+    // Not persisted: shedding load should not add a database write
+    private void deliverBusyReply(BotTurn turn) {
+        chatService.deliverMessage(toDto(turn, BUSY_REPLY, LocalDateTime.now()));
+    }
+
+    private ChatMessageDto toDto(BotTurn turn, String content, LocalDateTime timestamp) {
+        ChatMessageDto botResponseDto = new ChatMessageDto();
+        botResponseDto.setChatRoomId(turn.getChatRoom().getId());
+        botResponseDto.setFrom(turn.getBot().getId());
+        botResponseDto.setTo(turn.getPatient().getId());
+        botResponseDto.setContent(content);
+        botResponseDto.setTimestamp(timestamp);
+        botResponseDto.setStatus(MessageStatus.DELIVERED);
+        botResponseDto.setMessageType(turn.getMessageType());
+        return botResponseDto;
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdown();
+    }
+
+    @Getter
+    @RequiredArgsConstructor
+    private static class BotTurn {
+        private final ChatRoom chatRoom;
+        private final UserIdentity patient;
+        private final UserIdentity bot;
+        private final String content;
+        private final MessageType messageType;
+        private final long enqueuedAt;
+    }
+}
@@ -15,6 +15,7 @@ import java.time.LocalDateTime;
 import java.time.LocalTime;
 import java.time.format.DateTimeFormatter;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.stream.Collectors;
 
 @Slf4j
@@ -34,8 +35,8 @@ public class ChatBotService {
     private static final DateTimeFormatter DATE_FORMATTER = DateTimeFormatter.ofPattern("yyyy-MM-dd");
     private static final DateTimeFormatter TIME_FORMATTER = DateTimeFormatter.ofPattern("HH:mm");
 
-    // Store conversation history per chat room
-    private final Map<UUID, List<Map<String, Object>>> conversationHistory = new HashMap<>();
+    // Store conversation history per chat room; BotReplyDispatcher runs one turn per room at a time
+    private final Map<UUID, List<Map<String, Object>>> conversationHistory = new ConcurrentHashMap<>();
 
     public String processBotMessage(String userMessage, UUID chatRoomId, String username) {
         try {
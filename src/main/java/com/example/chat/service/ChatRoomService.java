@@ -1,17 +1,26 @@
 package com.example.chat.service;
 
 import com.example.chat.dto.ChatRoomWithHistoryDto;
+import com.example.chat.dto.MessageCursor;
+import com.example.chat.dto.MessagePageDto;
+import com.example.chat.dto.MessageView;
+import com.example.chat.dto.SyncPageDto;
+import com.example.chat.dto.UserDto;
 import com.example.chat.entity.ChatRoom;
-import com.example.chat.entity.Message;
+import com.example.chat.entity.TimeOrderedUuidGenerator;
 import com.example.chat.entity.User;
 import com.example.chat.repository.ChatRoomRepository;
+import com.example.chat.repository.MessageArchive;
 import com.example.chat.repository.MessageRepository;
 import com.example.chat.repository.UserRepository;
 import lombok.RequiredArgsConstructor;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.security.access.AccessDeniedException;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
-import java.util.List;
+import java.util.*;
 
 @Service
 @RequiredArgsConstructor
@@ -20,6 +29,20 @@ public class ChatRoomService {
     private final UserRepository userRepository;
     private final ChatRoomRepository chatRoomRepository;
     private final MessageRepository messageRepository;
+    private final RecentMessageCache recentMessageCache;
+    private final MessageArchive messageArchive;
+
+    // The order of the history index: timestamp, then id as BINARY(16)
+    private static final Comparator<MessageView> OLDEST_FIRST = Comparator.comparing(MessageView::getTimestamp)
+            .thenComparing(MessageView::getId, TimeOrderedUuidGenerator.BINARY_ORDER);
+    private static final Comparator<MessageView> NEWEST_FIRST = OLDEST_FIRST.reversed();
+    private static final Comparator<MessageView> BY_SEQ = Comparator.comparing(MessageView::getSeq);
+
+    @Value("${chat.history.page-size:50}")
+    private int defaultPageSize;
+
+    @Value("${chat.history.max-page-size:200}")
+    private int maxPageSize;
 
     @Transactional
     public ChatRoomWithHistoryDto getOrCreateChatRoom(String currentUsername, String targetUsername) {
@@ -38,10 +61,151 @@ public class ChatRoomService {
                     return chatRoomRepository.save(newRoom);
                 });
 
-        // Load last 50 messages by timestamp
-        List<Message> history = messageRepository
-                .findTop50ByChatRoomOrderByTimestampAsc(room);
+        // Newest page of history, oldest first
+        MessagePageDto page = loadPage(room, null, null, defaultPageSize);
+
+        return new ChatRoomWithHistoryDto(room.getId(), page.getMessages(), page.getUsers(), page.getBefore());
+    }
+
+    /**
+     * Keyset-paginated history. With neither cursor the newest page is returned;
+     * {@code before} pages towards older messages and {@code after} towards newer ones.
+     */
+    @Transactional(readOnly = true)
+    public MessagePageDto getHistory(String currentUsername, UUID chatRoomId, String before, String after, Integer limit) {
+        if (before != null && after != null) {
+            throw new IllegalArgumentException("Use either before or after, not both");
+        }
+        ChatRoom room = memberRoom(currentUsername, chatRoomId);
+
+        return loadPage(room, before == null ? null : MessageCursor.decode(before),
+                after == null ? null : MessageCursor.decode(after), pageSize(limit));
+    }
+
+    /**
+     * Everything in the room with a sequence number above {@code afterSeq}, in order.
+     * A client that sees a gap in live seqs, or reconnects, resumes from the last seq it holds.
+     */
+    @Transactional(readOnly = true)
+    public SyncPageDto getSince(String currentUsername, UUID chatRoomId, long afterSeq, Integer limit) {
+        if (afterSeq < 0) {
+            throw new IllegalArgumentException("afterSeq must not be negative");
+        }
+        ChatRoom room = memberRoom(currentUsername, chatRoomId);
+
+        int pageSize = pageSize(limit);
+        List<MessageView> rows = merge(
+                messageRepository.findAfterSeq(chatRoomId, afterSeq, PageRequest.of(0, pageSize + 1)),
+                messageArchive.findAfterSeq(chatRoomId, afterSeq, pageSize + 1),
+                BY_SEQ, pageSize + 1);
+        boolean hasMore = rows.size() > pageSize;
+        if (hasMore) {
+            rows.remove(rows.size() - 1);
+        }
+        return new SyncPageDto(rows, room.getLastSeq(), hasMore);
+    }
+
+    private ChatRoom memberRoom(String currentUsername, UUID chatRoomId) {
+        User currentUser = userRepository.findByUsername(currentUsername)
+                .orElseThrow(() -> new RuntimeException("Current user not found"));
+        ChatRoom room = chatRoomRepository.findById(chatRoomId)
+                .orElseThrow(() -> new RuntimeException("ChatRoom not found"));
+        if (!room.getUser1().getId().equals(currentUser.getId()) && !room.getUser2().getId().equals(currentUser.getId())) {
+            throw new AccessDeniedException("Not a member of this chat room");
+        }
+        return room;
+    }
+
+    private int pageSize(Integer limit) {
+        return limit == null ? defaultPageSize : Math.max(1, Math.min(limit, maxPageSize));
+    }
+
+    private MessagePageDto loadPage(ChatRoom room, MessageCursor before, MessageCursor after, int pageSize) {
+        UUID chatRoomId = room.getId();
+        // One extra row tells us whether another page exists in the paging direction
+        PageRequest window = PageRequest.of(0, pageSize + 1);
+        if (after != null) {
+            List<MessageView> rows = merge(
+                    messageRepository.findAfter(chatRoomId, after.getTimestamp(), after.getId(), window),
+                    messageArchive.findAfter(chatRoomId, after, pageSize + 1),
+                    OLDEST_FIRST, pageSize + 1);
+            if (rows.size() > pageSize) {
+                rows.remove(rows.size() - 1);
+            }
+            // The cursor message itself is older, so paging back is always possible
+            return toPage(room, rows, true, after);
+        }
+
+        List<MessageView> rows = new ArrayList<>(before == null
+                ? latest(room, pageSize + 1)
+                : messageRepository.findBefore(chatRoomId, before.getTimestamp(), before.getId(), window));
+        if (rows.size() <= pageSize || reachesArchive(rows.get(rows.size() - 1))) {
+            // MySQL has nothing older, or holds messages older than the archive's newest month
+            rows = merge(rows, messageArchive.findBefore(chatRoomId, before, pageSize + 1), NEWEST_FIRST, pageSize + 1);
+        }
+        boolean olderExists = rows.size() > pageSize;
+        if (olderExists) {
+            rows.remove(rows.size() - 1);
+        }
+        Collections.reverse(rows);
+        return toPage(room, rows, olderExists, before);
+    }
+
+    private boolean reachesArchive(MessageView row) {
+        return messageArchive.archivedUntil().map(row.getTimestamp()::isBefore).orElse(false);
+    }
+
+    /**
+     * The first {@code limit} distinct messages of both tiers. Messages still undelivered when
+     * their month was archived stay in MySQL, among the archive's months, and an archive run
+     * stopped before its delete leaves rows in both; the MySQL copy wins.
+     */
+    private static List<MessageView> merge(List<MessageView> mysql, List<MessageView> archived,
+                                           Comparator<MessageView> order, int limit) {
+        if (archived.isEmpty()) {
+            return new ArrayList<>(mysql);
+        }
+        List<MessageView> all = new ArrayList<>(mysql);
+        all.addAll(archived);
+        // Stable, so of two copies of a message the MySQL one comes first
+        all.sort(order);
+        List<MessageView> merged = new ArrayList<>(Math.min(limit, all.size()));
+        Set<UUID> seen = new HashSet<>();
+        for (MessageView row : all) {
+            if (seen.add(row.getId())) {
+                merged.add(row);
+                if (merged.size() == limit) {
+                    break;
+                }
+            }
+        }
+        return merged;
+    }
+
+    // Opening a room reads the newest page, which the recent-message cache usually holds.
+    // The room row was just read, so its last seq tells whether the cache is behind.
+    private List<MessageView> latest(ChatRoom room, int count) {
+        UUID chatRoomId = room.getId();
+        return recentMessageCache.latest(chatRoomId, count, room.getLastSeq()).orElseGet(() -> {
+            long loadStarted = recentMessageCache.clock();
+            List<MessageView> rows = messageRepository.findLatest(chatRoomId, PageRequest.of(0, count));
+            recentMessageCache.fill(chatRoomId, rows, rows.size() == count, loadStarted);
+            return rows;
+        });
+    }
 
-        return new ChatRoomWithHistoryDto(room.getId(), history);
+    private MessagePageDto toPage(ChatRoom room, List<MessageView> ascending, boolean olderExists, MessageCursor requested) {
+        // A room has two members, so they are the only users a page can reference
+        List<UserDto> users = List.of(UserDto.from(room.getUser1()), UserDto.from(room.getUser2()));
+        if (ascending.isEmpty()) {
+            // Keep the caller's position so polling with ?after= can continue from it
+            String position = requested == null ? null : requested.encode();
+            return new MessagePageDto(ascending, users, null, position);
+        }
+        MessageView oldest = ascending.get(0);
+        MessageView newest = ascending.get(ascending.size() - 1);
+        return new MessagePageDto(ascending, users,
+                olderExists ? new MessageCursor(oldest.getTimestamp(), oldest.getId()).encode() : null,
+                new MessageCursor(newest.getTimestamp(), newest.getId()).encode());
     }
 }
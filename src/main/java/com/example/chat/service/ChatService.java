@@ -1,10 +1,11 @@
 package com.example.chat.service;
 
+import com.example.chat.config.KafkaConfig;
 import com.example.chat.dto.ChatMessageDto;
 import com.example.chat.dto.MessageStatusUpdateDto;
 import com.example.chat.dto.OutgoingChatMessageDto;
-import com.example.chat.entity.User;
-import com.example.chat.repository.UserRepository;
+import com.example.chat.dto.SendAckDto;
+import com.example.chat.dto.UserIdentity;
 import lombok.RequiredArgsConstructor;
 import org.springframework.kafka.core.KafkaTemplate;
 import org.springframework.messaging.simp.SimpMessagingTemplate;
@@ -16,10 +17,10 @@ public class ChatService {
 
     private final KafkaTemplate<String, ChatMessageDto> kafkaTemplate;
     private final SimpMessagingTemplate messagingTemplate;
-    private final UserRepository userRepository;
+    private final UserIdentityCache userIdentityCache;
 
     public void sendMessage(ChatMessageDto messageDto) {
-        kafkaTemplate.send("chat.messages", messageDto.getChatRoomId().toString(), messageDto);
+        kafkaTemplate.send(KafkaConfig.CHAT_MESSAGES_TOPIC, messageDto.getChatRoomId().toString(), messageDto);
     }
 
     public void broadcastStatus(MessageStatusUpdateDto statusDto, String chatRoomId) {
@@ -32,14 +33,22 @@ public class ChatService {
         messagingTemplate.convertAndSend("/topic/messages/" + messageDto.getChatRoomId(), outgoingMessage);
     }
     
+    // Only the sender's own sessions receive it: clients subscribe to /user/queue/acks
+    public void acknowledge(String username, SendAckDto ack) {
+        messagingTemplate.convertAndSendToUser(username, "/queue/acks", ack);
+    }
+
     private OutgoingChatMessageDto convertToOutgoingFormat(ChatMessageDto messageDto) {
-        User sender = userRepository.findById(messageDto.getFrom())
+        UserIdentity sender = userIdentityCache.byId(messageDto.getFrom())
                 .orElseThrow(() -> new RuntimeException("Sender not found"));
-        User receiver = userRepository.findById(messageDto.getTo())
+        UserIdentity receiver = userIdentityCache.byId(messageDto.getTo())
                 .orElseThrow(() -> new RuntimeException("Receiver not found"));
         
         OutgoingChatMessageDto outgoing = new OutgoingChatMessageDto();
+        outgoing.setId(messageDto.getId());
         outgoing.setChatRoomId(messageDto.getChatRoomId());
+        outgoing.setClientMessageId(messageDto.getClientMessageId());
+        outgoing.setSeq(messageDto.getSeq());
         outgoing.setContent(messageDto.getContent());
         outgoing.setTimestamp(messageDto.getTimestamp());
         outgoing.setStatus(messageDto.getStatus());
@@ -0,0 +1,148 @@
+package com.example.chat.service;
+
+import com.example.chat.config.ChatMessageCodec;
+import com.example.chat.config.KafkaConfig;
+import com.example.chat.dto.ChatMessageDto;
+import com.example.chat.dto.DeadLetterDto;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.kafka.clients.consumer.Consumer;
+import org.apache.kafka.clients.consumer.ConsumerConfig;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.common.TopicPartition;
+import org.apache.kafka.common.errors.SerializationException;
+import org.apache.kafka.common.header.Header;
+import org.apache.kafka.common.serialization.ByteArrayDeserializer;
+import org.springframework.kafka.core.ConsumerFactory;
+import org.springframework.kafka.support.KafkaHeaders;
+import org.springframework.stereotype.Service;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.*;
+
+/**
+ * Reads chat.messages-dlt for operators. Each call opens a short-lived consumer with manual
+ * assignment and no group membership, so reading never moves any offsets. Replaying sends
+ * the message back to chat.messages; sends with a client message id are deduplicated there.
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class DeadLetterService {
+
+    private static final Duration POLL = Duration.ofMillis(200);
+    private static final Duration READ_TIMEOUT = Duration.ofSeconds(5);
+
+    private final ConsumerFactory<Object, Object> consumerFactory;
+    private final KafkaProducerService kafkaProducerService;
+    private final MeterRegistry meterRegistry;
+
+    /** The newest {@code limit} dead letters across all partitions, newest first. */
+    public List<DeadLetterDto> latest(int limit) {
+        if (limit < 1) {
+            throw new IllegalArgumentException("limit must be positive");
+        }
+        try (Consumer<String, byte[]> consumer = openConsumer()) {
+            List<TopicPartition> partitions = consumer.partitionsFor(KafkaConfig.CHAT_MESSAGES_DLT).stream()
+                    .map(info -> new TopicPartition(info.topic(), info.partition()))
+                    .toList();
+            if (partitions.isEmpty()) {
+                return List.of();
+            }
+            consumer.assign(partitions);
+            Map<TopicPartition, Long> begin = consumer.beginningOffsets(partitions);
+            Map<TopicPartition, Long> end = consumer.endOffsets(partitions);
+            for (TopicPartition partition : partitions) {
+                consumer.seek(partition, Math.max(begin.get(partition), end.get(partition) - limit));
+            }
+
+            List<DeadLetterDto> found = new ArrayList<>();
+            long deadline = System.nanoTime() + READ_TIMEOUT.toNanos();
+            while (!caughtUp(consumer, end) && System.nanoTime() < deadline) {
+                for (ConsumerRecord<String, byte[]> record : consumer.poll(POLL)) {
+                    found.add(toDto(record));
+                }
+            }
+            found.sort(Comparator.comparing(DeadLetterDto::getDeadLetteredAt).reversed());
+            return found.size() > limit ? found.subList(0, limit) : found;
+        }
+    }
+
+    /** Sends the dead letter at this position back to chat.messages; empty if there is none. */
+    public Optional<DeadLetterDto> replay(int partition, long offset) {
+        TopicPartition topicPartition = new TopicPartition(KafkaConfig.CHAT_MESSAGES_DLT, partition);
+        try (Consumer<String, byte[]> consumer = openConsumer()) {
+            consumer.assign(List.of(topicPartition));
+            long end = consumer.endOffsets(List.of(topicPartition)).get(topicPartition);
+            if (offset < consumer.beginningOffsets(List.of(topicPartition)).get(topicPartition) || offset >= end) {
+                return Optional.empty();
+            }
+            consumer.seek(topicPartition, offset);
+
+            long deadline = System.nanoTime() + READ_TIMEOUT.toNanos();
+            while (System.nanoTime() < deadline) {
+                for (ConsumerRecord<String, byte[]> record : consumer.poll(POLL)) {
+                    if (record.offset() != offset) {
+                        // Gone to retention or compaction in the meantime
+                        return Optional.empty();
+                    }
+                    DeadLetterDto deadLetter = toDto(record);
+                    if (deadLetter.getMessage() == null) {
+                        throw new IllegalArgumentException("Dead letter " + partition + "@" + offset + " cannot be decoded");
+                    }
+                    kafkaProducerService.sendMessage(deadLetter.getMessage());
+                    meterRegistry.counter("chat.kafka.records", "stage", "dlt", "outcome", "replayed").increment();
+                    log.info("Replayed dead letter {}@{} for chat room {}", partition, offset,
+                            deadLetter.getMessage().getChatRoomId());
+                    return Optional.of(deadLetter);
+                }
+            }
+            return Optional.empty();
+        }
+    }
+
+    // Values are read as raw bytes so an undecodable record can still be listed
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    private Consumer<String, byte[]> openConsumer() {
+        Properties overrides = new Properties();
+        overrides.put(ConsumerConfig.VALUE_DESERIALIZER_CLASS_CONFIG, ByteArrayDeserializer.class);
+        overrides.put(ConsumerConfig.ENABLE_AUTO_COMMIT_CONFIG, false);
+        return (Consumer) consumerFactory.createConsumer("chat-dead-letters", null, null, overrides);
+    }
+
+    private static boolean caughtUp(Consumer<String, byte[]> consumer, Map<TopicPartition, Long> end) {
+        for (Map.Entry<TopicPartition, Long> partition : end.entrySet()) {
+            if (consumer.position(partition.getKey()) < partition.getValue()) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static DeadLetterDto toDto(ConsumerRecord<String, byte[]> record) {
+        ChatMessageDto message = null;
+        if (record.value() != null) {
+            try {
+                message = ChatMessageCodec.decode(record.value());
+            } catch (SerializationException e) {
+                // Listed without a message; cannot be replayed
+            }
+        }
+        return new DeadLetterDto(record.partition(), record.offset(),
+                LocalDateTime.ofInstant(Instant.ofEpochMilli(record.timestamp()), ZoneId.systemDefault()),
+                header(record, KafkaHeaders.DLT_ORIGINAL_TOPIC),
+                header(record, KafkaHeaders.DLT_EXCEPTION_FQCN),
+                header(record, KafkaHeaders.DLT_EXCEPTION_MESSAGE),
+                message);
+    }
+
+    private static String header(ConsumerRecord<?, ?> record, String name) {
+        Header header = record.headers().lastHeader(name);
+        return header == null ? null : new String(header.value(), StandardCharsets.UTF_8);
+    }
+}
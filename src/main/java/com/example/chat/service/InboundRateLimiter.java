@@ -0,0 +1,158 @@
+package com.example.chat.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Per-user token buckets for inbound STOMP traffic, one per {@link Limit}. Each bucket is
+ * kept as a single "theoretical arrival time" (GCRA): a request is allowed while that
+ * time is at most {@code burst - 1} intervals ahead of now, and pushes it one interval
+ * further. That is one compare-and-set, with no lock and no refill thread.
+ *
+ * In {@code redis} mode the same check runs as a Lua script against Redis's clock, so a
+ * user's limit holds across nodes. If Redis is unreachable, requests are allowed.
+ */
+@Slf4j
+@Service
+public class InboundRateLimiter {
+
+    public enum Limit {
+        SEND, STATUS, BOT
+    }
+
+    private static final RedisScript<Long> GCRA = new DefaultRedisScript<>("""
+            local now = redis.call('TIME')
+            now = tonumber(now[1]) * 1000000 + tonumber(now[2])
+            local interval = tonumber(ARGV[1])
+            local tat = math.max(tonumber(redis.call('GET', KEYS[1]) or 0), now)
+            if tat - now > tonumber(ARGV[2]) then
+                return 0
+            end
+            -- %d: a bare number would be sent as %.14g and lose the low microseconds
+            redis.call('SET', KEYS[1], string.format('%d', tat + interval),
+                'PX', string.format('%d', math.ceil((tat + interval - now) / 1000) + 1))
+            return 1
+            """, Long.class);
+
+    private final StringRedisTemplate redisTemplate;
+    private final boolean redisMode;
+    // Per limit: nanos between requests and how far the arrival time may run ahead; 0 = unlimited
+    private final long[] intervalNanos = new long[Limit.values().length];
+    private final long[] toleranceNanos = new long[Limit.values().length];
+
+    // username -> theoretical arrival time per limit, in System.nanoTime()
+    private final Map<String, AtomicLongArray> buckets = new ConcurrentHashMap<>();
+
+    private final Map<Limit, Counter> rejected = new EnumMap<>(Limit.class);
+    private final Counter redisErrors;
+
+    public InboundRateLimiter(MeterRegistry meterRegistry,
+                              StringRedisTemplate redisTemplate,
+                              @Value("${chat.rate-limit.mode:local}") String mode,
+                              @Value("${chat.rate-limit.send.per-second:5}") double sendPerSecond,
+                              @Value("${chat.rate-limit.send.burst:20}") int sendBurst,
+                              @Value("${chat.rate-limit.status.per-second:20}") double statusPerSecond,
+                              @Value("${chat.rate-limit.status.burst:100}") int statusBurst,
+                              @Value("${chat.rate-limit.bot.per-second:0.2}") double botPerSecond,
+                              @Value("${chat.rate-limit.bot.burst:3}") int botBurst) {
+        this.redisTemplate = redisTemplate;
+        this.redisMode = "redis".equalsIgnoreCase(mode);
+        configure(Limit.SEND, sendPerSecond, sendBurst);
+        configure(Limit.STATUS, statusPerSecond, statusBurst);
+        configure(Limit.BOT, botPerSecond, botBurst);
+
+        for (Limit limit : Limit.values()) {
+            rejected.put(limit, Counter.builder("chat.rate-limit.rejected")
+                    .tag("limit", limit.name().toLowerCase())
+                    .register(meterRegistry));
+        }
+        this.redisErrors = Counter.builder("chat.rate-limit.redis-errors").register(meterRegistry);
+    }
+
+    /** False when {@code user} is over {@code limit}; the rejection is counted. */
+    public boolean tryAcquire(Limit limit, String user) {
+        int i = limit.ordinal();
+        if (intervalNanos[i] == 0) {
+            return true;
+        }
+        boolean allowed = redisMode ? acquireInRedis(limit, user) : acquireLocally(i, user);
+        if (!allowed) {
+            rejected.get(limit).increment();
+        }
+        return allowed;
+    }
+
+    private boolean acquireLocally(int i, String user) {
+        AtomicLongArray tats = buckets.computeIfAbsent(user, u -> newBuckets());
+        long interval = intervalNanos[i];
+        while (true) {
+            long now = System.nanoTime();
+            long stored = tats.get(i);
+            long tat = stored - now < 0 ? now : stored;
+            if (tat - now > toleranceNanos[i]) {
+                return false;
+            }
+            if (tats.compareAndSet(i, stored, tat + interval)) {
+                return true;
+            }
+        }
+    }
+
+    private boolean acquireInRedis(Limit limit, String user) {
+        int i = limit.ordinal();
+        try {
+            Long allowed = redisTemplate.execute(GCRA, List.of("rate:" + limit.name().toLowerCase() + ":" + user),
+                    Long.toString(intervalNanos[i] / 1000), Long.toString(toleranceNanos[i] / 1000));
+            return allowed == null || allowed == 1L;
+        } catch (RuntimeException e) {
+            redisErrors.increment();
+            log.warn("Rate limit check in Redis failed, allowing: {}", e.getMessage());
+            return true;
+        }
+    }
+
+    // Full buckets hold no information. A request racing with the sweep may land in a dropped
+    // array, which at worst grants that user one burst more.
+    @Scheduled(fixedDelayString = "${chat.rate-limit.sweep-interval-ms:60000}")
+    public void sweep() {
+        long now = System.nanoTime();
+        buckets.values().removeIf(tats -> {
+            for (int i = 0; i < tats.length(); i++) {
+                if (tats.get(i) - now > 0) {
+                    return false;
+                }
+            }
+            return true;
+        });
+    }
+
+    private void configure(Limit limit, double perSecond, int burst) {
+        if (perSecond > 0) {
+            intervalNanos[limit.ordinal()] = (long) (1_000_000_000L / perSecond);
+            toleranceNanos[limit.ordinal()] = intervalNanos[limit.ordinal()] * (Math.max(burst, 1) - 1);
+        }
+    }
+
+    // An arrival time of now is a full bucket: the whole burst is available
+    private static AtomicLongArray newBuckets() {
+        AtomicLongArray tats = new AtomicLongArray(Limit.values().length);
+        long now = System.nanoTime();
+        for (int i = 0; i < tats.length(); i++) {
+            tats.set(i, now);
+        }
+        return tats;
+    }
+}
@@ -0,0 +1,23 @@
+package com.example.chat.service;
+
+import lombok.Value;
+
+import java.security.Principal;
+import java.time.Instant;
+import java.util.UUID;
+
+/**
+ * Who a verified token belongs to. {@code userId} comes from the "uid" claim and is
+ * null for tokens issued before that claim existed.
+ */
+@Value
+public class JwtPrincipal implements Principal {
+    UUID userId;
+    String username;
+    Instant expiresAt;
+
+    @Override
+    public String getName() {
+        return username;
+    }
+}
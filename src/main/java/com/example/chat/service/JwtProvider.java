@@ -1,42 +1,62 @@
 package com.example.chat.service;
 
 import io.jsonwebtoken.Claims;
+import io.jsonwebtoken.JwtException;
+import io.jsonwebtoken.JwtParser;
 import io.jsonwebtoken.Jwts;
 import io.jsonwebtoken.SignatureAlgorithm;
 import io.jsonwebtoken.security.Keys;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
 import org.springframework.beans.factory.annotation.Value;
-import org.springframework.security.core.userdetails.UserDetails;
 import org.springframework.stereotype.Service;
 
 import javax.crypto.SecretKey;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Instant;
 import java.util.*;
-import java.util.function.Function;
 
+/**
+ * Issues and verifies the HS256 tokens used by REST requests and STOMP CONNECT.
+ * A verified token is remembered under its SHA-256 until it expires, so a client
+ * presenting the same token again costs one hash instead of a parse and an HMAC.
+ * At most {@code jwt.cache.max-entries} tokens are remembered, oldest dropped first.
+ */
 @Service
 public class JwtProvider {
 
+    static final String USER_ID_CLAIM = "uid";
+
     private final SecretKey key;
+    // Immutable and thread-safe once built
+    private final JwtParser parser;
+    private final int cacheMaxEntries;
+
+    // Insertion-ordered; keys are token hashes so the cache never holds a usable credential
+    private final LinkedHashMap<String, JwtPrincipal> verified = new LinkedHashMap<>(256);
 
-    public JwtProvider(@Value("${jwt.secret}") String secret) {
+    private final Counter hits;
+    private final Counter misses;
+
+    public JwtProvider(@Value("${jwt.secret}") String secret,
+                       @Value("${jwt.cache.max-entries:10000}") int cacheMaxEntries,
+                       MeterRegistry meterRegistry) {
         // HMAC-SHA256 requires a 256-bit (32-byte) key
         this.key = Keys.hmacShaKeyFor(secret.getBytes());
-    }
+        this.parser = Jwts.parserBuilder().setSigningKey(key).build();
+        this.cacheMaxEntries = cacheMaxEntries;
 
-    // Extract username from token
-    public String extractUsername(String token) {
-        return extractClaim(token, Claims::getSubject);
-    }
-
-    // Extract a specific claim
-    public <T> T extractClaim(String token, Function<Claims, T> claimsResolver) {
-        final Claims claims = extractAllClaims(token);
-        return claimsResolver.apply(claims);
+        this.hits = Counter.builder("chat.jwt.verifications").tag("result", "cached").register(meterRegistry);
+        this.misses = Counter.builder("chat.jwt.verifications").tag("result", "parsed").register(meterRegistry);
     }
 
     // Generate token for user
-    public String generateToken(UserDetails userDetails) {
+    public String generateToken(UUID userId, String username) {
         Map<String, Object> claims = new HashMap<>();
-        return createToken(claims, userDetails.getUsername());
+        claims.put(USER_ID_CLAIM, userId.toString());
+        return createToken(claims, username);
     }
 
     private String createToken(Map<String, Object> claims, String subject) {
@@ -52,25 +72,52 @@ public class JwtProvider {
                 .compact();
     }
 
-    // Validate the token
-    public boolean isTokenValid(String token, UserDetails userDetails) {
-        final String username = extractUsername(token);
-        return (username.equals(userDetails.getUsername())) && !isTokenExpired(token);
-    }
+    /**
+     * Checks the signature and expiry once and returns the token's owner.
+     * Throws a JwtException when the token is malformed, forged or expired.
+     */
+    public JwtPrincipal verify(String token) {
+        String hash = sha256(token);
+        Instant now = Instant.now();
+        JwtPrincipal cached;
+        synchronized (verified) {
+            cached = verified.get(hash);
+            if (cached != null && !cached.getExpiresAt().isAfter(now)) {
+                verified.remove(hash);
+                cached = null;
+            }
+        }
+        if (cached != null) {
+            hits.increment();
+            return cached;
+        }
+        misses.increment();
 
-    private boolean isTokenExpired(String token) {
-        return extractExpiration(token).before(new Date());
-    }
+        Claims claims = parser.parseClaimsJws(token).getBody();
+        if (claims.getSubject() == null || claims.getExpiration() == null) {
+            throw new JwtException("Token has no subject or expiry");
+        }
+        String userId = claims.get(USER_ID_CLAIM, String.class);
+        JwtPrincipal principal = new JwtPrincipal(userId == null ? null : UUID.fromString(userId),
+                claims.getSubject(), claims.getExpiration().toInstant());
 
-    private Date extractExpiration(String token) {
-        return extractClaim(token, Claims::getExpiration);
+        synchronized (verified) {
+            verified.put(hash, principal);
+            if (verified.size() > cacheMaxEntries) {
+                Iterator<String> eldest = verified.keySet().iterator();
+                eldest.next();
+                eldest.remove();
+            }
+        }
+        return principal;
     }
 
-    private Claims extractAllClaims(String token) {
-        return Jwts.parserBuilder()
-                .setSigningKey(key)
-                .build()
-                .parseClaimsJws(token)
-                .getBody();
+    private static String sha256(String token) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(token.getBytes(StandardCharsets.US_ASCII));
+            return Base64.getEncoder().encodeToString(digest);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
     }
 }
@@ -1,18 +1,140 @@
 package com.example.chat.service;
 
+import com.example.chat.config.KafkaConfig;
 import com.example.chat.dto.ChatMessageDto;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
 import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.springframework.kafka.annotation.DltHandler;
 import org.springframework.kafka.annotation.KafkaListener;
+import org.springframework.kafka.annotation.RetryableTopic;
+import org.springframework.kafka.listener.DeadLetterPublishingRecoverer;
+import org.springframework.kafka.retrytopic.DltStrategy;
+import org.springframework.kafka.retrytopic.TopicSuffixingStrategy;
+import org.springframework.kafka.support.KafkaHeaders;
+import org.springframework.messaging.handler.annotation.Header;
+import org.springframework.messaging.handler.annotation.Payload;
+import org.springframework.retry.annotation.Backoff;
 import org.springframework.stereotype.Service;
 
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+@Slf4j
 @Service
 @RequiredArgsConstructor
 public class KafkaConsumerService {
 
     private final MessageProcessor messageProcessor;
+    private final DeadLetterPublishingRecoverer chatMessagesDeadLetterPublisher;
+    private final MeterRegistry meterRegistry;
+
+    /**
+     * A record that fails moves on to chat.messages-retry-0, -1, ... (each consumed after its
+     * backoff) and finally to chat.messages-dlt, so the partition it came from keeps flowing.
+     * Records that cannot be decoded skip the retries. Only one of the two listeners
+     * starts, depending on chat.kafka.batch-listener.
+     */
+    @RetryableTopic(attempts = "${chat.kafka.retry.attempts:4}",
+            backoff = @Backoff(delayExpression = "${chat.kafka.retry.initial-delay-ms:1000}",
+                    multiplierExpression = "${chat.kafka.retry.multiplier:4}",
+                    maxDelayExpression = "${chat.kafka.retry.max-delay-ms:60000}"),
+            numPartitions = "${chat.kafka.partitions:6}",
+            topicSuffixingStrategy = TopicSuffixingStrategy.SUFFIX_WITH_INDEX_VALUE,
+            dltStrategy = DltStrategy.FAIL_ON_ERROR)
+    @KafkaListener(id = "chat-messages", topics = KafkaConfig.CHAT_MESSAGES_TOPIC, groupId = "chat-group",
+            concurrency = "${chat.kafka.partitions:6}",
+            autoStartup = "#{!${chat.kafka.batch-listener:false}}")
+    public void consume(ChatMessageDto message, @Header(KafkaHeaders.RECEIVED_TOPIC) String topic) {
+        String stage = stage(topic);
+        try {
+            messageProcessor.processIncomingMessage(message);
+        } catch (RuntimeException e) {
+            count(stage, "failed");
+            throw e;
+        }
+        count(stage, "processed");
+    }
+
+    // Undecodable records arrive here with no payload
+    @DltHandler
+    public void deadLetter(@Payload(required = false) ChatMessageDto message,
+                           @Header(name = KafkaHeaders.DLT_EXCEPTION_MESSAGE, required = false) String error) {
+        count("dlt", "received");
+        log.error("Dead-lettered message for chat room {}: {}",
+                message == null ? null : message.getChatRoomId(), error);
+    }
+
+    /**
+     * Whole-poll mode has no retry topics. If the batch insert fails, the poll is retried
+     * one record at a time so only the records that still fail are dead-lettered; records
+     * whose chat room or users do not exist are dead-lettered directly.
+     */
+    @KafkaListener(id = "chat-messages-batch", topics = KafkaConfig.CHAT_MESSAGES_TOPIC, groupId = "chat-group",
+            concurrency = "${chat.kafka.partitions:6}",
+            autoStartup = "${chat.kafka.batch-listener:false}",
+            containerFactory = "batchKafkaListenerContainerFactory")
+    public void consumeBatch(List<ConsumerRecord<String, ChatMessageDto>> records) {
+        // ErrorHandlingDeserializer leaves the value null when the record could not be decoded
+        Map<ChatMessageDto, ConsumerRecord<String, ChatMessageDto>> byMessage = new IdentityHashMap<>();
+        List<ChatMessageDto> messages = new ArrayList<>(records.size());
+        for (ConsumerRecord<String, ChatMessageDto> record : records) {
+            if (record.value() == null) {
+                deadLetter(record, new IllegalArgumentException("Undecodable chat message record"));
+            } else {
+                byMessage.put(record.value(), record);
+                messages.add(record.value());
+            }
+        }
+
+        List<ChatMessageDto> rejected;
+        try {
+            rejected = messageProcessor.processIncomingMessages(messages);
+        } catch (RuntimeException e) {
+            log.warn("Batch of {} failed, retrying one record at a time", messages.size(), e);
+            for (ChatMessageDto message : messages) {
+                try {
+                    messageProcessor.processIncomingMessage(message);
+                    count("batch", "processed");
+                } catch (RuntimeException recordFailure) {
+                    deadLetter(byMessage.get(message), recordFailure);
+                }
+            }
+            return;
+        }
+        for (ChatMessageDto message : rejected) {
+            deadLetter(byMessage.get(message), new IllegalArgumentException("Chat room, sender or receiver not found"));
+        }
+        count("batch", "processed", messages.size() - rejected.size());
+    }
+
+    private void deadLetter(ConsumerRecord<String, ChatMessageDto> record, Exception cause) {
+        count("batch", "failed");
+        count("dlt", "published");
+        log.error("Dead-lettering record {}-{}@{}", record.topic(), record.partition(), record.offset(), cause);
+        chatMessagesDeadLetterPublisher.accept(record, cause);
+    }
+
+    // chat.messages -> main, chat.messages-retry-0 -> retry-0, ...
+    private static String stage(String topic) {
+        return topic.equals(KafkaConfig.CHAT_MESSAGES_TOPIC)
+                ? "main"
+                : topic.substring(KafkaConfig.CHAT_MESSAGES_TOPIC.length() + 1);
+    }
+
+    private void count(String stage, String outcome) {
+        count(stage, outcome, 1);
+    }
 
-    @KafkaListener(topics = "chat.messages", groupId = "chat-group")
-    public void consume(ChatMessageDto message) {
-        messageProcessor.processIncomingMessage(message);
+    private void count(String stage, String outcome, int records) {
+        Counter.builder("chat.kafka.records")
+                .tag("stage", stage)
+                .tag("outcome", outcome)
+                .register(meterRegistry)
+                .increment(records);
     }
 }
@@ -1,5 +1,6 @@
 package com.example.chat.service;
 
+import com.example.chat.config.KafkaConfig;
 import com.example.chat.dto.ChatMessageDto;
 import lombok.RequiredArgsConstructor;
 import org.springframework.kafka.core.KafkaTemplate;
@@ -11,6 +12,6 @@ public class KafkaProducerService {
     private final KafkaTemplate<String, ChatMessageDto> kafkaTemplate;
 
     public void sendMessage(ChatMessageDto message) {
-        kafkaTemplate.send("chat.messages", message.getChatRoomId().toString(), message);
+        kafkaTemplate.send(KafkaConfig.CHAT_MESSAGES_TOPIC, message.getChatRoomId().toString(), message);
     }
 }
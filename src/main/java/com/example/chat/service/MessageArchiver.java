@@ -0,0 +1,249 @@
+package com.example.chat.service;
+
+import com.example.chat.dto.MessageCursor;
+import com.example.chat.dto.MessageView;
+import com.example.chat.repository.MessageArchive;
+import com.example.chat.repository.MessagePartitionRepository;
+import com.example.chat.repository.MessageRepository;
+import com.example.chat.repository.NamedLockRepository;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.time.LocalDateTime;
+import java.time.YearMonth;
+import java.util.*;
+
+/**
+ * Nightly maintenance of the two message tiers. Keeps monthly partitions created ahead
+ * of time and, when enabled, moves whole months older than the retention window into
+ * {@link MessageArchive}. A month is written to its segment by one run and removed from
+ * MySQL by the next, once every instance has picked the segment up, so no instance ever
+ * has a gap. Messages still PENDING are left in MySQL, where the offline drain can deliver them.
+ *
+ * Every instance schedules the run; a MySQL named lock lets one of them do it.
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class MessageArchiver {
+
+    private static final int READ_BATCH = 1000;
+    private static final int DELETE_BATCH = 5000;
+    private static final String LOCK = "chat.message-archiver";
+
+    private final MessageRepository messageRepository;
+    private final MessagePartitionRepository partitionRepository;
+    private final MessageArchive messageArchive;
+    private final NamedLockRepository namedLocks;
+
+    @Value("${chat.archive.enabled:false}")
+    private boolean enabled;
+
+    @Value("${chat.archive.retention-months:6}")
+    private int retentionMonths;
+
+    @Value("${chat.archive.partitions-ahead:3}")
+    private int partitionsAhead;
+
+    @Scheduled(cron = "${chat.archive.cron:0 30 3 * * *}")
+    public void run() {
+        try {
+            if (!namedLocks.runExclusively(LOCK, this::maintain)) {
+                log.info("Message archive run skipped, another instance holds {}", LOCK);
+            }
+        } catch (Exception e) {
+            log.error("Message archive run failed", e);
+        }
+    }
+
+    @Scheduled(fixedDelayString = "${chat.archive.refresh-interval-ms:60000}")
+    public void refreshArchive() {
+        try {
+            messageArchive.refresh();
+        } catch (Exception e) {
+            log.error("Message archive refresh failed", e);
+        }
+    }
+
+    private void maintain() throws IOException {
+        // Another instance may have archived since this one last looked
+        messageArchive.refresh();
+        NavigableSet<YearMonth> partitions = partitionRepository.monthlyPartitions();
+        addPartitions(partitions);
+        if (enabled) {
+            archiveExpired(partitions);
+        }
+    }
+
+    // New months are only split off pmax above the newest existing monthly partition
+    private void addPartitions(NavigableSet<YearMonth> partitions) {
+        if (partitions.isEmpty() || !partitionRepository.hasCatchAll()) {
+            return;
+        }
+        YearMonth last = YearMonth.now().plusMonths(partitionsAhead);
+        for (YearMonth month = partitions.last().plusMonths(1); !month.isAfter(last); month = month.plusMonths(1)) {
+            partitionRepository.addMonth(month);
+        }
+    }
+
+    private void archiveExpired(NavigableSet<YearMonth> partitions) throws IOException {
+        YearMonth firstKept = YearMonth.now().minusMonths(retentionMonths);
+        LocalDateTime from = LocalDateTime.of(1970, 1, 1, 0, 0);
+        while (true) {
+            Optional<YearMonth> oldest = messageRepository.findOldestArchivableSince(from).map(YearMonth::from);
+            if (oldest.isEmpty() || !oldest.get().isBefore(firstKept)) {
+                return;
+            }
+            archiveMonth(oldest.get(), partitions.contains(oldest.get()));
+            // Undelivered messages stay behind, so the same month can come up again
+            from = oldest.get().plusMonths(1).atDay(1).atStartOfDay();
+        }
+    }
+
+    private void archiveMonth(YearMonth month, boolean ownPartition) throws IOException {
+        LocalDateTime start = month.atDay(1).atStartOfDay();
+        LocalDateTime end = month.plusMonths(1).atDay(1).atStartOfDay();
+
+        if (messageArchive.isArchived(month)) {
+            if (allArchived(start, end)) {
+                deleteMonth(month, start, end, ownPartition);
+                return;
+            }
+            deleteArchivedLeftovers(month, start, end);
+            if (ownPartition && messageRepository.findChatRoomIdsBetween(start, end).isEmpty()) {
+                partitionRepository.dropMonth(month);
+            }
+            return;
+        }
+
+        // Statuses only move forward, so nothing outside this set can become undelivered meanwhile
+        Set<UUID> undelivered = new HashSet<>(messageRepository.findPendingIdsBetween(start, end));
+        long archived = 0;
+        try (MessageArchive.SegmentWriter writer = messageArchive.openSegment(month)) {
+            for (UUID chatRoomId : messageRepository.findChatRoomIdsBetween(start, end)) {
+                archived += copyRoom(writer, chatRoomId, start, end, undelivered);
+            }
+            writer.commit();
+        }
+        // The MySQL copies go in the next run: by then every instance reads the segment
+        log.info("Archived {} messages from {}, kept {} undelivered", archived, month, undelivered.size());
+    }
+
+    private void deleteMonth(YearMonth month, LocalDateTime start, LocalDateTime end, boolean ownPartition) {
+        if (ownPartition) {
+            partitionRepository.dropMonth(month);
+            return;
+        }
+        long deleted = 0;
+        int batch;
+        do {
+            batch = messageRepository.deleteBetween(start, end, DELETE_BATCH);
+            deleted += batch;
+        } while (batch > 0);
+        log.info("Deleted {} archived messages from {}", deleted, month);
+    }
+
+    // Walks the room's month with the history keyset query, a bounded batch at a time
+    private long copyRoom(MessageArchive.SegmentWriter writer, UUID chatRoomId,
+                          LocalDateTime start, LocalDateTime end, Set<UUID> undelivered) throws IOException {
+        long copied = 0;
+        LocalDateTime timestamp = start;
+        UUID id = new UUID(0, 0);
+        while (true) {
+            List<MessageView> batch = messageRepository.findAfter(chatRoomId, timestamp, id, PageRequest.of(0, READ_BATCH));
+            List<MessageView> inMonth = batch.stream().filter(row -> row.getTimestamp().isBefore(end)).toList();
+            List<MessageView> delivered = inMonth.stream().filter(row -> !undelivered.contains(row.getId())).toList();
+            writer.append(chatRoomId, delivered);
+            copied += delivered.size();
+            if (batch.size() < READ_BATCH || inMonth.size() < batch.size()) {
+                return copied;
+            }
+            MessageView last = batch.get(batch.size() - 1);
+            timestamp = last.getTimestamp();
+            id = last.getId();
+        }
+    }
+
+    /**
+     * Rows of an archived month still in MySQL are either copies the archive holds (just
+     * written, or left by a run that stopped between commit and delete) or messages that were
+     * undelivered when the month was copied, which it does not. Only the former are deleted,
+     * by id a batch at a time; the latter stay in MySQL.
+     */
+    private void deleteArchivedLeftovers(YearMonth month, LocalDateTime start, LocalDateTime end) {
+        long[] deleted = {0};
+        walkArchivedMonth(start, end, (rows, held) -> {
+            List<UUID> leftovers = rows.stream().map(MessageView::getId).filter(held::contains).toList();
+            if (!leftovers.isEmpty()) {
+                messageRepository.deleteAllByIdInBatch(leftovers);
+                deleted[0] += leftovers.size();
+            }
+            return true;
+        });
+        if (deleted[0] > 0) {
+            log.info("Deleted {} leftover messages of archived month {}", deleted[0], month);
+        }
+    }
+
+    // Whether the archive holds every row MySQL has for the month; stops at the first it does not
+    private boolean allArchived(LocalDateTime start, LocalDateTime end) {
+        return walkArchivedMonth(start, end,
+                (rows, held) -> rows.stream().allMatch(row -> held.contains(row.getId())));
+    }
+
+    // Hands the month's MySQL rows, room by room and a bounded batch at a time, to the visitor
+    // along with the ids among them the archive holds. False once the visitor stopped the walk.
+    private boolean walkArchivedMonth(LocalDateTime start, LocalDateTime end, ArchivedBatch visitor) {
+        for (UUID chatRoomId : messageRepository.findChatRoomIdsBetween(start, end)) {
+            LocalDateTime timestamp = start;
+            UUID id = new UUID(0, 0);
+            while (true) {
+                List<MessageView> batch = messageRepository.findAfter(chatRoomId, timestamp, id, PageRequest.of(0, READ_BATCH));
+                List<MessageView> inMonth = batch.stream().filter(row -> row.getTimestamp().isBefore(end)).toList();
+                if (inMonth.isEmpty()) {
+                    break;
+                }
+                Set<UUID> held = archivedIds(chatRoomId, inMonth.get(0), inMonth.get(inMonth.size() - 1));
+                if (!visitor.accept(inMonth, held)) {
+                    return false;
+                }
+                if (batch.size() < READ_BATCH || inMonth.size() < batch.size()) {
+                    break;
+                }
+                MessageView last = batch.get(batch.size() - 1);
+                timestamp = last.getTimestamp();
+                id = last.getId();
+            }
+        }
+        return true;
+    }
+
+    // Ids the archive holds for the room from first to last, inclusive
+    private Set<UUID> archivedIds(UUID chatRoomId, MessageView first, MessageView last) {
+        Set<UUID> ids = new HashSet<>();
+        MessageCursor cursor = new MessageCursor(first.getTimestamp().minusNanos(1), new UUID(0, 0));
+        while (true) {
+            List<MessageView> archived = messageArchive.findAfter(chatRoomId, cursor, READ_BATCH);
+            for (MessageView row : archived) {
+                if (row.getTimestamp().isAfter(last.getTimestamp())) {
+                    return ids;
+                }
+                ids.add(row.getId());
+            }
+            if (archived.size() < READ_BATCH) {
+                return ids;
+            }
+            MessageView newest = archived.get(archived.size() - 1);
+            cursor = new MessageCursor(newest.getTimestamp(), newest.getId());
+        }
+    }
+
+    private interface ArchivedBatch {
+        boolean accept(List<MessageView> rows, Set<UUID> held);
+    }
+}
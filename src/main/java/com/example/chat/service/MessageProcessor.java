@@ -1,113 +1,220 @@
 package com.example.chat.service;
 
 import com.example.chat.dto.ChatMessageDto;
+import com.example.chat.dto.MessageView;
+import com.example.chat.dto.SendAckDto;
+import com.example.chat.dto.UserIdentity;
 import com.example.chat.entity.ChatRoom;
 import com.example.chat.entity.Message;
 import com.example.chat.entity.MessageStatus;
-import com.example.chat.entity.User;
 import com.example.chat.repository.ChatRoomRepository;
-import com.example.chat.repository.MessageRepository;
-import com.example.chat.repository.UserRepository;
 import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.dao.DataIntegrityViolationException;
 import org.springframework.stereotype.Service;
 
 import java.time.LocalDateTime;
-import java.util.Optional;
+import java.util.*;
+import java.util.function.Function;
+import java.util.stream.Collectors;
 
+@Slf4j
 @Service
 @RequiredArgsConstructor
 public class MessageProcessor {
 
-    private final MessageRepository messageRepository;
+    private final MessageWriter messageWriter;
     private final ChatRoomRepository chatRoomRepository;
-    private final UserRepository userRepository;
+    private final UserIdentityCache userIdentityCache;
     private final PresenceService presenceService;
-    private final ChatService chatService;
-    private final ChatBotService chatBotService;
-
+    private final BotReplyDispatcher botReplyDispatcher;
+    private final RecentMessageCache recentMessageCache;
+    private final SendDeduplicator sendDeduplicator;
 
     public void processIncomingMessage(ChatMessageDto messageDto) {
+        // A retry of a send stored moments ago only gets its ack again
+        if (messageDto.getClientMessageId() != null
+                && sendDeduplicator.replay(messageDto.getFrom(), messageDto.getClientMessageId())) {
+            return;
+        }
+
         ChatRoom chatRoom = chatRoomRepository.findById(messageDto.getChatRoomId())
                 .orElseThrow(() -> new RuntimeException("ChatRoom not found"));
-        Optional<User> sender = userRepository.findById(messageDto.getFrom());
-        Optional<User> receiver = userRepository.findById(messageDto.getTo());
-        
-        User senderUser = sender.orElseThrow(() -> new RuntimeException("sender not found"));
-        User receiverUser = receiver.orElseThrow(() -> new RuntimeException("receiver not found"));
-        
+        UserIdentity senderUser = userIdentityCache.byId(messageDto.getFrom())
+                .orElseThrow(() -> new RuntimeException("sender not found"));
+        UserIdentity receiverUser = userIdentityCache.byId(messageDto.getTo())
+                .orElseThrow(() -> new RuntimeException("receiver not found"));
+
+        // Decide the final status first so the row is written exactly once
+        MessageStatus status = isAssistant(receiverUser) || presenceService.isUserOnline(receiverUser.getUsername())
+                ? MessageStatus.DELIVERED
+                : MessageStatus.PENDING;
         LocalDateTime timestamp = LocalDateTime.now();
-        
-        // Truncate content if too long (safety check)
-        String content = messageDto.getContent();
-        if (content != null && content.length() > 10000) {
-            content = content.substring(0, 10000) + "... [message truncated]";
-        }
-        
-        // Save to DB
+
         Message msg = Message.builder()
                 .chatRoom(chatRoom)
-                .sender(senderUser)
-                .receiver(receiverUser)
-                .content(content)
+                .sender(userIdentityCache.reference(senderUser.getId()))
+                .receiver(userIdentityCache.reference(receiverUser.getId()))
+                .content(truncate(messageDto.getContent()))
                 .timestamp(timestamp)
-                .status(MessageStatus.SENT)
+                .status(status)
                 .messageType(messageDto.getMessageType())
+                .clientMessageId(messageDto.getClientMessageId())
                 .build();
-        messageRepository.save(msg);
+        try {
+            messageWriter.insert(List.of(msg));
+        } catch (DataIntegrityViolationException e) {
+            // Stored before a restart or by another instance: answer with that message instead
+            if (!sendDeduplicator.replayStored(List.of(messageDto), Map.of(senderUser.getId(), senderUser)).isEmpty()) {
+                return;
+            }
+            throw e;
+        }
 
-        // Set timestamp in the DTO for delivery
+        messageDto.setId(msg.getId());
+        messageDto.setSeq(msg.getSeq());
         messageDto.setTimestamp(timestamp);
+        messageDto.setStatus(status);
+        afterStored(messageDto, msg, senderUser, receiverUser);
+    }
 
-        // Check if receiver is the bot
-        if (Boolean.TRUE.equals(receiverUser.getIsBot()) && "DoctorAssistant".equals(receiverUser.getUsername())) {
-            // Process bot message and generate response
-            String botResponse = chatBotService.processBotMessage(
-                    messageDto.getContent(),
-                    messageDto.getChatRoomId(),
-                    senderUser.getUsername()
-            );
-            
-            // Truncate if too long (safety check - TEXT can hold up to 65KB, but let's limit to 10KB for safety)
-            if (botResponse != null && botResponse.length() > 10000) {
-                botResponse = botResponse.substring(0, 10000) + "... [message truncated]";
+    /**
+     * Processes one Kafka poll at a time: the referenced chat rooms, and any users not
+     * in UserIdentityCache, are resolved with one IN query each, all messages are
+     * inserted in one batched transaction, and delivery happens only after that
+     * transaction has committed.
+     * Retried sends are acked but not written. Returns the messages whose chat room,
+     * sender or receiver does not exist; those are not written either.
+     */
+    public List<ChatMessageDto> processIncomingMessages(List<ChatMessageDto> messageDtos) {
+        if (messageDtos.isEmpty()) {
+            return List.of();
+        }
+
+        // Redelivered or retried sends answered from memory never reach the database.
+        // A send repeated within the poll is dropped; its one ack carries the same client id.
+        List<ChatMessageDto> fresh = new ArrayList<>(messageDtos.size());
+        Set<List<UUID>> sendKeys = new HashSet<>();
+        for (ChatMessageDto dto : messageDtos) {
+            UUID clientMessageId = dto.getClientMessageId();
+            if (clientMessageId == null
+                    || (sendKeys.add(List.of(dto.getFrom(), clientMessageId))
+                        && !sendDeduplicator.replay(dto.getFrom(), clientMessageId))) {
+                fresh.add(dto);
             }
-            
-            // Save bot response as a message
-            Message botMsg = Message.builder()
+        }
+        if (fresh.isEmpty()) {
+            return List.of();
+        }
+
+        Set<UUID> chatRoomIds = new HashSet<>();
+        Set<UUID> userIds = new HashSet<>();
+        for (ChatMessageDto dto : fresh) {
+            chatRoomIds.add(dto.getChatRoomId());
+            userIds.add(dto.getFrom());
+            userIds.add(dto.getTo());
+        }
+        Map<UUID, ChatRoom> chatRooms = chatRoomRepository.findAllById(chatRoomIds).stream()
+                .collect(Collectors.toMap(ChatRoom::getId, Function.identity()));
+        Map<UUID, UserIdentity> users = userIdentityCache.byIds(userIds);
+
+        // Presence is looked up once per distinct receiver and decided before the insert
+        Map<String, Boolean> online = new HashMap<>();
+        List<Message> messages = new ArrayList<>(fresh.size());
+        List<ChatMessageDto> accepted = new ArrayList<>(fresh.size());
+        List<ChatMessageDto> rejected = new ArrayList<>();
+        for (ChatMessageDto dto : fresh) {
+            ChatRoom chatRoom = chatRooms.get(dto.getChatRoomId());
+            UserIdentity senderUser = users.get(dto.getFrom());
+            UserIdentity receiverUser = users.get(dto.getTo());
+            if (chatRoom == null || senderUser == null || receiverUser == null) {
+                rejected.add(dto);
+                continue;
+            }
+
+            boolean receiverOnline = isAssistant(receiverUser)
+                    || online.computeIfAbsent(receiverUser.getUsername(), presenceService::isUserOnline);
+            MessageStatus status = receiverOnline ? MessageStatus.DELIVERED : MessageStatus.PENDING;
+            LocalDateTime timestamp = LocalDateTime.now();
+
+            messages.add(Message.builder()
                     .chatRoom(chatRoom)
-                    .sender(receiverUser)
-                    .receiver(senderUser)
-                    .content(botResponse)
-                    .timestamp(LocalDateTime.now())
-                    .status(MessageStatus.DELIVERED) // Bot messages are always delivered
-                    .messageType(messageDto.getMessageType())
-                    .build();
-            messageRepository.save(botMsg);
-            
-            // Create DTO for bot response
-            ChatMessageDto botResponseDto = new ChatMessageDto();
-            botResponseDto.setChatRoomId(messageDto.getChatRoomId());
-            botResponseDto.setFrom(receiverUser.getId());
-            botResponseDto.setTo(senderUser.getId());
-            botResponseDto.setContent(botResponse);
-            botResponseDto.setTimestamp(botMsg.getTimestamp());
-            botResponseDto.setStatus(MessageStatus.DELIVERED);
-            botResponseDto.setMessageType(messageDto.getMessageType());
-            
-            // Deliver bot response
-            chatService.deliverMessage(botResponseDto);
+                    .sender(userIdentityCache.reference(senderUser.getId()))
+                    .receiver(userIdentityCache.reference(receiverUser.getId()))
+                    .content(truncate(dto.getContent()))
+                    .timestamp(timestamp)
+                    .status(status)
+                    .messageType(dto.getMessageType())
+                    .clientMessageId(dto.getClientMessageId())
+                    .build());
+            dto.setTimestamp(timestamp);
+            dto.setStatus(status);
+            accepted.add(dto);
+        }
+
+        // One transaction: a sequence reservation per room, then the batched insert
+        try {
+            messageWriter.insert(messages);
+        } catch (DataIntegrityViolationException e) {
+            // Some sends were stored before a restart or by another instance: replay those, write the rest
+            Set<UUID> stored = sendDeduplicator.replayStored(accepted, users);
+            if (stored.isEmpty()) {
+                throw e;
+            }
+            for (int i = accepted.size() - 1; i >= 0; i--) {
+                if (stored.contains(accepted.get(i).getClientMessageId())) {
+                    accepted.remove(i);
+                    messages.remove(i);
+                } else {
+                    // Assigned by the rolled-back attempt
+                    messages.get(i).setId(null);
+                    messages.get(i).setSeq(null);
+                }
+            }
+            messageWriter.insert(messages);
         }
-        
-        // Deliver or mark as pending for regular messages
-        if (presenceService.isUserOnline(receiverUser.getUsername())) {
-            msg.setStatus(MessageStatus.DELIVERED);
-            messageRepository.save(msg);
-            messageDto.setStatus(MessageStatus.DELIVERED);
-            chatService.deliverMessage(messageDto);
-        } else {
-            msg.setStatus(MessageStatus.PENDING);
-            messageRepository.save(msg);
-            messageDto.setStatus(MessageStatus.PENDING);
+
+        for (int i = 0; i < accepted.size(); i++) {
+            ChatMessageDto dto = accepted.get(i);
+            Message msg = messages.get(i);
+            dto.setId(msg.getId());
+            dto.setSeq(msg.getSeq());
+            afterStored(dto, msg, users.get(dto.getFrom()), users.get(dto.getTo()));
+        }
+        return rejected;
+    }
+
+    // The message and its outbox broadcast are committed by now. Nothing here may fail the record:
+    // a retry would only be acked again, and the room broadcast is OutboxRelay's job.
+    private void afterStored(ChatMessageDto dto, Message msg, UserIdentity sender, UserIdentity receiver) {
+        try {
+            recentMessageCache.append(msg.getChatRoom().getId(), MessageView.of(msg));
+            if (dto.getClientMessageId() != null) {
+                sendDeduplicator.acknowledge(sender.getId(), sender.getUsername(), ackOf(dto));
+            }
+            // The bot answers on its own worker; the user's message is relayed from the outbox meanwhile
+            if (isAssistant(receiver)) {
+                botReplyDispatcher.submit(dto, msg.getChatRoom(), sender, receiver);
+            }
+        } catch (RuntimeException e) {
+            log.error("Message {} was stored but not acked or handed on", msg.getId(), e);
+        }
+    }
+
+    private static SendAckDto ackOf(ChatMessageDto dto) {
+        return new SendAckDto(dto.getClientMessageId(), dto.getId(), dto.getChatRoomId(), dto.getSeq(),
+                dto.getTimestamp(), dto.getStatus(), false);
+    }
+
+    private boolean isAssistant(UserIdentity user) {
+        return user.isBot() && "DoctorAssistant".equals(user.getUsername());
+    }
+
+    // Safety check - TEXT can hold up to 65KB, but let's limit to 10KB
+    static String truncate(String content) {
+        if (content != null && content.length() > 10000) {
+            return content.substring(0, 10000) + "... [message truncated]";
         }
+        return content;
     }
 }
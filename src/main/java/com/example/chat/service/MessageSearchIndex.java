@@ -0,0 +1,471 @@
+package com.example.chat.service;
+
+import com.example.chat.dto.MessageView;
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import jakarta.annotation.PreDestroy;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.*;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * In-process inverted index over message bodies, scoped per chat room.
+ * <p>
+ * New messages go into an in-memory segment. Once it holds {@code chat.search.flush-docs}
+ * messages, or on {@link #flush()}, it is written out as an immutable, memory-mapped segment
+ * file on the index's own thread, never the caller's; once more than {@code chat.search.max-segments}
+ * files exist the smallest are merged, as long as the result stays under {@code chat.search.max-segment-mb}.
+ * {@code segments} in the index directory names the live files and is replaced atomically,
+ * so a crash mid-flush or mid-merge leaves the previous set intact.
+ * <p>
+ * Ids indexed within the last catch-up window are remembered and indexed only once, so
+ * catch-up rescanning messages MessageWriter already indexed adds no second document.
+ * <p>
+ * Queries match all terms and are ranked with BM25 over the rooms being searched.
+ */
+@Slf4j
+@Component
+public class MessageSearchIndex {
+
+    private static final double K1 = 1.2;
+    private static final double B = 0.75;
+    private static final int MAX_TOKEN_LENGTH = 64;
+
+    private final Path dir;
+    private final int flushDocs;
+    private final int maxSegments;
+    // Segment offsets are ints; merges stop well short of that
+    private final long maxSegmentBytes;
+    private final long catchUpWindowMs;
+
+    // Serializes flushes and merges; searches and adds never wait on it
+    private final ReentrantLock maintenance = new ReentrantLock();
+    private final Object writeLock = new Object();
+    private final ExecutorService flusher = Executors.newSingleThreadExecutor(
+            Thread.ofPlatform().name("search-index-flush").daemon().factory());
+    private final AtomicBoolean flushQueued = new AtomicBoolean();
+
+    // Id -> wall-clock millis it was indexed at, oldest first; guarded by writeLock
+    private final LinkedHashMap<UUID, Long> recentIds = new LinkedHashMap<>();
+    private long newestMicros = Long.MIN_VALUE;
+
+    private volatile SearchSegment.Memory active = new SearchSegment.Memory();
+    // Immutable snapshot: disk segments plus any memory segment being flushed
+    private volatile List<SearchSegment> segments = List.of();
+    private long generation;
+
+    public MessageSearchIndex(@Value("${chat.search.dir:./data/search-index}") String dir,
+                              @Value("${chat.search.flush-docs:20000}") int flushDocs,
+                              @Value("${chat.search.max-segments:8}") int maxSegments,
+                              @Value("${chat.search.max-segment-mb:1024}") long maxSegmentMb,
+                              @Value("${chat.search.catch-up-window-ms:10000}") long catchUpWindowMs) {
+        this.dir = Paths.get(dir);
+        this.flushDocs = flushDocs;
+        this.maxSegments = maxSegments;
+        this.maxSegmentBytes = Math.min(maxSegmentMb << 20, Integer.MAX_VALUE / 2);
+        this.catchUpWindowMs = catchUpWindowMs;
+        open();
+    }
+
+    /**
+     * Adds messages not indexed within the last catch-up window and returns how many were
+     * added. A full in-memory segment is flushed in the background.
+     */
+    public int index(Collection<MessageView> messages) {
+        int added = 0;
+        boolean full;
+        synchronized (writeLock) {
+            long now = System.currentTimeMillis();
+            for (MessageView message : messages) {
+                if (recentIds.putIfAbsent(message.getId(), now) != null) {
+                    continue;
+                }
+                long micros = toMicros(message.getTimestamp());
+                String content = message.getContent();
+                active.add(message.getId(), message.getChatRoomId(), micros, tokenize(content == null ? "" : content));
+                newestMicros = Math.max(newestMicros, micros);
+                added++;
+            }
+            full = active.docCount() >= flushDocs;
+        }
+        if (full && flushQueued.compareAndSet(false, true)) {
+            flusher.execute(() -> {
+                flushQueued.set(false);
+                flush();
+            });
+        }
+        return added;
+    }
+
+    /**
+     * Forgets ids indexed before {@code epochMillis}; catch-up calls this with the start of
+     * the window it rescans, since anything indexed earlier has an id below that window.
+     */
+    public void forgetIndexedBefore(long epochMillis) {
+        synchronized (writeLock) {
+            Iterator<Long> indexedAt = recentIds.values().iterator();
+            while (indexedAt.hasNext() && indexedAt.next() < epochMillis) {
+                indexedAt.remove();
+            }
+        }
+    }
+
+    /**
+     * Ranked page of messages in {@code chatRoomIds} containing every term of {@code query}.
+     * Ties are broken newest first.
+     */
+    public SearchResult search(Collection<UUID> chatRoomIds, String query, int offset, int limit) {
+        List<byte[]> terms = tokenize(query).stream().distinct()
+                .map(term -> term.getBytes(StandardCharsets.UTF_8))
+                .toList();
+        if (terms.isEmpty() || chatRoomIds.isEmpty()) {
+            return new SearchResult(List.of(), 0);
+        }
+        // Active first: a flush publishes segments before swapping active, so a message frozen in
+        // between is found in both (seen drops the second) rather than in neither
+        SearchSegment.Memory current = active;
+        List<SearchSegment> searched = new ArrayList<>(segments);
+        searched.add(current);
+
+        // Pass 1: corpus statistics over the searched rooms, from the dictionaries only
+        long docs = 0;
+        long tokens = 0;
+        long[] docFrequency = new long[terms.size()];
+        for (SearchSegment segment : searched) {
+            for (UUID room : chatRoomIds) {
+                long[] stats = segment.roomStats(room);
+                if (stats == null) {
+                    continue;
+                }
+                docs += stats[0];
+                tokens += stats[1];
+                for (int t = 0; t < terms.size(); t++) {
+                    docFrequency[t] += segment.docFrequency(room, terms.get(t));
+                }
+            }
+        }
+        for (long df : docFrequency) {
+            if (df == 0) {
+                return new SearchResult(List.of(), 0);
+            }
+        }
+        double averageLength = (double) tokens / Math.max(1, docs);
+        double[] idf = new double[terms.size()];
+        for (int t = 0; t < terms.size(); t++) {
+            idf[t] = Math.log(1 + (docs - docFrequency[t] + 0.5) / (docFrequency[t] + 0.5));
+        }
+
+        // Pass 2: intersect postings room by room, keeping the best offset + limit hits
+        int wanted = offset + limit;
+        PriorityQueue<Hit> top = new PriorityQueue<>(Hit.RANKING.reversed());
+        Set<UUID> seen = new HashSet<>();
+        int total = 0;
+        for (SearchSegment segment : searched) {
+            for (UUID room : chatRoomIds) {
+                if (segment.roomStats(room) == null) {
+                    continue;
+                }
+                int[][][] lists = new int[terms.size()][][];
+                boolean all = true;
+                for (int t = 0; t < terms.size() && all; t++) {
+                    lists[t] = segment.postings(room, terms.get(t));
+                    all = lists[t] != null;
+                }
+                if (!all) {
+                    continue;
+                }
+                int[] cursor = new int[terms.size()];
+                for (int doc : intersect(lists)) {
+                    UUID messageId = segment.messageId(doc);
+                    if (!seen.add(messageId)) {
+                        continue;
+                    }
+                    total++;
+                    double norm = K1 * (1 - B + B * segment.length(doc) / averageLength);
+                    double score = 0;
+                    for (int t = 0; t < terms.size(); t++) {
+                        int[] postings = lists[t][0];
+                        while (postings[cursor[t]] < doc) {
+                            cursor[t]++;
+                        }
+                        int tf = lists[t][1][cursor[t]];
+                        score += idf[t] * tf * (K1 + 1) / (tf + norm);
+                    }
+                    Hit hit = new Hit(messageId, room, toTimestamp(segment.timestampMicros(doc)), score);
+                    top.add(hit);
+                    if (top.size() > wanted) {
+                        top.poll();
+                    }
+                }
+            }
+        }
+
+        List<Hit> ranked = new ArrayList<>(top);
+        ranked.sort(Hit.RANKING);
+        List<Hit> page = offset >= ranked.size() ? List.of() : ranked.subList(offset, ranked.size());
+        return new SearchResult(new ArrayList<>(page), total);
+    }
+
+    /** Writes the in-memory segment to disk and merges if too many segments have piled up. */
+    public void flush() {
+        maintenance.lock();
+        try {
+            flushLocked();
+        } finally {
+            maintenance.unlock();
+        }
+    }
+
+    /** Newest indexed message time, so catch-up can resume after a restart. */
+    public Optional<LocalDateTime> newestIndexed() {
+        synchronized (writeLock) {
+            return newestMicros == Long.MIN_VALUE ? Optional.empty() : Optional.of(toTimestamp(newestMicros));
+        }
+    }
+
+    @PreDestroy
+    public void close() {
+        flusher.shutdown();
+        flush();
+    }
+
+    private void flushLocked() {
+        List<SearchSegment.Memory> pending = new ArrayList<>();
+        synchronized (writeLock) {
+            if (active.docCount() > 0) {
+                List<SearchSegment> withFrozen = new ArrayList<>(segments);
+                withFrozen.add(active);
+                segments = List.copyOf(withFrozen);
+                active = new SearchSegment.Memory();
+            }
+            // Includes segments whose earlier flush failed
+            for (SearchSegment segment : segments) {
+                if (segment instanceof SearchSegment.Memory m) {
+                    pending.add(m);
+                }
+            }
+        }
+        if (pending.isEmpty()) {
+            return;
+        }
+        try {
+            SearchSegment.Disk written = writeSegment(pending);
+            replace(pending, written);
+            if (segments.size() > maxSegments) {
+                merge();
+            }
+        } catch (IOException | RuntimeException e) {
+            // Frozen segments stay searchable in memory and are written by the next flush
+            log.error("Failed to flush search segment", e);
+        }
+    }
+
+    // Merges the smallest half of the segments into one, leaving out any that would push it past the size cap
+    private void merge() throws IOException {
+        List<SearchSegment.Disk> disk = new ArrayList<>();
+        for (SearchSegment segment : segments) {
+            if (segment instanceof SearchSegment.Disk d) {
+                disk.add(d);
+            }
+        }
+        disk.sort(Comparator.comparingLong(SearchSegment.Disk::sizeBytes));
+        List<SearchSegment.Disk> smallest = new ArrayList<>();
+        long bytes = 0;
+        for (SearchSegment.Disk d : disk) {
+            if (smallest.size() >= Math.max(2, disk.size() / 2) || bytes + d.sizeBytes() > maxSegmentBytes) {
+                break;
+            }
+            smallest.add(d);
+            bytes += d.sizeBytes();
+        }
+        if (smallest.size() < 2) {
+            log.warn("{} search segments, but no two fit under {} MB together; not merging",
+                    disk.size(), maxSegmentBytes >> 20);
+            return;
+        }
+        // Oldest first, so docs in the merged segment stay roughly in time order
+        smallest.sort(Comparator.comparing(SearchSegment.Disk::file));
+        SearchSegment.Disk merged = writeSegment(smallest);
+        replace(smallest, merged);
+        for (SearchSegment.Disk old : smallest) {
+            Files.deleteIfExists(old.file());
+        }
+        log.info("Merged {} search segments into {} ({} messages)", smallest.size(), merged.file().getFileName(), merged.docCount());
+    }
+
+    private SearchSegment.Disk writeSegment(List<? extends SearchSegment> sources) throws IOException {
+        Files.createDirectories(dir);
+        Path file = dir.resolve(String.format("seg-%08d.idx", ++generation));
+        try {
+            SearchSegment.Disk.write(file, sources);
+            return new SearchSegment.Disk(file);
+        } catch (IOException | RuntimeException e) {
+            Files.deleteIfExists(file);
+            throw e;
+        }
+    }
+
+    private void replace(List<? extends SearchSegment> removed, SearchSegment.Disk added) throws IOException {
+        List<SearchSegment> next = new ArrayList<>(segments);
+        next.removeAll(removed);
+        next.add(added);
+        writeManifest(next);
+        synchronized (writeLock) {
+            List<SearchSegment> current = new ArrayList<>(segments);
+            current.removeAll(removed);
+            current.add(added);
+            segments = List.copyOf(current);
+        }
+    }
+
+    private void writeManifest(List<SearchSegment> live) throws IOException {
+        List<String> names = new ArrayList<>();
+        for (SearchSegment segment : live) {
+            if (segment instanceof SearchSegment.Disk d) {
+                names.add(d.file().getFileName().toString());
+            }
+        }
+        Path tmp = dir.resolve("segments.tmp");
+        Files.write(tmp, names, StandardCharsets.UTF_8);
+        Files.move(tmp, dir.resolve("segments"), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private void open() {
+        Path manifest = dir.resolve("segments");
+        if (!Files.exists(manifest)) {
+            return;
+        }
+        try {
+            List<String> live = Files.readAllLines(manifest, StandardCharsets.UTF_8);
+            List<SearchSegment> loaded = new ArrayList<>();
+            for (String name : live) {
+                loaded.add(new SearchSegment.Disk(dir.resolve(name)));
+                generation = Math.max(generation, Long.parseLong(name.substring(4, name.length() - 4)));
+            }
+            segments = List.copyOf(loaded);
+            rememberNewest(loaded);
+            // Leftovers of an interrupted flush or merge
+            try (DirectoryStream<Path> files = Files.newDirectoryStream(dir, "seg-*.idx")) {
+                for (Path file : files) {
+                    if (!live.contains(file.getFileName().toString())) {
+                        Files.delete(file);
+                    }
+                }
+            }
+            log.info("Search index: {} segment(s), {} messages", loaded.size(),
+                    loaded.stream().mapToLong(SearchSegment::docCount).sum());
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot open search index in " + dir, e);
+        }
+    }
+
+    // Catch-up resumes a window before the newest message, so the ids in that window count as
+    // just indexed. Docs are only roughly in time order within a segment, hence the full scan.
+    private void rememberNewest(List<SearchSegment> loaded) {
+        for (SearchSegment segment : loaded) {
+            for (int doc = 0; doc < segment.docCount(); doc++) {
+                newestMicros = Math.max(newestMicros, segment.timestampMicros(doc));
+            }
+        }
+        // Twice the window: a message's timestamp can trail the time in its id
+        long floor = newestMicros - 2 * catchUpWindowMs * 1_000;
+        long now = System.currentTimeMillis();
+        for (SearchSegment segment : loaded) {
+            for (int doc = 0; doc < segment.docCount(); doc++) {
+                if (segment.timestampMicros(doc) >= floor) {
+                    recentIds.put(segment.messageId(doc), now);
+                }
+            }
+        }
+    }
+
+    // Lower-cased runs of letters and digits; single letters carry no signal
+    static List<String> tokenize(String text) {
+        List<String> tokens = new ArrayList<>();
+        int start = -1;
+        for (int i = 0; i <= text.length(); i++) {
+            boolean wordChar = i < text.length() && Character.isLetterOrDigit(text.charAt(i));
+            if (wordChar && start < 0) {
+                start = i;
+            } else if (!wordChar && start >= 0) {
+                if (i - start <= MAX_TOKEN_LENGTH && (i - start > 1 || Character.isDigit(text.charAt(start)))) {
+                    tokens.add(text.substring(start, i).toLowerCase(Locale.ROOT));
+                }
+                start = -1;
+            }
+        }
+        return tokens;
+    }
+
+    // Every list is in ascending doc order: walk the shortest and binary-search the others forward
+    private static List<Integer> intersect(int[][][] lists) {
+        int shortest = 0;
+        for (int t = 1; t < lists.length; t++) {
+            if (lists[t][0].length < lists[shortest][0].length) {
+                shortest = t;
+            }
+        }
+        List<Integer> result = new ArrayList<>();
+        int[] positions = new int[lists.length];
+        outer:
+        for (int doc : lists[shortest][0]) {
+            for (int t = 0; t < lists.length; t++) {
+                if (t == shortest) {
+                    continue;
+                }
+                int[] docs = lists[t][0];
+                int index = Arrays.binarySearch(docs, positions[t], docs.length, doc);
+                if (index < 0) {
+                    positions[t] = -index - 1;
+                    if (positions[t] >= docs.length) {
+                        break outer;
+                    }
+                    continue outer;
+                }
+                positions[t] = index;
+            }
+            result.add(doc);
+        }
+        return result;
+    }
+
+    private static long toMicros(LocalDateTime timestamp) {
+        return timestamp.toEpochSecond(ZoneOffset.UTC) * 1_000_000 + timestamp.getNano() / 1_000;
+    }
+
+    private static LocalDateTime toTimestamp(long micros) {
+        return LocalDateTime.ofEpochSecond(Math.floorDiv(micros, 1_000_000), Math.floorMod(micros, 1_000_000) * 1_000,
+                ZoneOffset.UTC);
+    }
+
+    @Getter
+    @RequiredArgsConstructor
+    public static class Hit {
+        static final Comparator<Hit> RANKING = Comparator.comparingDouble(Hit::getScore).reversed()
+                .thenComparing(Hit::getTimestamp, Comparator.reverseOrder());
+
+        private final UUID messageId;
+        private final UUID chatRoomId;
+        private final LocalDateTime timestamp;
+        private final double score;
+    }
+
+    @Getter
+    @RequiredArgsConstructor
+    public static class SearchResult {
+        private final List<Hit> hits;
+        private final int total;
+    }
+}
@@ -0,0 +1,197 @@
+package com.example.chat.service;
+
+import com.example.chat.dto.MessageView;
+import com.example.chat.dto.SearchHitDto;
+import com.example.chat.dto.SearchPageDto;
+import com.example.chat.entity.ChatRoom;
+import com.example.chat.entity.TimeOrderedUuidGenerator;
+import com.example.chat.entity.User;
+import com.example.chat.repository.ChatRoomRepository;
+import com.example.chat.repository.MessageArchive;
+import com.example.chat.repository.MessageRepository;
+import com.example.chat.repository.UserRepository;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.security.access.AccessDeniedException;
+import org.springframework.stereotype.Service;
+
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.*;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * Search over the caller's conversations, plus the catch-up that keeps the index complete.
+ * MessageWriter indexes its own writes as they commit; catch-up rescans a short trailing
+ * window of the primary key for messages this instance did not write or missed on restart.
+ * The window only looks at time-ordered (v7) ids; ids left from before the migration to
+ * them are indexed once, by the initial build of an empty index.
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class MessageSearchService {
+
+    private static final int CATCH_UP_BATCH = 1000;
+    // Bounds one run so the shared scheduler thread is not held by an initial build
+    private static final int CATCH_UP_BATCHES_PER_RUN = 50;
+
+    private final MessageSearchIndex messageSearchIndex;
+    private final MessageRepository messageRepository;
+    private final ChatRoomRepository chatRoomRepository;
+    private final UserRepository userRepository;
+    private final MessageArchive messageArchive;
+
+    @Value("${chat.search.page-size:20}")
+    private int defaultPageSize;
+
+    @Value("${chat.search.max-results:1000}")
+    private int maxResults;
+
+    // Longer than any insert transaction, so late commits are still inside the rescanned window
+    @Value("${chat.search.catch-up-window-ms:10000}")
+    private long catchUpWindowMs;
+
+    private LocalDateTime caughtUpTo;
+    // Primary-key cursor of the initial build, null when there is none left to do
+    private UUID buildAfter;
+    private UUID buildUntil;
+    private boolean started;
+
+    public SearchPageDto search(String currentUsername, String query, UUID chatRoomId, Integer page, Integer size) {
+        if (query == null || query.isBlank()) {
+            throw new IllegalArgumentException("q is required");
+        }
+        User currentUser = userRepository.findByUsername(currentUsername)
+                .orElseThrow(() -> new RuntimeException("Current user not found"));
+        List<UUID> rooms;
+        if (chatRoomId != null) {
+            ChatRoom room = chatRoomRepository.findById(chatRoomId)
+                    .orElseThrow(() -> new RuntimeException("ChatRoom not found"));
+            if (!room.getUser1().getId().equals(currentUser.getId()) && !room.getUser2().getId().equals(currentUser.getId())) {
+                throw new AccessDeniedException("Not a member of this chat room");
+            }
+            rooms = List.of(chatRoomId);
+        } else {
+            rooms = chatRoomRepository.findIdsByMember(currentUser.getId());
+        }
+
+        int pageSize = size == null ? defaultPageSize : Math.max(1, Math.min(size, 100));
+        int pageNumber = page == null ? 0 : Math.max(0, page);
+        int offset = pageNumber * pageSize;
+        if (offset >= maxResults) {
+            throw new IllegalArgumentException("Only the first " + maxResults + " results can be paged through");
+        }
+
+        MessageSearchIndex.SearchResult result = messageSearchIndex.search(rooms, query, offset, pageSize);
+        List<MessageSearchIndex.Hit> hits = result.getHits();
+        Map<UUID, MessageView> views = messageRepository.findViewsByIds(
+                        hits.stream().map(MessageSearchIndex.Hit::getMessageId).toList()).stream()
+                .collect(Collectors.toMap(MessageView::getId, Function.identity()));
+
+        List<SearchHitDto> results = new ArrayList<>(hits.size());
+        for (MessageSearchIndex.Hit hit : hits) {
+            // Hits older than the retention window live in the archive
+            MessageView view = views.get(hit.getMessageId());
+            if (view == null) {
+                view = messageArchive.find(hit.getChatRoomId(), hit.getTimestamp(), hit.getMessageId()).orElse(null);
+            }
+            if (view != null) {
+                results.add(new SearchHitDto(view, hit.getScore()));
+            }
+        }
+        return new SearchPageDto(results, Math.min(result.getTotal(), maxResults), pageNumber, pageSize);
+    }
+
+    @Scheduled(fixedDelayString = "${chat.search.catch-up-interval-ms:5000}")
+    public void catchUp() {
+        try {
+            if (!started) {
+                start();
+            }
+            LocalDateTime windowStart = caughtUpTo.minusNanos(catchUpWindowMs * 1_000_000);
+            long windowStartMillis = windowStart.atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
+            messageSearchIndex.forgetIndexedBefore(windowStartMillis);
+
+            int batches = 0;
+            long indexed = 0;
+            // A time-ordered id past this cannot exist yet; legacy random ids up there are not worth scanning
+            long horizon = System.currentTimeMillis() + catchUpWindowMs;
+            UUID after = TimeOrderedUuidGenerator.floor(windowStartMillis);
+            while (batches++ < CATCH_UP_BATCHES_PER_RUN) {
+                List<UUID> ids = messageRepository.findIdsAfter(after, PageRequest.of(0, CATCH_UP_BATCH));
+                List<UUID> recent = new ArrayList<>(ids.size());
+                boolean pastHorizon = false;
+                for (UUID id : ids) {
+                    if (createdMillis(id) > horizon) {
+                        pastHorizon = true;
+                        break;
+                    }
+                    // Legacy random ids sort anywhere; only the initial build indexes them
+                    if (id.version() == 7) {
+                        recent.add(id);
+                    }
+                }
+                if (!recent.isEmpty()) {
+                    indexed += messageSearchIndex.index(messageRepository.findViewsByIds(recent));
+                    caughtUpTo = LocalDateTime.ofInstant(
+                            Instant.ofEpochMilli(createdMillis(recent.get(recent.size() - 1))), ZoneId.systemDefault());
+                }
+                if (pastHorizon || ids.size() < CATCH_UP_BATCH) {
+                    break;
+                }
+                after = ids.get(ids.size() - 1);
+            }
+
+            // The initial build gets whatever this run has left
+            while (buildAfter != null && batches++ < CATCH_UP_BATCHES_PER_RUN) {
+                List<UUID> ids = messageRepository.findIdsAfter(buildAfter, PageRequest.of(0, CATCH_UP_BATCH));
+                List<UUID> older = ids.stream()
+                        .filter(id -> id.version() != 7 || TimeOrderedUuidGenerator.BINARY_ORDER.compare(id, buildUntil) < 0)
+                        .toList();
+                if (!older.isEmpty()) {
+                    indexed += messageSearchIndex.index(messageRepository.findViewsByIds(older));
+                }
+                buildAfter = ids.size() < CATCH_UP_BATCH ? null : ids.get(ids.size() - 1);
+                if (buildAfter == null) {
+                    log.info("Search index initial build finished");
+                }
+            }
+            if (indexed > 0) {
+                log.info("Search index caught up on {} messages", indexed);
+            }
+        } catch (Exception e) {
+            log.error("Search index catch-up failed", e);
+        }
+    }
+
+    // An empty index is built from every stored message, in primary-key order and a few batches
+    // per run. Time-ordered ids from one window before now on are left to the regular window,
+    // so no message is picked up by both.
+    private void start() {
+        Optional<LocalDateTime> newest = messageSearchIndex.newestIndexed();
+        if (newest.isPresent()) {
+            caughtUpTo = newest.get();
+        } else {
+            caughtUpTo = LocalDateTime.now();
+            buildAfter = new UUID(0, 0);
+            buildUntil = TimeOrderedUuidGenerator.floor(System.currentTimeMillis() - catchUpWindowMs);
+        }
+        started = true;
+    }
+
+    // Time-ordered ids carry their creation time in the top 48 bits
+    private static long createdMillis(UUID id) {
+        return id.getMostSignificantBits() >>> 16;
+    }
+
+    @Scheduled(fixedDelayString = "${chat.search.flush-interval-ms:60000}")
+    public void flush() {
+        messageSearchIndex.flush();
+    }
+}
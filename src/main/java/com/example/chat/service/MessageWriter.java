@@ -0,0 +1,167 @@
+package com.example.chat.service;
+
+import com.example.chat.dto.MessageView;
+import com.example.chat.dto.OutgoingChatMessageDto;
+import com.example.chat.dto.UserIdentity;
+import com.example.chat.entity.Message;
+import com.example.chat.entity.MessageBodyCodec;
+import com.example.chat.entity.MessageClientId;
+import com.example.chat.entity.MessageStatus;
+import com.example.chat.entity.OutboxEvent;
+import com.example.chat.entity.TimeOrderedUuidGenerator;
+import com.example.chat.repository.ChatRoomRepository;
+import com.example.chat.repository.MessageClientIdRepository;
+import com.example.chat.repository.MessageRepository;
+import com.example.chat.repository.OutboxEventRepository;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.util.*;
+
+/**
+ * The one place messages are inserted. Each room's sequence numbers are reserved
+ * in the same transaction as the insert, so a rolled-back write never leaves a gap.
+ * A send that was already stored under the same client message id fails the whole
+ * transaction with a DataIntegrityViolationException.
+ * Messages written as DELIVERED get an outbox row in the same transaction and are
+ * broadcast to their room by OutboxRelay once committed.
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class MessageWriter {
+
+    // Configured like the STOMP broker's converter, so the relayed frame matches convertAndSend
+    private static final ObjectMapper BROADCAST_JSON = Jackson2ObjectMapperBuilder.json().build();
+
+    private final MessageRepository messageRepository;
+    private final ChatRoomRepository chatRoomRepository;
+    private final MessageClientIdRepository messageClientIdRepository;
+    private final MessageSearchIndex messageSearchIndex;
+    private final OutboxEventRepository outboxEventRepository;
+    private final OutboxRelay outboxRelay;
+    private final UserIdentityCache userIdentityCache;
+
+    // Bodies at least this long (in chars) are stored Deflate-compressed; 0 disables compression
+    @Value("${chat.compression.min-chars:512}")
+    private int compressionMinChars;
+
+    @Transactional
+    public void insert(List<Message> messages) {
+        if (messages.isEmpty()) {
+            return;
+        }
+
+        // One reservation per room, in list order within the room. Rooms are locked in id
+        // order, so two batches sharing rooms queue on the first one instead of deadlocking.
+        Map<UUID, List<Message>> byRoom = new TreeMap<>(TimeOrderedUuidGenerator.BINARY_ORDER);
+        for (Message message : messages) {
+            byRoom.computeIfAbsent(message.getChatRoom().getId(), id -> new ArrayList<>()).add(message);
+        }
+        byRoom.forEach((chatRoomId, roomMessages) -> {
+            chatRoomRepository.reserveSeq(chatRoomId, roomMessages.size());
+            long seq = chatRoomRepository.findLastSeq(chatRoomId) - roomMessages.size();
+            for (Message message : roomMessages) {
+                message.setSeq(++seq);
+            }
+        });
+
+        List<String> plain = new ArrayList<>(messages.size());
+        for (Message message : messages) {
+            plain.add(message.getContent());
+            compress(message);
+        }
+
+        // Inserts are grouped by hibernate.jdbc.batch_size
+        messageRepository.saveAll(messages);
+
+        // Message ids are assigned by now; the keys are flushed with the messages at commit
+        List<MessageClientId> clientIds = new ArrayList<>();
+        for (Message m : messages) {
+            if (m.getClientMessageId() != null) {
+                clientIds.add(MessageClientId.builder()
+                        .clientMessageId(m.getClientMessageId())
+                        .senderId(m.getSender().getId())
+                        .messageId(m.getId())
+                        .createdAt(m.getTimestamp())
+                        .build());
+            }
+        }
+        if (!clientIds.isEmpty()) {
+            messageClientIdRepository.saveAll(clientIds);
+        }
+
+        // Searchable once committed; a rolled-back message never reaches the index
+        List<MessageView> indexed = new ArrayList<>(messages.size());
+        List<OutboxEvent> broadcasts = new ArrayList<>();
+        for (int i = 0; i < messages.size(); i++) {
+            Message m = messages.get(i);
+            indexed.add(new MessageView(m.getId(), m.getChatRoom().getId(), m.getSeq(), m.getSender().getId(),
+                    m.getReceiver().getId(), plain.get(i), null, m.getTimestamp(), m.getStatus(), m.getMessageType()));
+            if (m.getStatus() == MessageStatus.DELIVERED) {
+                broadcasts.add(OutboxEvent.builder()
+                        .chatRoomId(m.getChatRoom().getId())
+                        .messageId(m.getId())
+                        .payload(toJson(OutgoingChatMessageDto.of(m, plain.get(i),
+                                identity(m.getSender().getId()), identity(m.getReceiver().getId()))))
+                        .createdAt(LocalDateTime.now())
+                        .build());
+            }
+        }
+        if (!broadcasts.isEmpty()) {
+            outboxEventRepository.saveAll(broadcasts);
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                // The messages are stored by now; a failure here must not make the caller retry the write
+                try {
+                    messageSearchIndex.index(indexed);
+                } catch (RuntimeException e) {
+                    log.error("Failed to index {} committed messages; catch-up will pick them up", indexed.size(), e);
+                }
+                if (!broadcasts.isEmpty()) {
+                    outboxRelay.wake();
+                }
+            }
+        });
+    }
+
+    // Sender and receiver may be uninitialized references; reading their id does not load them
+    private UserIdentity identity(UUID userId) {
+        return userIdentityCache.byId(userId)
+                .orElseThrow(() -> new RuntimeException("User not found: " + userId));
+    }
+
+    private static String toJson(OutgoingChatMessageDto outgoing) {
+        try {
+            return BROADCAST_JSON.writeValueAsString(outgoing);
+        } catch (JsonProcessingException e) {
+            throw new RuntimeException("Failed to serialize broadcast for message " + outgoing.getId(), e);
+        }
+    }
+
+    // Only kept when it actually saves space; short or already-dense bodies stay plain TEXT
+    private void compress(Message message) {
+        String content = message.getContent();
+        if (compressionMinChars <= 0 || content == null || content.length() < compressionMinChars) {
+            return;
+        }
+        byte[] utf8 = content.getBytes(StandardCharsets.UTF_8);
+        byte[] compressed = MessageBodyCodec.compress(utf8);
+        if (compressed.length < utf8.length) {
+            message.setContentCompressed(compressed);
+            message.setContent(null);
+        }
+    }
+}
@@ -0,0 +1,135 @@
+package com.example.chat.service;
+
+import com.example.chat.entity.OutboxEvent;
+import com.example.chat.repository.OutboxEventRepository;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.messaging.simp.SimpMessageType;
+import org.springframework.messaging.simp.SimpMessagingTemplate;
+import org.springframework.messaging.support.MessageBuilder;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.springframework.util.MimeTypeUtils;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Publishes outbox rows to their room topics. MessageWriter wakes the relay after
+ * each commit that wrote rows; wake-ups arriving while a drain is queued collapse
+ * into it, so a burst of commits is relayed in a few batches. A timer picks up rows
+ * left behind by a crash or a lost wake-up.
+ * Each batch is locked, published and deleted in one transaction. A failure midway
+ * rolls the batch back and it is published again: delivery is at least once, and
+ * clients drop broadcasts whose message id they already hold.
+ */
+@Slf4j
+@Service
+public class OutboxRelay {
+
+    private final OutboxEventRepository outboxEventRepository;
+    private final SimpMessagingTemplate messagingTemplate;
+    private final TransactionTemplate transactionTemplate;
+    private final int batchSize;
+
+    private final ExecutorService executor = Executors.newSingleThreadExecutor(
+            Thread.ofPlatform().name("outbox-relay").daemon().factory());
+    private final AtomicBoolean drainQueued = new AtomicBoolean();
+
+    private final Counter published;
+    private final Timer lag;
+
+    public OutboxRelay(OutboxEventRepository outboxEventRepository,
+                       SimpMessagingTemplate messagingTemplate,
+                       TransactionTemplate transactionTemplate,
+                       MeterRegistry meterRegistry,
+                       @Value("${chat.outbox.batch-size:500}") int batchSize) {
+        this.outboxEventRepository = outboxEventRepository;
+        this.messagingTemplate = messagingTemplate;
+        this.transactionTemplate = transactionTemplate;
+        this.batchSize = batchSize;
+
+        this.published = Counter.builder("chat.outbox.published")
+                .description("Room broadcasts relayed from the outbox")
+                .register(meterRegistry);
+        this.lag = Timer.builder("chat.outbox.lag")
+                .description("Time from message write to broadcast")
+                .register(meterRegistry);
+    }
+
+    public void wake() {
+        if (drainQueued.compareAndSet(false, true)) {
+            executor.execute(this::drain);
+        }
+    }
+
+    @Scheduled(fixedDelayString = "${chat.outbox.poll-interval-ms:1000}")
+    public void poll() {
+        wake();
+    }
+
+    /**
+     * Relays everything currently in the outbox on the calling thread and returns
+     * the number of broadcasts sent.
+     */
+    public int relayPending() {
+        int total = 0;
+        int relayed;
+        do {
+            relayed = transactionTemplate.execute(status -> relayBatch());
+            total += relayed;
+        } while (relayed == batchSize);
+        return total;
+    }
+
+    private void drain() {
+        // Cleared first: a wake-up during this drain queues another one for rows committed meanwhile
+        drainQueued.set(false);
+        try {
+            relayPending();
+        } catch (Exception e) {
+            log.error("Outbox relay failed; retrying on the next poll", e);
+        }
+    }
+
+    private int relayBatch() {
+        List<OutboxEvent> events = outboxEventRepository.lockOldest(PageRequest.of(0, batchSize));
+        if (events.isEmpty()) {
+            return 0;
+        }
+        LocalDateTime now = LocalDateTime.now();
+        for (OutboxEvent event : events) {
+            publish(event);
+            lag.record(Duration.between(event.getCreatedAt(), now));
+        }
+        outboxEventRepository.deleteAllInBatch(events);
+        published.increment(events.size());
+        return events.size();
+    }
+
+    // The payload is already JSON, so it bypasses the broker's message converter
+    private void publish(OutboxEvent event) {
+        SimpMessageHeaderAccessor accessor = SimpMessageHeaderAccessor.create(SimpMessageType.MESSAGE);
+        accessor.setContentType(MimeTypeUtils.APPLICATION_JSON);
+        accessor.setLeaveMutable(true);
+        messagingTemplate.send("/topic/messages/" + event.getChatRoomId(), MessageBuilder.createMessage(
+                event.getPayload().getBytes(StandardCharsets.UTF_8), accessor.getMessageHeaders()));
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdown();
+    }
+}
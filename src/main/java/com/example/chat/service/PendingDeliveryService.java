@@ -0,0 +1,81 @@
+package com.example.chat.service;
+
+import com.example.chat.dto.BulkStatusUpdateDto;
+import com.example.chat.dto.MessageView;
+import com.example.chat.dto.PendingMessagesDto;
+import com.example.chat.dto.UserDto;
+import com.example.chat.dto.UserIdentity;
+import com.example.chat.entity.MessageStatus;
+import com.example.chat.repository.MessageRepository;
+import lombok.RequiredArgsConstructor;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.messaging.simp.SimpMessagingTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.*;
+import java.util.stream.Collectors;
+
+/**
+ * Hands a reconnecting user the messages that arrived while they were offline:
+ * one bounded batch per call, one bulk UPDATE to DELIVERED, one status frame per room.
+ */
+@Service
+@RequiredArgsConstructor
+public class PendingDeliveryService {
+
+    private final MessageRepository messageRepository;
+    private final UserIdentityCache userIdentityCache;
+    private final RecentMessageCache recentMessageCache;
+    private final SimpMessagingTemplate messagingTemplate;
+
+    @Value("${chat.pending.batch-size:200}")
+    private int batchSize;
+
+    @Transactional
+    public PendingMessagesDto drain(String username) {
+        UserIdentity receiver = userIdentityCache.byUsername(username)
+                .orElseThrow(() -> new RuntimeException("User not found"));
+
+        List<MessageView> pending = messageRepository.findPending(receiver.getId(), PageRequest.of(0, batchSize + 1));
+        boolean hasMore = pending.size() > batchSize;
+        if (hasMore) {
+            pending = pending.subList(0, batchSize);
+        }
+        if (pending.isEmpty()) {
+            return new PendingMessagesDto(List.of(), List.of(), false);
+        }
+
+        List<UUID> ids = pending.stream().map(MessageView::getId).toList();
+        messageRepository.markDelivered(ids);
+
+        List<MessageView> delivered = pending.stream()
+                .map(m -> m.withStatus(MessageStatus.DELIVERED))
+                .toList();
+        Set<UUID> senderIds = delivered.stream().map(MessageView::getSenderId).collect(Collectors.toSet());
+        List<UserDto> senders = userIdentityCache.byIds(senderIds).values().stream().map(UserDto::from).toList();
+
+        // Senders learn about the whole batch with one frame per room, once the UPDATE has
+        // committed: a rolled-back batch stays PENDING and is never announced as delivered
+        Map<UUID, List<UUID>> idsByRoom = delivered.stream().collect(Collectors.groupingBy(
+                MessageView::getChatRoomId, LinkedHashMap::new,
+                Collectors.mapping(MessageView::getId, Collectors.toList())));
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                idsByRoom.forEach((chatRoomId, roomIds) -> {
+                    Set<UUID> deliveredIds = new HashSet<>(roomIds);
+                    recentMessageCache.updateStatus(chatRoomId, m -> deliveredIds.contains(m.getId()),
+                            MessageStatus.DELIVERED);
+                    messagingTemplate.convertAndSend("/topic/status/" + chatRoomId,
+                            new BulkStatusUpdateDto(chatRoomId, roomIds, MessageStatus.DELIVERED));
+                });
+            }
+        });
+
+        return new PendingMessagesDto(delivered, senders, hasMore);
+    }
+}
@@ -0,0 +1,114 @@
+package com.example.chat.service;
+
+import com.example.chat.dto.MessageView;
+import com.example.chat.dto.ReadReceiptDto;
+import com.example.chat.dto.ReadWatermarkDto;
+import com.example.chat.dto.UserIdentity;
+import com.example.chat.entity.MessageStatus;
+import com.example.chat.entity.TimeOrderedUuidGenerator;
+import com.example.chat.repository.MessageRepository;
+import lombok.RequiredArgsConstructor;
+import lombok.Value;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.messaging.simp.SimpMessagingTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.time.LocalDateTime;
+import java.util.Map;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Collects "read up to here" acknowledgements and applies them on a short timer.
+ * However many acks a client sends while scrolling, each (room, reader) pair costs
+ * one ranged UPDATE and one /topic/status frame per flush interval.
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class ReadReceiptService {
+
+    private final MessageRepository messageRepository;
+    private final UserIdentityCache userIdentityCache;
+    private final RecentMessageCache recentMessageCache;
+    private final SimpMessagingTemplate messagingTemplate;
+
+    // Highest watermark per (room, reader) not yet written
+    private final Map<ReaderKey, Watermark> pending = new ConcurrentHashMap<>();
+
+    public void acknowledge(String username, ReadWatermarkDto ack) {
+        if (ack.getChatRoomId() == null || ack.getUpToTimestamp() == null) {
+            throw new RuntimeException("chatRoomId and upToTimestamp are required");
+        }
+        pending.merge(new ReaderKey(ack.getChatRoomId(), username),
+                new Watermark(ack.getUpToTimestamp(), ack.getUpToMessageId()),
+                Watermark::max);
+    }
+
+    @Scheduled(fixedDelayString = "${chat.read-receipts.flush-interval-ms:500}")
+    public void flush() {
+        for (ReaderKey key : pending.keySet()) {
+            Watermark watermark = pending.remove(key);
+            if (watermark == null) {
+                continue;
+            }
+            try {
+                apply(key, watermark);
+            } catch (Exception e) {
+                log.error("Failed to apply read watermark for chat room {}", key.getChatRoomId(), e);
+            }
+        }
+    }
+
+    private void apply(ReaderKey key, Watermark watermark) {
+        Optional<UserIdentity> reader = userIdentityCache.byUsername(key.getUsername());
+        if (reader.isEmpty()) {
+            return;
+        }
+        UUID readerId = reader.get().getId();
+
+        int updated = watermark.getId() == null
+                ? messageRepository.markReadUpTo(key.getChatRoomId(), readerId, watermark.getTimestamp())
+                : messageRepository.markReadUpTo(key.getChatRoomId(), readerId, watermark.getTimestamp(), watermark.getId());
+        if (updated == 0) {
+            return;
+        }
+
+        recentMessageCache.updateStatus(key.getChatRoomId(),
+                m -> m.getReceiverId().equals(readerId) && watermark.covers(m), MessageStatus.READ);
+        messagingTemplate.convertAndSend("/topic/status/" + key.getChatRoomId(),
+                new ReadReceiptDto(key.getChatRoomId(), readerId, MessageStatus.READ, watermark.getTimestamp(), watermark.getId()));
+    }
+
+    @Value
+    private static class ReaderKey {
+        UUID chatRoomId;
+        String username;
+    }
+
+    @Value
+    private static class Watermark {
+        LocalDateTime timestamp;
+        UUID id;
+
+        // Without an id the watermark covers every message at its timestamp. Ids tie-break
+        // the way MySQL orders BINARY(16), as the history queries do, not by UUID's signed compareTo
+        static Watermark max(Watermark a, Watermark b) {
+            int byTime = a.timestamp.compareTo(b.timestamp);
+            if (byTime != 0) {
+                return byTime > 0 ? a : b;
+            }
+            if (a.id == null || b.id == null) {
+                return new Watermark(a.timestamp, null);
+            }
+            return TimeOrderedUuidGenerator.BINARY_ORDER.compare(a.id, b.id) >= 0 ? a : b;
+        }
+
+        boolean covers(MessageView m) {
+            int byTime = m.getTimestamp().compareTo(timestamp);
+            return byTime < 0 || (byTime == 0 && (id == null || TimeOrderedUuidGenerator.BINARY_ORDER.compare(m.getId(), id) <= 0));
+        }
+    }
+}
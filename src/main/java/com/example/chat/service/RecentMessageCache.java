@@ -0,0 +1,211 @@
+package com.example.chat.service;
+
+import com.example.chat.dto.MessageView;
+import com.example.chat.entity.MessageStatus;
+import com.example.chat.entity.TimeOrderedUuidGenerator;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.util.*;
+import java.util.function.Predicate;
+
+/**
+ * Newest messages of recently active chat rooms, so opening a room does not have to
+ * go to MySQL. Each room keeps up to {@code chat.recent-cache.messages-per-room}
+ * messages; whole rooms are evicted least-recently-used first once the estimated
+ * size passes {@code chat.recent-cache.max-bytes}.
+ *
+ * The write path only appends to rooms that are already cached. A room is loaded
+ * from the first history page read after it was evicted.
+ */
+@Service
+public class RecentMessageCache {
+
+    // Rough per-message overhead on top of the content chars: object headers, UUIDs, timestamp
+    private static final int MESSAGE_OVERHEAD_BYTES = 160;
+
+    private final int messagesPerRoom;
+    private final long maxBytes;
+
+    // Access-ordered, so iteration starts at the least recently used room
+    private final LinkedHashMap<UUID, RoomBuffer> rooms = new LinkedHashMap<>(256, 0.75f, true);
+    private long usedBytes;
+
+    // Writes seen per hash slot; a load that started before a write to its room must not be cached
+    private final long[] lastWrite = new long[4096];
+
+    private final MeterRegistry meterRegistry;
+    private final Counter hits;
+    private final Counter misses;
+
+    public RecentMessageCache(MeterRegistry meterRegistry,
+                              @Value("${chat.recent-cache.messages-per-room:100}") int messagesPerRoom,
+                              @Value("${chat.recent-cache.max-bytes:67108864}") long maxBytes) {
+        this.messagesPerRoom = messagesPerRoom;
+        this.maxBytes = maxBytes;
+        this.meterRegistry = meterRegistry;
+
+        this.hits = Counter.builder("chat.recent-cache.requests").tag("result", "hit").register(meterRegistry);
+        this.misses = Counter.builder("chat.recent-cache.requests").tag("result", "miss").register(meterRegistry);
+    }
+
+    // The gauges read this cache, so they are registered once it is fully constructed
+    @PostConstruct
+    void registerGauges() {
+        Gauge.builder("chat.recent-cache.rooms", this, c -> c.size()).register(meterRegistry);
+        Gauge.builder("chat.recent-cache.bytes", this, c -> c.estimatedBytes()).register(meterRegistry);
+    }
+
+    /**
+     * Newest {@code count} messages, newest first, when the cache can answer for
+     * certain: it holds at least that many, or it holds the room's whole history.
+     * Only writes on this instance reach the cache, so a room that has not seen
+     * {@code lastSeq} (the room's own counter, read by the caller) missed a message
+     * written elsewhere; it is dropped, to be filled again from the database.
+     */
+    public synchronized Optional<List<MessageView>> latest(UUID chatRoomId, int count, long lastSeq) {
+        RoomBuffer buffer = rooms.get(chatRoomId);
+        if (buffer != null && buffer.maxSeq() < lastSeq) {
+            evict(chatRoomId);
+            buffer = null;
+        }
+        if (buffer == null || (buffer.messages.size() < count && buffer.olderExists)) {
+            misses.increment();
+            return Optional.empty();
+        }
+        hits.increment();
+        List<MessageView> newestFirst = new ArrayList<>(Math.min(count, buffer.messages.size()));
+        for (int i = buffer.messages.size() - 1; i >= 0 && newestFirst.size() < count; i--) {
+            newestFirst.add(buffer.messages.get(i));
+        }
+        return Optional.of(newestFirst);
+    }
+
+    /**
+     * Caches a page read from the database (newest first). {@code loadStarted} is a
+     * {@link #clock()} value taken before the query ran.
+     */
+    public synchronized void fill(UUID chatRoomId, List<MessageView> newestFirst, boolean olderExists, long loadStarted) {
+        if (rooms.containsKey(chatRoomId) || lastWrite[slot(chatRoomId)] >= loadStarted) {
+            return;
+        }
+        RoomBuffer buffer = new RoomBuffer();
+        for (int i = Math.min(newestFirst.size(), messagesPerRoom) - 1; i >= 0; i--) {
+            buffer.add(newestFirst.get(i));
+        }
+        buffer.olderExists = olderExists || newestFirst.size() > messagesPerRoom;
+        rooms.put(chatRoomId, buffer);
+        usedBytes += buffer.bytes;
+        evictIfNeeded();
+    }
+
+    public synchronized void append(UUID chatRoomId, MessageView message) {
+        lastWrite[slot(chatRoomId)] = clock();
+        RoomBuffer buffer = rooms.get(chatRoomId);
+        if (buffer == null) {
+            return;
+        }
+        long before = buffer.bytes;
+        buffer.insert(message);
+        while (buffer.messages.size() > messagesPerRoom) {
+            buffer.removeOldest();
+            buffer.olderExists = true;
+        }
+        usedBytes += buffer.bytes - before;
+        evictIfNeeded();
+    }
+
+    public synchronized void updateStatus(UUID chatRoomId, Predicate<MessageView> match, MessageStatus status) {
+        RoomBuffer buffer = rooms.get(chatRoomId);
+        if (buffer == null) {
+            return;
+        }
+        buffer.messages.replaceAll(m -> match.test(m) && m.getStatus() != status ? m.withStatus(status) : m);
+    }
+
+    public synchronized void evict(UUID chatRoomId) {
+        RoomBuffer buffer = rooms.remove(chatRoomId);
+        if (buffer != null) {
+            usedBytes -= buffer.bytes;
+        }
+    }
+
+    public long clock() {
+        return System.nanoTime();
+    }
+
+    public synchronized int size() {
+        return rooms.size();
+    }
+
+    public synchronized long estimatedBytes() {
+        return usedBytes;
+    }
+
+    private void evictIfNeeded() {
+        Iterator<RoomBuffer> eldest = rooms.values().iterator();
+        while (usedBytes > maxBytes && eldest.hasNext()) {
+            usedBytes -= eldest.next().bytes;
+            eldest.remove();
+        }
+    }
+
+    private int slot(UUID chatRoomId) {
+        return chatRoomId.hashCode() & (lastWrite.length - 1);
+    }
+
+    private static long sizeOf(MessageView m) {
+        return MESSAGE_OVERHEAD_BYTES + m.storedBytes();
+    }
+
+    // Oldest first; writes almost always land at the end
+    private static class RoomBuffer {
+        private final ArrayList<MessageView> messages = new ArrayList<>();
+        private boolean olderExists;
+        private long bytes;
+
+        void add(MessageView m) {
+            messages.add(m);
+            bytes += sizeOf(m);
+        }
+
+        void insert(MessageView m) {
+            int i = messages.size();
+            while (i > 0 && isAfter(messages.get(i - 1), m)) {
+                i--;
+            }
+            if (i > 0 && messages.get(i - 1).getId().equals(m.getId())) {
+                bytes += sizeOf(m) - sizeOf(messages.get(i - 1));
+                messages.set(i - 1, m);
+                return;
+            }
+            messages.add(i, m);
+            bytes += sizeOf(m);
+        }
+
+        // Messages without a seq (from before sequences) count as none
+        long maxSeq() {
+            long max = 0;
+            for (MessageView m : messages) {
+                if (m.getSeq() != null) {
+                    max = Math.max(max, m.getSeq());
+                }
+            }
+            return max;
+        }
+
+        void removeOldest() {
+            bytes -= sizeOf(messages.remove(0));
+        }
+
+        private static boolean isAfter(MessageView a, MessageView b) {
+            int byTime = a.getTimestamp().compareTo(b.getTimestamp());
+            // Ties go by id the way MySQL orders BINARY(16), not by UUID's signed compareTo
+            return byTime > 0 || (byTime == 0 && TimeOrderedUuidGenerator.BINARY_ORDER.compare(a.getId(), b.getId()) > 0);
+        }
+    }
+}
@@ -0,0 +1,474 @@
+package com.example.chat.service;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+
+/**
+ * One slice of the message search index. Terms are keyed per chat room, so a query only
+ * ever touches the dictionaries and postings of the rooms the caller belongs to.
+ * Postings are (doc, term frequency) pairs in ascending doc order, doc being the
+ * position of the message in this segment.
+ */
+abstract class SearchSegment {
+
+    abstract int docCount();
+
+    abstract UUID messageId(int doc);
+
+    abstract long timestampMicros(int doc);
+
+    abstract int length(int doc);
+
+    abstract Collection<UUID> rooms();
+
+    /** Documents and summed token count of a room, for BM25; null when the room has no messages here. */
+    abstract long[] roomStats(UUID chatRoomId);
+
+    /** Terms of a room in unsigned UTF-8 byte order. */
+    abstract List<byte[]> terms(UUID chatRoomId);
+
+    /** Number of documents of the room containing the term, 0 when absent. */
+    abstract int docFrequency(UUID chatRoomId, byte[] term);
+
+    /** {docs, freqs}, or null when absent. */
+    abstract int[][] postings(UUID chatRoomId, byte[] term);
+
+    static int compareBytes(byte[] a, byte[] b) {
+        return Arrays.compareUnsigned(a, b);
+    }
+
+    /** Mutable in-memory segment that new messages go into until it is flushed. */
+    static class Memory extends SearchSegment {
+
+        private final List<UUID> ids = new ArrayList<>();
+        private long[] timestamps = new long[256];
+        private int[] lengths = new int[256];
+        private final Map<UUID, Room> rooms = new HashMap<>();
+
+        synchronized void add(UUID messageId, UUID chatRoomId, long timestampMicros, List<String> tokens) {
+            int doc = ids.size();
+            ids.add(messageId);
+            if (doc == timestamps.length) {
+                timestamps = Arrays.copyOf(timestamps, doc * 2);
+                lengths = Arrays.copyOf(lengths, doc * 2);
+            }
+            timestamps[doc] = timestampMicros;
+            lengths[doc] = tokens.size();
+
+            Room room = rooms.computeIfAbsent(chatRoomId, id -> new Room());
+            room.docs++;
+            room.tokens += tokens.size();
+            Map<String, Integer> counts = new HashMap<>();
+            for (String token : tokens) {
+                counts.merge(token, 1, Integer::sum);
+            }
+            counts.forEach((term, tf) -> room.terms.computeIfAbsent(term, t -> new Postings()).add(doc, tf));
+        }
+
+        @Override
+        synchronized int docCount() {
+            return ids.size();
+        }
+
+        @Override
+        synchronized UUID messageId(int doc) {
+            return ids.get(doc);
+        }
+
+        @Override
+        synchronized long timestampMicros(int doc) {
+            return timestamps[doc];
+        }
+
+        @Override
+        synchronized int length(int doc) {
+            return lengths[doc];
+        }
+
+        @Override
+        synchronized Collection<UUID> rooms() {
+            return new ArrayList<>(rooms.keySet());
+        }
+
+        @Override
+        synchronized long[] roomStats(UUID chatRoomId) {
+            Room room = rooms.get(chatRoomId);
+            return room == null ? null : new long[]{room.docs, room.tokens};
+        }
+
+        @Override
+        synchronized List<byte[]> terms(UUID chatRoomId) {
+            Room room = rooms.get(chatRoomId);
+            if (room == null) {
+                return List.of();
+            }
+            List<byte[]> terms = new ArrayList<>(room.terms.size());
+            for (String term : room.terms.keySet()) {
+                terms.add(term.getBytes(StandardCharsets.UTF_8));
+            }
+            terms.sort(SearchSegment::compareBytes);
+            return terms;
+        }
+
+        @Override
+        synchronized int docFrequency(UUID chatRoomId, byte[] term) {
+            Postings postings = find(chatRoomId, term);
+            return postings == null ? 0 : postings.size;
+        }
+
+        @Override
+        synchronized int[][] postings(UUID chatRoomId, byte[] term) {
+            Postings postings = find(chatRoomId, term);
+            return postings == null ? null
+                    : new int[][]{Arrays.copyOf(postings.docs, postings.size), Arrays.copyOf(postings.freqs, postings.size)};
+        }
+
+        private Postings find(UUID chatRoomId, byte[] term) {
+            Room room = rooms.get(chatRoomId);
+            return room == null ? null : room.terms.get(new String(term, StandardCharsets.UTF_8));
+        }
+
+        private static class Room {
+            int docs;
+            long tokens;
+            final Map<String, Postings> terms = new HashMap<>();
+        }
+
+        private static class Postings {
+            int[] docs = new int[4];
+            int[] freqs = new int[4];
+            int size;
+
+            void add(int doc, int freq) {
+                if (size == docs.length) {
+                    docs = Arrays.copyOf(docs, size * 2);
+                    freqs = Arrays.copyOf(freqs, size * 2);
+                }
+                docs[size] = doc;
+                freqs[size] = freq;
+                size++;
+            }
+        }
+    }
+
+    /**
+     * Immutable segment file, memory-mapped; only the room table lives on the heap.
+     * Layout: header, postings (varint doc deltas and freqs), docs (id, timestamp, length),
+     * rooms (id, docs, tokens, first term, term count), terms (string offset and length,
+     * postings offset, doc frequency), term strings.
+     */
+    static class Disk extends SearchSegment {
+
+        private static final int MAGIC = 0x43535831; // "CSX1"
+        private static final int HEADER_BYTES = 4 * 5 + 8 * 5;
+        private static final int DOC_BYTES = 28;
+        private static final int ROOM_BYTES = 36;
+        private static final int TERM_BYTES = 20;
+
+        private final Path file;
+        private final MappedByteBuffer buffer;
+        private final int docCount;
+        private final long docsOffset;
+        private final long termsOffset;
+        private final long stringsOffset;
+        private final Map<UUID, Integer> roomIndex = new HashMap<>();
+        private final long roomsOffset;
+
+        Disk(Path file) throws IOException {
+            this.file = file;
+            try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+                // One mapping, addressed with int offsets
+                if (channel.size() > Integer.MAX_VALUE) {
+                    throw new IOException("Search segment over 2 GB: " + file);
+                }
+                this.buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            }
+            if (buffer.getInt(0) != MAGIC) {
+                throw new IOException("Not a search segment: " + file);
+            }
+            this.docCount = buffer.getInt(8);
+            int roomCount = buffer.getInt(12);
+            this.docsOffset = buffer.getLong(28);
+            this.roomsOffset = buffer.getLong(36);
+            this.termsOffset = buffer.getLong(44);
+            this.stringsOffset = buffer.getLong(52);
+            for (int i = 0; i < roomCount; i++) {
+                int at = (int) (roomsOffset + (long) i * ROOM_BYTES);
+                roomIndex.put(new UUID(buffer.getLong(at), buffer.getLong(at + 8)), i);
+            }
+        }
+
+        Path file() {
+            return file;
+        }
+
+        long sizeBytes() {
+            return buffer.capacity();
+        }
+
+        @Override
+        int docCount() {
+            return docCount;
+        }
+
+        @Override
+        UUID messageId(int doc) {
+            int at = (int) (docsOffset + (long) doc * DOC_BYTES);
+            return new UUID(buffer.getLong(at), buffer.getLong(at + 8));
+        }
+
+        @Override
+        long timestampMicros(int doc) {
+            return buffer.getLong((int) (docsOffset + (long) doc * DOC_BYTES + 16));
+        }
+
+        @Override
+        int length(int doc) {
+            return buffer.getInt((int) (docsOffset + (long) doc * DOC_BYTES + 24));
+        }
+
+        @Override
+        Collection<UUID> rooms() {
+            return roomIndex.keySet();
+        }
+
+        @Override
+        long[] roomStats(UUID chatRoomId) {
+            Integer room = roomIndex.get(chatRoomId);
+            if (room == null) {
+                return null;
+            }
+            int at = roomAt(room);
+            return new long[]{buffer.getInt(at + 16), buffer.getLong(at + 20)};
+        }
+
+        @Override
+        List<byte[]> terms(UUID chatRoomId) {
+            Integer room = roomIndex.get(chatRoomId);
+            if (room == null) {
+                return List.of();
+            }
+            int at = roomAt(room);
+            int first = buffer.getInt(at + 28);
+            int count = buffer.getInt(at + 32);
+            List<byte[]> terms = new ArrayList<>(count);
+            for (int i = first; i < first + count; i++) {
+                terms.add(termBytes(i));
+            }
+            return terms;
+        }
+
+        @Override
+        int docFrequency(UUID chatRoomId, byte[] term) {
+            int index = find(chatRoomId, term);
+            return index < 0 ? 0 : buffer.getInt(termAt(index) + 16);
+        }
+
+        @Override
+        int[][] postings(UUID chatRoomId, byte[] term) {
+            int index = find(chatRoomId, term);
+            if (index < 0) {
+                return null;
+            }
+            int at = termAt(index);
+            int position = (int) buffer.getLong(at + 8);
+            int count = buffer.getInt(at + 16);
+            int[] docs = new int[count];
+            int[] freqs = new int[count];
+            int doc = 0;
+            for (int i = 0; i < count; i++) {
+                int value = 0;
+                int shift = 0;
+                byte b;
+                do {
+                    b = buffer.get(position++);
+                    value |= (b & 0x7F) << shift;
+                    shift += 7;
+                } while (b < 0);
+                doc += value;
+                docs[i] = doc;
+                int freq = 0;
+                shift = 0;
+                do {
+                    b = buffer.get(position++);
+                    freq |= (b & 0x7F) << shift;
+                    shift += 7;
+                } while (b < 0);
+                freqs[i] = freq;
+            }
+            return new int[][]{docs, freqs};
+        }
+
+        // Binary search over the room's slice of the term table
+        private int find(UUID chatRoomId, byte[] term) {
+            Integer room = roomIndex.get(chatRoomId);
+            if (room == null) {
+                return -1;
+            }
+            int at = roomAt(room);
+            int low = buffer.getInt(at + 28);
+            int high = low + buffer.getInt(at + 32) - 1;
+            while (low <= high) {
+                int mid = (low + high) >>> 1;
+                int cmp = compareTerm(mid, term);
+                if (cmp < 0) {
+                    low = mid + 1;
+                } else if (cmp > 0) {
+                    high = mid - 1;
+                } else {
+                    return mid;
+                }
+            }
+            return -1;
+        }
+
+        private int compareTerm(int index, byte[] term) {
+            int at = termAt(index);
+            int offset = (int) (stringsOffset + buffer.getInt(at));
+            int length = buffer.getInt(at + 4);
+            int n = Math.min(length, term.length);
+            for (int i = 0; i < n; i++) {
+                int cmp = Integer.compare(buffer.get(offset + i) & 0xFF, term[i] & 0xFF);
+                if (cmp != 0) {
+                    return cmp;
+                }
+            }
+            return Integer.compare(length, term.length);
+        }
+
+        private byte[] termBytes(int index) {
+            int at = termAt(index);
+            byte[] bytes = new byte[buffer.getInt(at + 4)];
+            buffer.get((int) (stringsOffset + buffer.getInt(at)), bytes);
+            return bytes;
+        }
+
+        private int roomAt(int room) {
+            return (int) (roomsOffset + (long) room * ROOM_BYTES);
+        }
+
+        private int termAt(int index) {
+            return (int) (termsOffset + (long) index * TERM_BYTES);
+        }
+
+        /**
+         * Writes the union of {@code sources} as one segment: a flush when given the memory
+         * segment, a merge when given several disk segments. Docs keep their relative order.
+         */
+        static void write(Path file, List<? extends SearchSegment> sources) throws IOException {
+            int[] base = new int[sources.size()];
+            int docCount = 0;
+            for (int s = 0; s < sources.size(); s++) {
+                base[s] = docCount;
+                docCount += sources.get(s).docCount();
+            }
+            SortedSet<UUID> rooms = new TreeSet<>();
+            sources.forEach(source -> rooms.addAll(source.rooms()));
+
+            ByteArrayOutputStream roomTable = new ByteArrayOutputStream();
+            ByteArrayOutputStream termTable = new ByteArrayOutputStream();
+            ByteArrayOutputStream strings = new ByteArrayOutputStream();
+            DataOutputStream roomOut = new DataOutputStream(roomTable);
+            DataOutputStream termOut = new DataOutputStream(termTable);
+            int termCount = 0;
+
+            try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING,
+                    StandardOpenOption.WRITE)) {
+                OutputStream postings = new BufferedOutputStream(java.nio.channels.Channels.newOutputStream(
+                        channel.position(HEADER_BYTES)), 1 << 16);
+                long position = HEADER_BYTES;
+
+                for (UUID room : rooms) {
+                    long roomDocs = 0;
+                    long roomTokens = 0;
+                    SortedSet<byte[]> terms = new TreeSet<>(SearchSegment::compareBytes);
+                    for (SearchSegment source : sources) {
+                        long[] stats = source.roomStats(room);
+                        if (stats != null) {
+                            roomDocs += stats[0];
+                            roomTokens += stats[1];
+                            terms.addAll(source.terms(room));
+                        }
+                    }
+                    roomOut.writeLong(room.getMostSignificantBits());
+                    roomOut.writeLong(room.getLeastSignificantBits());
+                    roomOut.writeInt((int) roomDocs);
+                    roomOut.writeLong(roomTokens);
+                    roomOut.writeInt(termCount);
+                    roomOut.writeInt(terms.size());
+
+                    for (byte[] term : terms) {
+                        long start = position;
+                        int count = 0;
+                        int previous = 0;
+                        for (int s = 0; s < sources.size(); s++) {
+                            int[][] list = sources.get(s).postings(room, term);
+                            if (list == null) {
+                                continue;
+                            }
+                            for (int i = 0; i < list[0].length; i++) {
+                                int doc = base[s] + list[0][i];
+                                position += writeVarint(postings, doc - previous);
+                                position += writeVarint(postings, list[1][i]);
+                                previous = doc;
+                                count++;
+                            }
+                        }
+                        termOut.writeInt(strings.size());
+                        termOut.writeInt(term.length);
+                        termOut.writeLong(start);
+                        termOut.writeInt(count);
+                        strings.write(term);
+                        termCount++;
+                    }
+                }
+                postings.flush();
+
+                long docsOffset = position;
+                DataOutputStream tail = new DataOutputStream(new BufferedOutputStream(
+                        java.nio.channels.Channels.newOutputStream(channel.position(docsOffset)), 1 << 16));
+                for (SearchSegment source : sources) {
+                    for (int doc = 0; doc < source.docCount(); doc++) {
+                        UUID id = source.messageId(doc);
+                        tail.writeLong(id.getMostSignificantBits());
+                        tail.writeLong(id.getLeastSignificantBits());
+                        tail.writeLong(source.timestampMicros(doc));
+                        tail.writeInt(source.length(doc));
+                    }
+                }
+                long roomsOffset = docsOffset + (long) docCount * DOC_BYTES;
+                long termsOffset = roomsOffset + roomTable.size();
+                long stringsOffset = termsOffset + termTable.size();
+                roomTable.writeTo(tail);
+                termTable.writeTo(tail);
+                strings.writeTo(tail);
+                tail.flush();
+
+                ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES);
+                header.putInt(MAGIC).putInt(1).putInt(docCount).putInt(rooms.size()).putInt(termCount)
+                        .putLong(HEADER_BYTES).putLong(docsOffset).putLong(roomsOffset).putLong(termsOffset).putLong(stringsOffset)
+                        .flip();
+                channel.write(header, 0);
+                channel.force(true);
+            }
+        }
+
+        private static int writeVarint(OutputStream out, int value) throws IOException {
+            int bytes = 1;
+            while ((value & ~0x7F) != 0) {
+                out.write((value & 0x7F) | 0x80);
+                value >>>= 7;
+                bytes++;
+            }
+            out.write(value);
+            return bytes;
+        }
+    }
+}
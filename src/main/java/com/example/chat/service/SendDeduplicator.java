@@ -0,0 +1,172 @@
+package com.example.chat.service;
+
+import com.example.chat.dto.ChatMessageDto;
+import com.example.chat.dto.MessageView;
+import com.example.chat.dto.SendAckDto;
+import com.example.chat.dto.UserIdentity;
+import com.example.chat.entity.MessageClientId;
+import com.example.chat.repository.MessageClientIdRepository;
+import com.example.chat.repository.MessageRepository;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.time.LocalDateTime;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * Remembers the last {@code chat.idempotency.ids-per-sender} client message ids of each
+ * sender for {@code chat.idempotency.ttl-ms}, so a retried send is answered from memory
+ * with the original message instead of being written and broadcast again.
+ *
+ * The window is per instance. Sends it has not seen (after a restart, or written by
+ * another instance) are caught by the message_client_ids primary key and answered
+ * by {@link #replayStored}.
+ */
+@Slf4j
+@Service
+public class SendDeduplicator {
+
+    private final MessageClientIdRepository messageClientIdRepository;
+    private final MessageRepository messageRepository;
+    private final ChatService chatService;
+    private final int idsPerSender;
+    private final long ttlNanos;
+    private final long keyRetentionHours;
+
+    private final Map<UUID, SenderWindow> senders = new ConcurrentHashMap<>();
+
+    public SendDeduplicator(MessageClientIdRepository messageClientIdRepository,
+                            MessageRepository messageRepository,
+                            ChatService chatService,
+                            @Value("${chat.idempotency.ids-per-sender:256}") int idsPerSender,
+                            @Value("${chat.idempotency.ttl-ms:600000}") long ttlMs,
+                            @Value("${chat.idempotency.key-retention-hours:72}") long keyRetentionHours) {
+        this.messageClientIdRepository = messageClientIdRepository;
+        this.messageRepository = messageRepository;
+        this.chatService = chatService;
+        this.idsPerSender = idsPerSender;
+        this.ttlNanos = ttlMs * 1_000_000;
+        this.keyRetentionHours = keyRetentionHours;
+    }
+
+    /**
+     * Re-sends the original message's ack, marked duplicate, when this send was stored
+     * within the window. Costs no database access.
+     */
+    public boolean replay(UUID senderId, UUID clientMessageId) {
+        SenderWindow window = senders.get(senderId);
+        SendAckDto stored = window == null ? null : window.get(clientMessageId, System.nanoTime());
+        if (stored == null) {
+            return false;
+        }
+        log.debug("Duplicate send {} from {}", clientMessageId, window.username);
+        chatService.acknowledge(window.username, duplicateOf(stored));
+        return true;
+    }
+
+    /** Acks a freshly stored send and remembers it for later retries. */
+    public void acknowledge(UUID senderId, String username, SendAckDto ack) {
+        senders.computeIfAbsent(senderId, id -> new SenderWindow(username, idsPerSender))
+                .put(ack.getClientMessageId(), ack, System.nanoTime() + ttlNanos);
+        chatService.acknowledge(username, ack);
+    }
+
+    /**
+     * Replays the sends among {@code messages} that are already stored, for when the
+     * message_client_ids key rejected a write. Two queries: the keys, then the original
+     * messages. Returns the client message ids that were replayed.
+     */
+    public Set<UUID> replayStored(Collection<ChatMessageDto> messages, Map<UUID, UserIdentity> users) {
+        Map<UUID, UUID> senderByClientId = new HashMap<>();
+        for (ChatMessageDto dto : messages) {
+            if (dto.getClientMessageId() != null) {
+                senderByClientId.put(dto.getClientMessageId(), dto.getFrom());
+            }
+        }
+        if (senderByClientId.isEmpty()) {
+            return Set.of();
+        }
+
+        Map<UUID, UUID> messageIdByClientId = new HashMap<>();
+        for (MessageClientId key : messageClientIdRepository.findByClientMessageIdIn(senderByClientId.keySet())) {
+            if (key.getSenderId().equals(senderByClientId.get(key.getClientMessageId()))) {
+                messageIdByClientId.put(key.getClientMessageId(), key.getMessageId());
+            }
+        }
+        if (messageIdByClientId.isEmpty()) {
+            return Set.of();
+        }
+
+        Map<UUID, MessageView> originals = messageRepository.findViewsByIds(messageIdByClientId.values()).stream()
+                .collect(Collectors.toMap(MessageView::getId, Function.identity()));
+        Set<UUID> replayed = new HashSet<>();
+        messageIdByClientId.forEach((clientMessageId, messageId) -> {
+            MessageView original = originals.get(messageId);
+            UserIdentity sender = original == null ? null : users.get(original.getSenderId());
+            if (sender != null) {
+                acknowledge(sender.getId(), sender.getUsername(), new SendAckDto(clientMessageId, original.getId(),
+                        original.getChatRoomId(), original.getSeq(), original.getTimestamp(), original.getStatus(), true));
+                replayed.add(clientMessageId);
+            }
+        });
+        return replayed;
+    }
+
+    // Keys only have to outlive client retries and Kafka redelivery, not the messages themselves
+    @Scheduled(cron = "${chat.idempotency.prune-cron:0 15 * * * *}")
+    public void prune() {
+        long now = System.nanoTime();
+        senders.values().removeIf(window -> window.expire(now));
+        int deleted = messageClientIdRepository.deleteOlderThan(LocalDateTime.now().minusHours(keyRetentionHours));
+        if (deleted > 0) {
+            log.info("Pruned {} message client ids older than {}h", deleted, keyRetentionHours);
+        }
+    }
+
+    private static SendAckDto duplicateOf(SendAckDto stored) {
+        return new SendAckDto(stored.getClientMessageId(), stored.getId(), stored.getChatRoomId(),
+                stored.getSeq(), stored.getTimestamp(), stored.getStatus(), true);
+    }
+
+    // Insertion-ordered, so the oldest id goes first once the window is full
+    private static class SenderWindow {
+        private final String username;
+        private final LinkedHashMap<UUID, Entry> entries;
+
+        SenderWindow(String username, int capacity) {
+            this.username = username;
+            this.entries = new LinkedHashMap<>(16, 0.75f, false) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<UUID, Entry> eldest) {
+                    return size() > capacity;
+                }
+            };
+        }
+
+        synchronized SendAckDto get(UUID clientMessageId, long now) {
+            Entry entry = entries.get(clientMessageId);
+            return entry == null || entry.expiresAt - now < 0 ? null : entry.ack;
+        }
+
+        synchronized void put(UUID clientMessageId, SendAckDto ack, long expiresAt) {
+            entries.put(clientMessageId, new Entry(ack, expiresAt));
+        }
+
+        // True once nothing is left, so the sender's window can be dropped
+        synchronized boolean expire(long now) {
+            entries.values().removeIf(entry -> entry.expiresAt - now < 0);
+            return entries.isEmpty();
+        }
+    }
+
+    @lombok.Value
+    private static class Entry {
+        SendAckDto ack;
+        long expiresAt;
+    }
+}
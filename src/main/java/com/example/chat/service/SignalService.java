@@ -0,0 +1,100 @@
+package com.example.chat.service;
+
+import com.example.chat.dto.SignalDto;
+import com.example.chat.dto.SignalType;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.event.EventListener;
+import org.springframework.messaging.simp.SimpMessagingTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.web.socket.messaging.SessionDisconnectEvent;
+
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Relays typing and viewing signals straight to /topic/signals/{chatRoomId}.
+ * Nothing is stored and nothing is looked up: a signal costs one broker frame,
+ * and each session is limited to one frame per room and signal type per interval.
+ */
+@Slf4j
+@Service
+public class SignalService {
+
+    private final SimpMessagingTemplate messagingTemplate;
+    private final long minIntervalNanos;
+
+    // sessionId -> (chatRoomId, type) -> nanoTime of the last relayed signal
+    private final Map<String, Map<SignalKey, Long>> sessions = new ConcurrentHashMap<>();
+
+    public SignalService(SimpMessagingTemplate messagingTemplate,
+                         @Value("${chat.signals.min-interval-ms:500}") long minIntervalMs) {
+        this.messagingTemplate = messagingTemplate;
+        this.minIntervalNanos = minIntervalMs * 1_000_000;
+    }
+
+    /**
+     * Returns false when the signal was dropped. Stops are not time-throttled: one is
+     * relayed for every relayed TYPING, so an indicator never gets stuck on.
+     */
+    public boolean relay(String sessionId, String username, SignalDto signal) {
+        if (signal.getChatRoomId() == null || signal.getType() == null) {
+            throw new RuntimeException("chatRoomId and type are required");
+        }
+
+        long now = System.nanoTime();
+        Map<SignalKey, Long> lastSent = sessions.computeIfAbsent(sessionId, id -> new ConcurrentHashMap<>());
+        SignalKey key = new SignalKey(signal.getChatRoomId(), signal.getType());
+        if (signal.getType() == SignalType.STOPPED_TYPING) {
+            if (!isTyping(lastSent, signal.getChatRoomId())) {
+                return false;
+            }
+        } else {
+            Long previous = lastSent.get(key);
+            if (previous != null && now - previous < minIntervalNanos) {
+                return false;
+            }
+        }
+        lastSent.put(key, now);
+
+        signal.setFrom(username);
+        messagingTemplate.convertAndSend("/topic/signals/" + signal.getChatRoomId(), signal);
+        return true;
+    }
+
+    // A dropped connection clears the other side's typing indicator and forgets the session
+    @EventListener
+    public void onDisconnect(SessionDisconnectEvent event) {
+        Map<SignalKey, Long> lastSent = sessions.remove(event.getSessionId());
+        if (lastSent == null) {
+            return;
+        }
+        if (event.getUser() == null) {
+            return;
+        }
+        String username = event.getUser().getName();
+        lastSent.keySet().stream()
+                .filter(key -> key.getType() == SignalType.TYPING && isTyping(lastSent, key.getChatRoomId()))
+                .forEach(key -> {
+                    SignalDto stopped = new SignalDto();
+                    stopped.setChatRoomId(key.getChatRoomId());
+                    stopped.setType(SignalType.STOPPED_TYPING);
+                    stopped.setFrom(username);
+                    messagingTemplate.convertAndSend("/topic/signals/" + key.getChatRoomId(), stopped);
+                });
+    }
+
+    // A TYPING has been relayed in this room with no STOPPED_TYPING after it
+    private static boolean isTyping(Map<SignalKey, Long> lastSent, UUID chatRoomId) {
+        Long typing = lastSent.get(new SignalKey(chatRoomId, SignalType.TYPING));
+        Long stopped = lastSent.get(new SignalKey(chatRoomId, SignalType.STOPPED_TYPING));
+        return typing != null && (stopped == null || stopped < typing);
+    }
+
+    @lombok.Value
+    private static class SignalKey {
+        UUID chatRoomId;
+        SignalType type;
+    }
+}
@@ -0,0 +1,15 @@
+package com.example.chat.service;
+
+import lombok.Value;
+
+import java.util.UUID;
+
+/**
+ * Published after a user row is inserted or updated. Either field may be null when
+ * only the other is known; UserIdentityCache drops whatever it holds under either.
+ */
+@Value
+public class UserChangedEvent {
+    UUID id;
+    String username;
+}
@@ -0,0 +1,543 @@
+package com.example.chat.service;
+
+import com.example.chat.dto.UserDirectoryDeltaDto;
+import com.example.chat.dto.UserDirectoryPageDto;
+import com.example.chat.dto.UserDto;
+import com.example.chat.dto.UserIdentity;
+import com.example.chat.entity.User;
+import com.example.chat.repository.UserRepository;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.SmartInitializingSingleton;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Sort;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.function.Supplier;
+
+/**
+ * Every user, held in sorted skip lists so /api/users can page through them and
+ * answer prefix searches on username, first name and last name without a table scan
+ * or a sort. Loaded once at startup, before the web server takes requests, and kept
+ * current by {@link UserChangedEvent}. With local invalidation an instance only hears about
+ * its own registrations, so it also rescans the newest users every
+ * {@code chat.directory.catch-up-interval-ms} for those made on other instances.
+ *
+ * Bots are kept out of the sorted listing and put at the top of the first page,
+ * DoctorAssistant first. A page resumes after the sort key its cursor names, so
+ * users added meanwhile never shift it.
+ *
+ * Every change bumps a version, handed out as "{epoch}.{n}". On its own the epoch is this
+ * instance's start time, so a version from another node or an earlier run is never
+ * mistaken for a current one. With Redis invalidation the epoch and counter live in Redis
+ * instead and every node applies the same changes under the same numbers, so a version
+ * (and the ETag made from it) means the same listing on any node. Pages are kept serialized
+ * until the next change, and the last {@code chat.directory.changelog-size} changes answer
+ * "what changed since".
+ */
+@Slf4j
+@Service
+public class UserDirectory implements SmartInitializingSingleton {
+
+    static final String ASSISTANT = "DoctorAssistant";
+    // Sorts below every printable char: "ann\0<id>" comes before "anna\0<id>"
+    private static final char SEP = '\0';
+    private static final int LOAD_BATCH = 1000;
+
+    private final UserRepository userRepository;
+    private final ObjectMapper objectMapper;
+    private final int defaultPageSize;
+    private final int maxPageSize;
+    private final int changelogSize;
+    private final int renderedPagesMax;
+    private final long catchUpWindowMs;
+
+    // Both written under the lock together with the indexes and the changelog
+    private volatile String epoch = Long.toString(System.currentTimeMillis(), 36);
+    private volatile long version;
+    // Current "{epoch}.{n}" in Redis when versions are shared, see useSharedVersions
+    private volatile Supplier<String> sharedVersion;
+    private boolean loaded;
+    // Shared changes that arrived during the load, applied once it is done
+    private final List<Runnable> pendingShared = new ArrayList<>();
+    // Newest created_at seen; the catch-up rescans from a window before it
+    private LocalDateTime newestCreated;
+    private final ArrayDeque<Change> changelog = new ArrayDeque<>();
+    // Serialized pages of the current version only; replaced wholesale when the version moves
+    private volatile RenderedPages rendered = new RenderedPages("");
+
+    // Lower-cased username + SEP + id: the unfiltered listing
+    private final ConcurrentSkipListMap<String, UserIdentity> byUsername = new ConcurrentSkipListMap<>();
+    // The same keys plus one per lower-cased first and last name: prefix search
+    private final ConcurrentSkipListMap<String, UserIdentity> byTerm = new ConcurrentSkipListMap<>();
+    // DoctorAssistant, then the other bots by username
+    private final ConcurrentSkipListMap<String, UserIdentity> bots = new ConcurrentSkipListMap<>();
+    private final Map<UUID, UserIdentity> byId = new ConcurrentHashMap<>();
+
+    public UserDirectory(UserRepository userRepository,
+                         ObjectMapper objectMapper,
+                         @Value("${chat.directory.page-size:50}") int defaultPageSize,
+                         @Value("${chat.directory.max-page-size:200}") int maxPageSize,
+                         @Value("${chat.directory.changelog-size:10000}") int changelogSize,
+                         @Value("${chat.directory.rendered-pages:256}") int renderedPagesMax,
+                         @Value("${chat.directory.catch-up-window-ms:60000}") long catchUpWindowMs) {
+        this.userRepository = userRepository;
+        this.objectMapper = objectMapper;
+        this.defaultPageSize = defaultPageSize;
+        this.maxPageSize = maxPageSize;
+        this.changelogSize = changelogSize;
+        this.renderedPagesMax = renderedPagesMax;
+        this.catchUpWindowMs = catchUpWindowMs;
+    }
+
+    /**
+     * Hands versioning over to the relay: from now on local events are left alone and
+     * changes arrive through {@link #onSharedChange} in the order Redis numbered them.
+     * Must be called before {@link #load}.
+     */
+    public void useSharedVersions(Supplier<String> current) {
+        this.sharedVersion = current;
+    }
+
+    // Runs before the web server starts, so /api/users never serves (and tags) a partial directory
+    @Override
+    public void afterSingletonsInstantiated() {
+        load();
+    }
+
+    public void load() {
+        // Read before the users, so a change committed meanwhile is numbered after it and replayed
+        String shared = null;
+        if (sharedVersion != null) {
+            try {
+                shared = sharedVersion.get();
+            } catch (RuntimeException e) {
+                // The first shared change finds the epoch different and reloads
+                log.warn("Failed to read the shared user directory version: {}", e.getMessage());
+            }
+        }
+        int count = loadUsers(null);
+        synchronized (this) {
+            if (shared == null) {
+                version++;
+            } else {
+                int dot = shared.lastIndexOf('.');
+                epoch = shared.substring(0, dot);
+                version = Long.parseLong(shared.substring(dot + 1));
+            }
+            loaded = true;
+            pendingShared.forEach(Runnable::run);
+            pendingShared.clear();
+        }
+        log.info("User directory loaded {} users", count);
+    }
+
+    @EventListener
+    public void onUserChanged(UserChangedEvent event) {
+        // The relay numbers it and hands it back through onSharedChange
+        if (sharedVersion != null) {
+            return;
+        }
+        Optional<User> user = find(event);
+        synchronized (this) {
+            if (user.isPresent()) {
+                UserIdentity identity = UserIdentity.of(user.get());
+                if (identity.equals(byId.get(identity.getId()))) {
+                    return;
+                }
+                put(identity);
+                record(identity.getId(), identity, version + 1);
+            } else if (event.getId() != null && byId.containsKey(event.getId())) {
+                remove(event.getId());
+                record(event.getId(), null, version + 1);
+            }
+        }
+    }
+
+    /**
+     * Picks up users registered on other instances, which local invalidation never hears of.
+     * The window before the newest user already seen covers registrations that committed
+     * late and clocks that differ between instances; users seen before are skipped.
+     */
+    @Scheduled(fixedDelayString = "${chat.directory.catch-up-interval-ms:30000}")
+    public void catchUp() {
+        LocalDateTime from;
+        synchronized (this) {
+            if (sharedVersion != null || !loaded) {
+                return;
+            }
+            from = newestCreated == null ? LocalDateTime.of(1970, 1, 1, 0, 0)
+                    : newestCreated.minusNanos(catchUpWindowMs * 1_000_000);
+        }
+        try {
+            int added = 0;
+            for (int page = 0; ; page++) {
+                List<User> batch = userRepository.findByCreatedAtGreaterThanEqual(from,
+                        PageRequest.of(page, LOAD_BATCH, Sort.by("createdAt", "id")));
+                synchronized (this) {
+                    for (User user : batch) {
+                        UserIdentity identity = UserIdentity.of(user);
+                        seenCreated(user);
+                        if (!identity.equals(byId.get(identity.getId()))) {
+                            put(identity);
+                            record(identity.getId(), identity, version + 1);
+                            added++;
+                        }
+                    }
+                }
+                if (batch.size() < LOAD_BATCH) {
+                    break;
+                }
+            }
+            if (added > 0) {
+                log.info("User directory caught up on {} users from other instances", added);
+            }
+        } catch (Exception e) {
+            log.error("User directory catch-up failed", e);
+        }
+    }
+
+    /**
+     * A change numbered {@code epoch.next} by Redis. Every node, the one it happened on
+     * included, applies it under that number even when it changes nothing here, so the
+     * versions stay equal everywhere. A number already seen is skipped; a skipped one
+     * (a message lost while disconnected) or a new epoch (Redis lost its counter) means
+     * the listing can no longer be trusted to match the number, so it is read again.
+     */
+    public void onSharedChange(UserChangedEvent event, String epoch, long next) {
+        Optional<User> user = find(event);
+        synchronized (this) {
+            if (!loaded) {
+                pendingShared.add(() -> onSharedChange(event, epoch, next));
+                return;
+            }
+            if (epoch.equals(this.epoch) && next <= version) {
+                return;
+            }
+            if (!epoch.equals(this.epoch) || next != version + 1) {
+                log.warn("User directory at {} got change {}.{}, reloading", version(), epoch, next);
+                resync(epoch, next);
+                return;
+            }
+            if (user.isPresent()) {
+                UserIdentity identity = UserIdentity.of(user.get());
+                put(identity);
+                record(identity.getId(), identity, next);
+            } else if (event.getId() != null) {
+                remove(event.getId());
+                record(event.getId(), null, next);
+            } else {
+                version = next;
+            }
+        }
+    }
+
+    public String version() {
+        return epoch + "." + version;
+    }
+
+    /**
+     * {@link #page} as JSON, serialized once per version. The version is read first,
+     * so a page racing a change is at least as new as the version it is labelled with.
+     */
+    public RenderedPage render(String query, String cursor, Integer limit) {
+        String current = version();
+        RenderedPages pages = rendered;
+        if (!pages.version.equals(current)) {
+            pages = new RenderedPages(current);
+            rendered = pages;
+        }
+        String key = normalize(query) + SEP + cursor + SEP + pageSize(limit);
+        byte[] body = pages.bodies.get(key);
+        if (body == null) {
+            body = toJson(page(query, cursor, limit));
+            if (pages.bodies.size() < renderedPagesMax) {
+                pages.bodies.putIfAbsent(key, body);
+            }
+        }
+        return new RenderedPage(current, body);
+    }
+
+    /**
+     * Users added, changed or removed after {@code since}, each once in its latest state.
+     * A version from another epoch, or older than the changelog reaches, comes back with
+     * {@code reset} set: the client has to page through /api/users again.
+     */
+    public synchronized UserDirectoryDeltaDto changesSince(String since) {
+        long sinceVersion = parseVersion(since);
+        long oldest = changelog.isEmpty() ? version : changelog.peekFirst().getVersion() - 1;
+        if (sinceVersion < 0 || sinceVersion < oldest || sinceVersion > version) {
+            return new UserDirectoryDeltaDto(version(), true, List.of(), List.of());
+        }
+        Map<UUID, UserIdentity> latest = new LinkedHashMap<>();
+        for (Change change : changelog) {
+            if (change.getVersion() > sinceVersion) {
+                latest.remove(change.getUserId());
+                latest.put(change.getUserId(), change.getUser());
+            }
+        }
+        List<UserDto> changed = new ArrayList<>();
+        List<UUID> removed = new ArrayList<>();
+        latest.forEach((id, user) -> {
+            if (user == null) {
+                removed.add(id);
+            } else {
+                changed.add(UserDto.from(user));
+            }
+        });
+        return new UserDirectoryDeltaDto(version(), false, changed, removed);
+    }
+
+    /**
+     * One page of users whose username, first name or last name starts with
+     * {@code query} (case-insensitive), or of everyone when it is blank.
+     * Throws IllegalArgumentException for a cursor this directory did not issue.
+     */
+    public UserDirectoryPageDto page(String query, String cursor, Integer limit) {
+        int pageSize = pageSize(limit);
+        String prefix = normalize(query);
+        String after = cursor == null ? null : decodeCursor(cursor);
+
+        // There are only a handful of bots, so they do not count towards the page size
+        List<UserDto> users = new ArrayList<>(pageSize);
+        if (after == null) {
+            for (UserIdentity bot : bots.values()) {
+                if (matches(bot, prefix)) {
+                    users.add(UserDto.from(bot));
+                }
+            }
+        }
+
+        ConcurrentSkipListMap<String, UserIdentity> index = prefix.isEmpty() ? byUsername : byTerm;
+        NavigableMap<String, UserIdentity> range = after == null
+                ? index.tailMap(prefix, true)
+                : index.tailMap(after, false);
+        String last = null;
+        int listed = 0;
+        boolean more = false;
+        for (Map.Entry<String, UserIdentity> entry : range.entrySet()) {
+            String key = entry.getKey();
+            if (!key.startsWith(prefix)) {
+                break;
+            }
+            UserIdentity user = entry.getValue();
+            // A user matching on several terms is listed at the first of them only
+            if (!prefix.isEmpty() && !key.equals(firstMatchingKey(user, prefix))) {
+                continue;
+            }
+            if (listed == pageSize) {
+                more = true;
+                break;
+            }
+            users.add(UserDto.from(user));
+            listed++;
+            last = key;
+        }
+        return new UserDirectoryPageDto(users, more ? encodeCursor(last) : null);
+    }
+
+    public int size() {
+        return byId.size();
+    }
+
+    private int pageSize(Integer limit) {
+        return limit == null ? defaultPageSize : Math.max(1, Math.min(limit, maxPageSize));
+    }
+
+    private static String normalize(String query) {
+        return query == null ? "" : query.trim().toLowerCase(Locale.ROOT);
+    }
+
+    private Optional<User> find(UserChangedEvent event) {
+        return event.getId() != null
+                ? userRepository.findById(event.getId())
+                : userRepository.findByUsername(event.getUsername());
+    }
+
+    // Keyset over the primary key, so every batch is one index range however many users there are
+    private int loadUsers(Set<UUID> seen) {
+        List<User> batch = userRepository.findAll(PageRequest.of(0, LOAD_BATCH, Sort.by("id"))).getContent();
+        int count = 0;
+        while (!batch.isEmpty()) {
+            synchronized (this) {
+                for (User user : batch) {
+                    put(UserIdentity.of(user));
+                    seenCreated(user);
+                    if (seen != null) {
+                        seen.add(user.getId());
+                    }
+                }
+            }
+            count += batch.size();
+            if (batch.size() < LOAD_BATCH) {
+                break;
+            }
+            batch = userRepository.findByIdGreaterThanOrderByIdAsc(batch.get(batch.size() - 1).getId(),
+                    PageRequest.of(0, LOAD_BATCH));
+        }
+        return count;
+    }
+
+    // Caller holds the lock
+    private void seenCreated(User user) {
+        if (user.getCreatedAt() != null && (newestCreated == null || user.getCreatedAt().isAfter(newestCreated))) {
+            newestCreated = user.getCreatedAt();
+        }
+    }
+
+    // Caller holds the lock. The changelog cannot bridge the gap, so deltas across it reset.
+    private void resync(String epoch, long next) {
+        Set<UUID> seen = new HashSet<>();
+        loadUsers(seen);
+        for (UUID id : new ArrayList<>(byId.keySet())) {
+            if (!seen.contains(id)) {
+                remove(id);
+            }
+        }
+        changelog.clear();
+        this.epoch = epoch;
+        version = next;
+    }
+
+    // Caller holds the lock
+    private void record(UUID userId, UserIdentity user, long next) {
+        version = next;
+        changelog.addLast(new Change(version, userId, user));
+        if (changelog.size() > changelogSize) {
+            changelog.removeFirst();
+        }
+    }
+
+    // "{epoch}.{n}" of the current epoch, or -1 for anything else
+    private long parseVersion(String token) {
+        if (token == null || !token.startsWith(epoch + ".")) {
+            return -1;
+        }
+        try {
+            return Long.parseLong(token.substring(epoch.length() + 1));
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    private byte[] toJson(UserDirectoryPageDto page) {
+        try {
+            return objectMapper.writeValueAsBytes(page);
+        } catch (JsonProcessingException e) {
+            throw new RuntimeException("Failed to serialize user directory page", e);
+        }
+    }
+
+    private void put(UserIdentity user) {
+        UserIdentity previous = byId.put(user.getId(), user);
+        if (previous != null) {
+            unindex(previous);
+        }
+        if (user.isBot()) {
+            bots.put(botKey(user), user);
+            return;
+        }
+        byUsername.put(key(user.getUsername(), user), user);
+        for (String term : terms(user)) {
+            byTerm.put(key(term, user), user);
+        }
+    }
+
+    private void remove(UUID id) {
+        UserIdentity previous = byId.remove(id);
+        if (previous != null) {
+            unindex(previous);
+        }
+    }
+
+    private void unindex(UserIdentity user) {
+        bots.remove(botKey(user));
+        byUsername.remove(key(user.getUsername(), user));
+        for (String term : terms(user)) {
+            byTerm.remove(key(term, user));
+        }
+    }
+
+    private static boolean matches(UserIdentity user, String prefix) {
+        return prefix.isEmpty() || firstMatchingKey(user, prefix) != null;
+    }
+
+    // Smallest of the user's index keys under the prefix; where a multi-term match is listed
+    private static String firstMatchingKey(UserIdentity user, String prefix) {
+        String first = null;
+        for (String term : terms(user)) {
+            String key = key(term, user);
+            if (term.startsWith(prefix) && (first == null || key.compareTo(first) < 0)) {
+                first = key;
+            }
+        }
+        return first;
+    }
+
+    private static List<String> terms(UserIdentity user) {
+        List<String> terms = new ArrayList<>(3);
+        terms.add(user.getUsername().toLowerCase(Locale.ROOT));
+        if (user.getFirstName() != null && !user.getFirstName().isBlank()) {
+            terms.add(user.getFirstName().trim().toLowerCase(Locale.ROOT));
+        }
+        if (user.getLastName() != null && !user.getLastName().isBlank()) {
+            terms.add(user.getLastName().trim().toLowerCase(Locale.ROOT));
+        }
+        return terms;
+    }
+
+    private static String key(String term, UserIdentity user) {
+        return term.toLowerCase(Locale.ROOT) + SEP + user.getId();
+    }
+
+    private static String botKey(UserIdentity bot) {
+        return (ASSISTANT.equals(bot.getUsername()) ? "0" : "1") + bot.getUsername() + SEP + bot.getId();
+    }
+
+    private static String encodeCursor(String key) {
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(key.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static String decodeCursor(String cursor) {
+        try {
+            String key = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8);
+            UUID.fromString(key.substring(key.lastIndexOf(SEP) + 1));
+            return key;
+        } catch (RuntimeException e) {
+            throw new IllegalArgumentException("Invalid cursor: " + cursor);
+        }
+    }
+
+    @Getter
+    @RequiredArgsConstructor
+    public static class RenderedPage {
+        private final String version;
+        private final byte[] body;
+    }
+
+    @Getter
+    @RequiredArgsConstructor
+    private static class Change {
+        private final long version;
+        private final UUID userId;
+        // null when the user was removed
+        private final UserIdentity user;
+    }
+
+    @RequiredArgsConstructor
+    private static class RenderedPages {
+        private final String version;
+        private final Map<String, byte[]> bodies = new ConcurrentHashMap<>();
+    }
+}
@@ -0,0 +1,173 @@
+package com.example.chat.service;
+
+import com.example.chat.dto.UserIdentity;
+import com.example.chat.entity.User;
+import com.example.chat.repository.UserRepository;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Service;
+
+import java.util.*;
+
+/**
+ * Users as the message pipeline sees them, so a send does not look its sender and
+ * receiver up again at every step. Holds up to {@code chat.user-cache.max-entries}
+ * snapshots, reachable by id and by username, evicted least-recently-used first.
+ * Misses are not cached: a username registered a moment later is found straight away.
+ *
+ * Entries are dropped on {@link UserChangedEvent}. With
+ * {@code chat.user-cache.invalidation=redis} the event is also relayed to the other
+ * nodes, see UserCacheRedisInvalidation.
+ */
+@Service
+public class UserIdentityCache {
+
+    private final UserRepository userRepository;
+    private final int maxEntries;
+
+    // Access-ordered; the username index only ever points at ids present here
+    private final LinkedHashMap<UUID, UserIdentity> byId;
+    private final Map<String, UUID> idByUsername = new HashMap<>();
+    // Bumped by every invalidation; a load that started before one must not be cached
+    private long generation;
+
+    private final MeterRegistry meterRegistry;
+    private final Counter hits;
+    private final Counter misses;
+
+    public UserIdentityCache(UserRepository userRepository,
+                             MeterRegistry meterRegistry,
+                             @Value("${chat.user-cache.max-entries:100000}") int maxEntries) {
+        this.userRepository = userRepository;
+        this.maxEntries = maxEntries;
+        this.byId = new LinkedHashMap<>(256, 0.75f, true);
+        this.meterRegistry = meterRegistry;
+
+        this.hits = Counter.builder("chat.user-cache.requests").tag("result", "hit").register(meterRegistry);
+        this.misses = Counter.builder("chat.user-cache.requests").tag("result", "miss").register(meterRegistry);
+    }
+
+    // The gauge reads this cache, so it is registered once it is fully constructed
+    @PostConstruct
+    void registerGauges() {
+        Gauge.builder("chat.user-cache.size", this, UserIdentityCache::size).register(meterRegistry);
+    }
+
+    public Optional<UserIdentity> byId(UUID id) {
+        UserIdentity cached = cached(id);
+        if (cached != null) {
+            return Optional.of(cached);
+        }
+        long started = generation();
+        return userRepository.findById(id).map(u -> put(UserIdentity.of(u), started));
+    }
+
+    public Optional<UserIdentity> byUsername(String username) {
+        UserIdentity cached;
+        synchronized (this) {
+            UUID id = idByUsername.get(username);
+            cached = id == null ? null : byId.get(id);
+        }
+        if (cached != null) {
+            hits.increment();
+            return Optional.of(cached);
+        }
+        misses.increment();
+        long started = generation();
+        return userRepository.findByUsername(username).map(u -> put(UserIdentity.of(u), started));
+    }
+
+    /**
+     * Every id that exists, keyed by id; whatever is not cached is loaded with one IN query.
+     */
+    public Map<UUID, UserIdentity> byIds(Collection<UUID> ids) {
+        Map<UUID, UserIdentity> found = new HashMap<>(ids.size() * 2);
+        List<UUID> missing = new ArrayList<>();
+        for (UUID id : ids) {
+            UserIdentity cached = cached(id);
+            if (cached != null) {
+                found.put(id, cached);
+            } else {
+                missing.add(id);
+            }
+        }
+        if (!missing.isEmpty()) {
+            long started = generation();
+            for (User u : userRepository.findAllById(missing)) {
+                found.put(u.getId(), put(UserIdentity.of(u), started));
+            }
+        }
+        return found;
+    }
+
+    /**
+     * Uninitialized proxy for a message's sender or receiver column; no SELECT is issued
+     * unless something other than the id is read from it.
+     */
+    public User reference(UUID id) {
+        return userRepository.getReferenceById(id);
+    }
+
+    @EventListener
+    public synchronized void invalidate(UserChangedEvent event) {
+        generation++;
+        if (event.getId() != null) {
+            remove(event.getId());
+        }
+        if (event.getUsername() != null) {
+            UUID id = idByUsername.get(event.getUsername());
+            if (id != null) {
+                remove(id);
+            }
+        }
+    }
+
+    public synchronized void clear() {
+        generation++;
+        byId.clear();
+        idByUsername.clear();
+    }
+
+    public synchronized int size() {
+        return byId.size();
+    }
+
+    private UserIdentity cached(UUID id) {
+        UserIdentity cached;
+        synchronized (this) {
+            cached = byId.get(id);
+        }
+        (cached != null ? hits : misses).increment();
+        return cached;
+    }
+
+    private synchronized long generation() {
+        return generation;
+    }
+
+    private synchronized UserIdentity put(UserIdentity user, long loadStarted) {
+        if (generation != loadStarted) {
+            return user;
+        }
+        UserIdentity previous = byId.put(user.getId(), user);
+        if (previous != null && !previous.getUsername().equals(user.getUsername())) {
+            idByUsername.remove(previous.getUsername());
+        }
+        idByUsername.put(user.getUsername(), user.getId());
+        if (byId.size() > maxEntries) {
+            remove(byId.keySet().iterator().next());
+        }
+        return user;
+    }
+
+    private void remove(UUID id) {
+        UserIdentity removed = byId.remove(id);
+        if (removed != null) {
+            idByUsername.remove(removed.getUsername(), id);
+        }
+    }
+}
@@ -1,27 +1,62 @@
 CREATE TABLE IF NOT EXISTS users (
-                                     id CHAR(36) PRIMARY KEY,
+                                     id BINARY(16) PRIMARY KEY,
     username VARCHAR(50) UNIQUE NOT NULL,
     password VARCHAR(255) NOT NULL,
     first_name VARCHAR(50),
     last_name VARCHAR(50),
-    created_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP
+    created_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP,
+    INDEX idx_users_created_at (created_at)
     );
 
+-- chat_rooms, messages and appointments use time-ordered (UUIDv7) ids, see TimeOrderedUuid
 CREATE TABLE IF NOT EXISTS chat_rooms (
-                                          id CHAR(36) PRIMARY KEY,
-    user1_id CHAR(36) NOT NULL,
-    user2_id CHAR(36) NOT NULL,
+                                          id BINARY(16) PRIMARY KEY,
+    user1_id BINARY(16) NOT NULL,
+    user2_id BINARY(16) NOT NULL,
+    last_seq BIGINT NOT NULL DEFAULT 0,
     created_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP,
     UNIQUE(user1_id, user2_id)
     );
 
 CREATE TABLE IF NOT EXISTS messages (
-                                        id CHAR(36) PRIMARY KEY,
-    chat_room_id CHAR(36) NOT NULL,
-    sender_id CHAR(36) NOT NULL,
-    receiver_id CHAR(36) NOT NULL,
-    content TEXT NOT NULL,
+                                        id BINARY(16) PRIMARY KEY,
+    chat_room_id BINARY(16) NOT NULL,
+    seq BIGINT,
+    sender_id BINARY(16) NOT NULL,
+    receiver_id BINARY(16) NOT NULL,
+    -- Exactly one of content / content_compressed is set, see MessageBodyCodec
+    content TEXT,
+    content_compressed BLOB,
     timestamp TIMESTAMP DEFAULT CURRENT_TIMESTAMP,
     status VARCHAR(20),
-    message_type VARCHAR(20)
+    message_type VARCHAR(20),
+    -- Keyset pagination of a room's history: WHERE chat_room_id = ? AND (timestamp, id) < (?, ?)
+    INDEX idx_messages_room_ts_id (chat_room_id, timestamp, id),
+    -- Offline backlog drained on reconnect: WHERE receiver_id = ? AND status = 'PENDING'
+    INDEX idx_messages_receiver_status (receiver_id, status, timestamp),
+    -- Per-room order and delta sync: WHERE chat_room_id = ? AND seq > ?
+    -- Not UNIQUE so the table can be partitioned by month, see PARTITION_MESSAGES.sql
+    INDEX idx_messages_room_seq (chat_room_id, seq)
+    );
+
+-- Idempotency keys of client sends; a second write of the same send fails on the primary key.
+-- Separate from messages because a partitioned table's unique keys must include the timestamp.
+CREATE TABLE IF NOT EXISTS message_client_ids (
+    client_message_id BINARY(16) NOT NULL,
+    sender_id BINARY(16) NOT NULL,
+    message_id BINARY(16) NOT NULL,
+    created_at DATETIME(6) NOT NULL,
+    PRIMARY KEY (client_message_id, sender_id),
+    -- Pruned past chat.idempotency.key-retention-hours
+    INDEX idx_message_client_ids_created (created_at)
+    );
+
+-- Room broadcasts written with their message and deleted once relayed, see OutboxRelay.
+-- Rows only live for the moment between commit and relay, so the primary key is the only index.
+CREATE TABLE IF NOT EXISTS message_outbox (
+    id BINARY(16) PRIMARY KEY,
+    chat_room_id BINARY(16) NOT NULL,
+    message_id BINARY(16) NOT NULL,
+    payload TEXT NOT NULL,
+    created_at DATETIME(6) NOT NULL
     );
@@ -0,0 +1,135 @@
+package com.example.chatbackend;
+
+import com.example.chat.config.ChatMessageCodec;
+import com.example.chat.dto.ChatMessageDto;
+import com.example.chat.entity.MessageStatus;
+import com.example.chat.entity.MessageType;
+import org.apache.kafka.common.header.Header;
+import org.apache.kafka.common.header.internals.RecordHeaders;
+import org.apache.kafka.common.record.CompressionType;
+import org.apache.kafka.common.record.RecordBatch;
+import org.apache.kafka.common.utils.ByteBufferOutputStream;
+import org.springframework.kafka.support.serializer.JsonDeserializer;
+import org.springframework.kafka.support.serializer.JsonSerializer;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.UUID;
+import java.util.function.Consumer;
+
+/**
+ * Record size and encode/decode cost of ChatMessageCodec against the JsonSerializer /
+ * JsonDeserializer pair chat.messages used before, on generated typical sends.
+ * Not a test; run its main method from the IDE or with the test runtime classpath, which
+ * brings kafka-clients and spring-kafka along:
+ * java -cp &lt;test runtime classpath&gt; com.example.chatbackend.ChatMessageCodecBenchmark
+ */
+public class ChatMessageCodecBenchmark {
+
+    private static final String TOPIC = "chat.messages";
+    private static final int BATCH = 200;
+    private static final String[] TEXTS = {"Hi, is Dr. Smith available tomorrow morning?", "Thanks!",
+            "Can I book a cardiology appointment for Tuesday at 10:30?", "ok", "I'll be 5 minutes late, sorry",
+            "What should I bring to my first visit?", "Yes, 14:00 works for me."};
+
+    public static void main(String[] args) throws IOException {
+        List<ChatMessageDto> sends = sends(new Random(42), 10_000);
+
+        JsonSerializer<ChatMessageDto> jsonSerializer = new JsonSerializer<>();
+        JsonDeserializer<ChatMessageDto> jsonDeserializer = new JsonDeserializer<>(ChatMessageDto.class);
+        jsonDeserializer.addTrustedPackages("*");
+
+        List<byte[]> json = new ArrayList<>(sends.size());
+        List<RecordHeaders> jsonHeaders = new ArrayList<>(sends.size());
+        List<byte[]> binary = new ArrayList<>(sends.size());
+        long headerBytes = 0;
+        for (ChatMessageDto send : sends) {
+            RecordHeaders headers = new RecordHeaders();
+            json.add(jsonSerializer.serialize(TOPIC, headers, send));
+            jsonHeaders.add(headers);
+            for (Header header : headers) {
+                headerBytes += header.key().length() + header.value().length;
+            }
+            binary.add(ChatMessageCodec.encode(send));
+        }
+        System.out.printf("value size: JSON %.0f B plus %.0f B of type headers, binary %.0f B%n",
+                average(json), (double) headerBytes / sends.size(), average(binary));
+        System.out.printf("lz4 per %d-record batch: JSON %.1f KB, binary %.1f KB%n",
+                BATCH, lz4PerBatch(json) / 1024.0, lz4PerBatch(binary) / 1024.0);
+
+        for (int round = 0; round < 5; round++) {
+            System.out.printf("round %d: encode JSON %s, binary %s; decode JSON %s, binary %s%n", round,
+                    time(sends, send -> jsonSerializer.serialize(TOPIC, new RecordHeaders(), send)),
+                    time(sends, ChatMessageCodec::encode),
+                    time(indices(sends.size()), i -> jsonDeserializer.deserialize(TOPIC, jsonHeaders.get(i), json.get(i))),
+                    time(binary, ChatMessageCodec::decode));
+        }
+    }
+
+    // 50 passes over the list per measurement; the first rounds double as warm-up
+    private static <T> String time(List<T> items, Consumer<T> operation) {
+        long start = System.nanoTime();
+        for (int pass = 0; pass < 50; pass++) {
+            items.forEach(operation);
+        }
+        double nanos = (double) (System.nanoTime() - start) / (50L * items.size());
+        return nanos < 1000 ? String.format("%.0f ns/op", nanos) : String.format("%.2f us/op", nanos / 1000);
+    }
+
+    // Values only, compressed the way the producer compresses a batch
+    private static double lz4PerBatch(List<byte[]> values) throws IOException {
+        long total = 0;
+        int batches = 0;
+        for (int from = 0; from + BATCH <= values.size(); from += BATCH) {
+            ByteBufferOutputStream buffer = new ByteBufferOutputStream(ByteBuffer.allocate(64 * 1024));
+            try (OutputStream out = CompressionType.LZ4.wrapForOutput(buffer, RecordBatch.CURRENT_MAGIC_VALUE)) {
+                for (byte[] value : values.subList(from, from + BATCH)) {
+                    out.write(value);
+                }
+            }
+            total += buffer.position();
+            batches++;
+        }
+        return (double) total / batches;
+    }
+
+    private static double average(List<byte[]> values) {
+        return values.stream().mapToInt(v -> v.length).average().orElse(0);
+    }
+
+    private static List<Integer> indices(int count) {
+        List<Integer> indices = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            indices.add(i);
+        }
+        return indices;
+    }
+
+    // Shaped like ChatController's sends: a handful of busy rooms, a client id, short text
+    private static List<ChatMessageDto> sends(Random random, int count) {
+        List<UUID> rooms = new ArrayList<>();
+        for (int i = 0; i < 50; i++) {
+            rooms.add(UUID.randomUUID());
+        }
+        List<ChatMessageDto> sends = new ArrayList<>(count);
+        LocalDateTime now = LocalDateTime.of(2026, 10, 18, 9, 0);
+        for (int i = 0; i < count; i++) {
+            ChatMessageDto dto = new ChatMessageDto();
+            dto.setChatRoomId(rooms.get(random.nextInt(rooms.size())));
+            dto.setClientMessageId(UUID.randomUUID());
+            dto.setFrom(UUID.randomUUID());
+            dto.setTo(UUID.randomUUID());
+            dto.setContent(TEXTS[random.nextInt(TEXTS.length)]);
+            dto.setTimestamp(now.plusNanos(random.nextInt(1_000_000_000) * 1000L));
+            dto.setStatus(MessageStatus.SENT);
+            dto.setMessageType(MessageType.TEXT);
+            sends.add(dto);
+        }
+        return sends;
+    }
+}
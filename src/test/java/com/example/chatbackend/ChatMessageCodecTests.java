@@ -0,0 +1,62 @@
+package com.example.chatbackend;
+
+import com.example.chat.config.ChatMessageCodec;
+import com.example.chat.dto.ChatMessageDto;
+import com.example.chat.entity.MessageStatus;
+import com.example.chat.entity.MessageType;
+import org.apache.kafka.common.errors.SerializationException;
+import org.junit.jupiter.api.Test;
+import org.springframework.kafka.support.JacksonUtils;
+
+import java.time.LocalDateTime;
+import java.util.Arrays;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class ChatMessageCodecTests {
+
+    @Test
+    void roundTripsEveryFieldAndLeavesAbsentOnesNull() throws Exception {
+        ChatMessageDto full = message();
+        ChatMessageDto sparse = new ChatMessageDto();
+        sparse.setChatRoomId(UUID.randomUUID());
+        sparse.setContent("");
+
+        byte[] encoded = ChatMessageCodec.encode(full);
+
+        assertThat(encoded[0]).isEqualTo(ChatMessageCodec.V1);
+        assertThat(ChatMessageCodec.decode(encoded)).isEqualTo(full);
+        assertThat(ChatMessageCodec.decode(ChatMessageCodec.encode(sparse))).isEqualTo(sparse);
+        assertThat(encoded.length).isLessThan(JacksonUtils.enhancedObjectMapper().writeValueAsBytes(full).length / 2);
+    }
+
+    @Test
+    void readsJsonRecordsAndRejectsUnknownOrTruncatedOnes() throws Exception {
+        ChatMessageDto full = message();
+        byte[] json = JacksonUtils.enhancedObjectMapper().writeValueAsBytes(full);
+        byte[] encoded = ChatMessageCodec.encode(full);
+
+        assertThat(ChatMessageCodec.decode(json)).isEqualTo(full);
+        assertThatThrownBy(() -> ChatMessageCodec.decode(new byte[]{9, 0, 0}))
+                .isInstanceOf(SerializationException.class);
+        assertThatThrownBy(() -> ChatMessageCodec.decode(Arrays.copyOf(encoded, encoded.length - 3)))
+                .isInstanceOf(SerializationException.class);
+    }
+
+    private static ChatMessageDto message() {
+        ChatMessageDto dto = new ChatMessageDto();
+        dto.setId(UUID.randomUUID());
+        dto.setChatRoomId(UUID.randomUUID());
+        dto.setClientMessageId(UUID.randomUUID());
+        dto.setSeq(123_456L);
+        dto.setFrom(UUID.randomUUID());
+        dto.setTo(UUID.randomUUID());
+        dto.setContent("Can I book a cardiology appointment for Tuesday? ✓");
+        dto.setTimestamp(LocalDateTime.of(2026, 10, 18, 9, 30, 15, 123_456_789));
+        dto.setStatus(MessageStatus.DELIVERED);
+        dto.setMessageType(MessageType.TEXT);
+        return dto;
+    }
+}
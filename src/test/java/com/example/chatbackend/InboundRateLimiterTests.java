@@ -0,0 +1,67 @@
+package com.example.chatbackend;
+
+import com.example.chat.service.InboundRateLimiter;
+import com.example.chat.service.InboundRateLimiter.Limit;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class InboundRateLimiterTests {
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    @Test
+    void allowsTheBurstPerUserAndLimitThenRejectsAndCounts() {
+        // One token per 1000 s, so nothing refills during the test
+        InboundRateLimiter limiter = limiter(0.001, 3);
+
+        for (int i = 0; i < 3; i++) {
+            assertThat(limiter.tryAcquire(Limit.SEND, "alice")).isTrue();
+        }
+        assertThat(limiter.tryAcquire(Limit.SEND, "alice")).isFalse();
+        assertThat(limiter.tryAcquire(Limit.SEND, "bob")).isTrue();
+        assertThat(limiter.tryAcquire(Limit.BOT, "alice")).isTrue();
+        // Status is configured as unlimited
+        for (int i = 0; i < 100; i++) {
+            assertThat(limiter.tryAcquire(Limit.STATUS, "alice")).isTrue();
+        }
+        assertThat(meterRegistry.get("chat.rate-limit.rejected").tag("limit", "send").counter().count()).isEqualTo(1);
+    }
+
+    @Test
+    void concurrentCallersNeverGetMoreThanTheBurst() throws Exception {
+        InboundRateLimiter limiter = limiter(0.001, 100);
+        AtomicInteger granted = new AtomicInteger();
+        ExecutorService pool = Executors.newFixedThreadPool(8);
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<?>> workers = new ArrayList<>();
+        for (int t = 0; t < 8; t++) {
+            workers.add(pool.submit(() -> {
+                start.await();
+                for (int i = 0; i < 10_000; i++) {
+                    if (limiter.tryAcquire(Limit.SEND, "alice")) {
+                        granted.incrementAndGet();
+                    }
+                }
+                return null;
+            }));
+        }
+        start.countDown();
+        for (Future<?> worker : workers) {
+            worker.get(30, TimeUnit.SECONDS);
+        }
+        pool.shutdown();
+
+        assertThat(granted.get()).isEqualTo(100);
+    }
+
+    private InboundRateLimiter limiter(double perSecond, int burst) {
+        return new InboundRateLimiter(meterRegistry, null, "local", perSecond, burst, 0, 0, perSecond, burst);
+    }
+}
@@ -0,0 +1,47 @@
+package com.example.chatbackend;
+
+import com.example.chat.service.JwtPrincipal;
+import com.example.chat.service.JwtProvider;
+import io.jsonwebtoken.JwtException;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+
+import java.time.Instant;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class JwtProviderTests {
+
+    private static final String SECRET = "testsecrettestsecrettestsecret123";
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private final JwtProvider jwtProvider = new JwtProvider(SECRET, 100, meterRegistry);
+
+    @Test
+    void tokenIsParsedOnceAndThenAnsweredFromTheCache() {
+        UUID userId = UUID.randomUUID();
+        String token = jwtProvider.generateToken(userId, "alice");
+
+        JwtPrincipal first = jwtProvider.verify(token);
+        JwtPrincipal second = jwtProvider.verify(token);
+
+        assertThat(first.getUserId()).isEqualTo(userId);
+        assertThat(first.getName()).isEqualTo("alice");
+        assertThat(first.getExpiresAt()).isAfter(Instant.now());
+        assertThat(second).isSameAs(first);
+        assertThat(meterRegistry.counter("chat.jwt.verifications", "result", "parsed").count()).isEqualTo(1);
+        assertThat(meterRegistry.counter("chat.jwt.verifications", "result", "cached").count()).isEqualTo(1);
+    }
+
+    @Test
+    void tokenSignedWithAnotherKeyIsRejectedAndNotCached() {
+        String forged = new JwtProvider("othersecretothersecretothersecret", 100, new SimpleMeterRegistry())
+                .generateToken(UUID.randomUUID(), "alice");
+
+        assertThatThrownBy(() -> jwtProvider.verify(forged)).isInstanceOf(JwtException.class);
+        assertThatThrownBy(() -> jwtProvider.verify(forged)).isInstanceOf(JwtException.class);
+        assertThat(meterRegistry.counter("chat.jwt.verifications", "result", "cached").count()).isZero();
+    }
+}
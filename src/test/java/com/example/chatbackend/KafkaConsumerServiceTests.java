@@ -0,0 +1,70 @@
+package com.example.chatbackend;
+
+import com.example.chat.config.KafkaConfig;
+import com.example.chat.dto.ChatMessageDto;
+import com.example.chat.service.KafkaConsumerService;
+import com.example.chat.service.MessageProcessor;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.junit.jupiter.api.Test;
+import org.springframework.dao.DataAccessResourceFailureException;
+import org.springframework.kafka.listener.DeadLetterPublishingRecoverer;
+
+import java.util.List;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+class KafkaConsumerServiceTests {
+
+    private final MessageProcessor messageProcessor = mock(MessageProcessor.class);
+    private final DeadLetterPublishingRecoverer deadLetters = mock(DeadLetterPublishingRecoverer.class);
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private final KafkaConsumerService consumer = new KafkaConsumerService(messageProcessor, deadLetters, meterRegistry);
+
+    @Test
+    void failedBatchIsRetriedPerRecordAndOnlyTheBadRecordIsDeadLettered() {
+        ConsumerRecord<String, ChatMessageDto> good = record(0);
+        ConsumerRecord<String, ChatMessageDto> bad = record(1);
+        ConsumerRecord<String, ChatMessageDto> undecodable = new ConsumerRecord<>(KafkaConfig.CHAT_MESSAGES_TOPIC, 0, 2, "room", null);
+        when(messageProcessor.processIncomingMessages(anyList())).thenThrow(new DataAccessResourceFailureException("lost"));
+        doThrow(new RuntimeException("receiver not found")).when(messageProcessor).processIncomingMessage(bad.value());
+
+        consumer.consumeBatch(List.of(good, bad, undecodable));
+
+        verify(messageProcessor).processIncomingMessage(good.value());
+        verify(deadLetters).accept(eq(bad), any(Exception.class));
+        verify(deadLetters).accept(eq(undecodable), any(Exception.class));
+        verifyNoMoreInteractions(deadLetters);
+        assertThat(meterRegistry.get("chat.kafka.records").tags("stage", "dlt", "outcome", "published").counter().count())
+                .isEqualTo(2);
+    }
+
+    @Test
+    void messagesWithUnknownRoomsOrUsersAreDeadLetteredWithoutFailingTheBatch() {
+        ConsumerRecord<String, ChatMessageDto> good = record(0);
+        ConsumerRecord<String, ChatMessageDto> orphan = record(1);
+        when(messageProcessor.processIncomingMessages(anyList())).thenReturn(List.of(orphan.value()));
+
+        consumer.consumeBatch(List.of(good, orphan));
+
+        verify(deadLetters).accept(eq(orphan), any(Exception.class));
+        verifyNoMoreInteractions(deadLetters);
+        verify(messageProcessor, never()).processIncomingMessage(any());
+        assertThat(meterRegistry.get("chat.kafka.records").tags("stage", "batch", "outcome", "processed").counter().count())
+                .isEqualTo(1);
+    }
+
+    private static ConsumerRecord<String, ChatMessageDto> record(long offset) {
+        ChatMessageDto dto = new ChatMessageDto();
+        dto.setChatRoomId(UUID.randomUUID());
+        dto.setFrom(UUID.randomUUID());
+        dto.setTo(UUID.randomUUID());
+        dto.setContent("Hello " + offset);
+        return new ConsumerRecord<>(KafkaConfig.CHAT_MESSAGES_TOPIC, 0, offset, dto.getChatRoomId().toString(), dto);
+    }
+}
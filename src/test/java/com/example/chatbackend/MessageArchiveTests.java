@@ -0,0 +1,115 @@
+package com.example.chatbackend;
+
+import com.example.chat.dto.MessageCursor;
+import com.example.chat.dto.MessageView;
+import com.example.chat.entity.MessageStatus;
+import com.example.chat.entity.MessageType;
+import com.example.chat.entity.TimeOrderedUuidGenerator;
+import com.example.chat.repository.MessageArchive;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.time.YearMonth;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class MessageArchiveTests {
+
+    private static final UUID ROOM = UUID.randomUUID();
+    private static final UUID OTHER_ROOM = UUID.randomUUID();
+
+    @TempDir
+    Path dir;
+
+    private final List<MessageView> january = new ArrayList<>();
+    private final List<MessageView> february = new ArrayList<>();
+
+    @BeforeEach
+    void setUp() throws Exception {
+        // Block size 4, so a month of 10 messages spans three blocks
+        MessageArchive archive = new MessageArchive(dir.toString(), 4);
+        for (int i = 0; i < 10; i++) {
+            january.add(view(ROOM, i + 1, LocalDateTime.of(2025, 1, 1 + i, 12, 0)));
+            february.add(view(ROOM, i + 11, LocalDateTime.of(2025, 2, 1 + i, 12, 0)));
+        }
+        write(archive, YearMonth.of(2025, 2), february);
+        write(archive, YearMonth.of(2025, 1), january);
+    }
+
+    @Test
+    void pagesBackwardsAcrossMonthsFromAReopenedArchive() {
+        MessageArchive reopened = new MessageArchive(dir.toString(), 4);
+
+        List<MessageView> newest = reopened.findBefore(ROOM, null, 3);
+        List<MessageView> older = reopened.findBefore(ROOM, cursorOf(newest.get(2)), 9);
+
+        assertThat(newest).extracting(MessageView::getSeq).containsExactly(20L, 19L, 18L);
+        assertThat(older).extracting(MessageView::getSeq).containsExactly(17L, 16L, 15L, 14L, 13L, 12L, 11L, 10L, 9L);
+        assertThat(older.get(0).getContent()).isEqualTo("message 17");
+        assertThat(reopened.findBefore(OTHER_ROOM, null, 10))
+                .extracting(MessageView::getTimestamp)
+                .containsExactly(LocalDateTime.of(2025, 2, 15, 0, 0), LocalDateTime.of(2025, 1, 15, 0, 0));
+    }
+
+    @Test
+    void pagesForwardAndBySeq() {
+        MessageArchive archive = new MessageArchive(dir.toString(), 4);
+
+        assertThat(archive.findAfter(ROOM, cursorOf(january.get(8)), 3))
+                .extracting(MessageView::getSeq).containsExactly(10L, 11L, 12L);
+        assertThat(archive.findAfterSeq(ROOM, 18, 10))
+                .extracting(MessageView::getSeq).containsExactly(19L, 20L);
+        assertThat(archive.findAfter(ROOM, cursorOf(february.get(9)), 3)).isEmpty();
+        assertThat(archive.archivedUntil()).contains(LocalDateTime.of(2025, 3, 1, 0, 0));
+    }
+
+    @Test
+    void seqPagesFindASmallerSeqInALaterBlock() throws Exception {
+        MessageArchive archive = new MessageArchive(dir.toString(), 4);
+        // The last message got the smallest seq, so it sits in the second block
+        List<MessageView> march = new ArrayList<>();
+        for (int i = 0; i < 8; i++) {
+            march.add(view(ROOM, i == 7 ? 30 : 31 + i, LocalDateTime.of(2025, 3, 1 + i, 12, 0)));
+        }
+        write(archive, YearMonth.of(2025, 3), march);
+
+        assertThat(archive.findAfterSeq(ROOM, 29, 3)).extracting(MessageView::getSeq).containsExactly(30L, 31L, 32L);
+        assertThat(archive.findAfterSeq(ROOM, 34, 2)).extracting(MessageView::getSeq).containsExactly(35L, 36L);
+    }
+
+    @Test
+    void refreshPicksUpMonthsAnotherInstanceArchived() throws Exception {
+        MessageArchive reader = new MessageArchive(dir.toString(), 4);
+        MessageArchive writer = new MessageArchive(dir.toString(), 4);
+        List<MessageView> march = List.of(view(ROOM, 21, LocalDateTime.of(2025, 3, 1, 12, 0)));
+        write(writer, YearMonth.of(2025, 3), march);
+
+        assertThat(reader.isArchived(YearMonth.of(2025, 3))).isFalse();
+        reader.refresh();
+        assertThat(reader.isArchived(YearMonth.of(2025, 3))).isTrue();
+        assertThat(reader.findBefore(ROOM, null, 1)).extracting(MessageView::getSeq).containsExactly(21L);
+    }
+
+    private static void write(MessageArchive archive, YearMonth month, List<MessageView> rows) throws Exception {
+        try (MessageArchive.SegmentWriter writer = archive.openSegment(month)) {
+            writer.append(ROOM, rows);
+            writer.append(OTHER_ROOM, List.of(view(OTHER_ROOM, 1, month.atDay(15).atStartOfDay())));
+            writer.commit();
+        }
+    }
+
+    private static MessageView view(UUID chatRoomId, long seq, LocalDateTime timestamp) {
+        return new MessageView(TimeOrderedUuidGenerator.next(), chatRoomId, seq, UUID.randomUUID(), UUID.randomUUID(),
+                "message " + seq, null, timestamp, MessageStatus.READ, MessageType.TEXT);
+    }
+
+    private static MessageCursor cursorOf(MessageView m) {
+        return new MessageCursor(m.getTimestamp(), m.getId());
+    }
+}
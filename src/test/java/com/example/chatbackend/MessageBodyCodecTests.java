@@ -0,0 +1,33 @@
+package com.example.chatbackend;
+
+import com.example.chat.entity.MessageBodyCodec;
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class MessageBodyCodecTests {
+
+    @Test
+    void roundTripsTextWithTheFormatMarker() {
+        String body = "Here are the Cardiology doctors available: Dr. Smith - 09:00 - 09:30, 10:00 - 10:30 ✓ ".repeat(40);
+
+        byte[] stored = MessageBodyCodec.compress(body);
+
+        assertThat(stored[0]).isEqualTo(MessageBodyCodec.DEFLATE);
+        assertThat(stored.length).isLessThan(body.length() / 5);
+        assertThat(MessageBodyCodec.decompress(stored)).isEqualTo(body);
+    }
+
+    @Test
+    void rejectsUnknownAndTruncatedBodies() {
+        byte[] stored = MessageBodyCodec.compress("Please try again. ".repeat(100));
+
+        assertThatThrownBy(() -> MessageBodyCodec.decompress(new byte[]{9, 1, 2}))
+                .isInstanceOf(IllegalStateException.class);
+        assertThatThrownBy(() -> MessageBodyCodec.decompress(Arrays.copyOf(stored, stored.length / 2)))
+                .isInstanceOf(IllegalStateException.class);
+    }
+}
@@ -0,0 +1,156 @@
+package com.example.chatbackend;
+
+import com.example.chat.entity.MessageBodyCodec;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.zip.Deflater;
+
+/**
+ * Compression ratio and CPU cost of MessageBodyCodec on generated DoctorAssistant replies.
+ * Not a test; run its main method from the IDE or with the test runtime classpath:
+ * java -cp build/classes/java/test:build/classes/java/main com.example.chatbackend.MessageBodyCompressionBenchmark
+ */
+public class MessageBodyCompressionBenchmark {
+
+    private static final String[] DOCTORS = {"Dr. Sarah Smith", "Dr. James Lee", "Dr. Priya Patel", "Dr. Omar Haddad",
+            "Dr. Emily Chen", "Dr. Luis Garcia", "Dr. Anna Novak", "Dr. Kenji Sato"};
+    private static final String[] SPECIALTIES = {"Cardiology", "Dermatology", "Pediatrics", "Neurology", "Orthopedics"};
+
+    public static void main(String[] args) {
+        List<String> replies = transcripts(new Random(42), 5_000);
+        long plainBytes = replies.stream().mapToLong(r -> r.getBytes(StandardCharsets.UTF_8).length).sum();
+        System.out.printf("%d replies, %.0f bytes average%n", replies.size(), (double) plainBytes / replies.size());
+
+        for (int threshold : new int[]{256, 512, 1024}) {
+            report("codec, min-chars=" + threshold, replies, threshold);
+        }
+        for (int level : new int[]{Deflater.BEST_SPEED, Deflater.DEFAULT_COMPRESSION}) {
+            reportLevel(replies, level);
+        }
+    }
+
+    private static void report(String label, List<String> replies, int threshold) {
+        long plain = 0;
+        long stored = 0;
+        int compressed = 0;
+        List<byte[]> bodies = new ArrayList<>();
+        for (String reply : replies) {
+            int length = reply.getBytes(StandardCharsets.UTF_8).length;
+            plain += length;
+            if (reply.length() >= threshold) {
+                byte[] body = MessageBodyCodec.compress(reply);
+                if (body.length < length) {
+                    stored += body.length;
+                    compressed++;
+                    bodies.add(body);
+                    continue;
+                }
+            }
+            stored += length;
+        }
+
+        // Warm up, then time compress and decompress of the rows that would be compressed
+        for (int i = 0; i < 20; i++) {
+            bodies.forEach(MessageBodyCodec::decompress);
+            replies.forEach(MessageBodyCodec::compress);
+        }
+        long start = System.nanoTime();
+        for (String reply : replies) {
+            if (reply.length() >= threshold) {
+                MessageBodyCodec.compress(reply);
+            }
+        }
+        long compressNanos = System.nanoTime() - start;
+        start = System.nanoTime();
+        bodies.forEach(MessageBodyCodec::decompress);
+        long decompressNanos = System.nanoTime() - start;
+
+        System.out.printf("%-24s %4d/%d rows compressed, table bytes %.2fx smaller, compress %.1f us/row, decompress %.1f us/row%n",
+                label, compressed, replies.size(), (double) plain / stored,
+                compressNanos / 1000.0 / Math.max(1, compressed), decompressNanos / 1000.0 / Math.max(1, bodies.size()));
+    }
+
+    private static void reportLevel(List<String> replies, int level) {
+        long plain = 0;
+        long out = 0;
+        byte[] buffer = new byte[65536];
+        for (int round = 0; round < 10; round++) {
+            plain = 0;
+            out = 0;
+            long start = System.nanoTime();
+            for (String reply : replies) {
+                byte[] input = reply.getBytes(StandardCharsets.UTF_8);
+                Deflater deflater = new Deflater(level, true);
+                deflater.setInput(input);
+                deflater.finish();
+                int n = deflater.deflate(buffer);
+                deflater.end();
+                plain += input.length;
+                out += n + 1;
+            }
+            if (round == 9) {
+                System.out.printf("deflate level %-10d ratio %.2fx over all replies, %.1f us/row%n",
+                        level, (double) plain / out, (System.nanoTime() - start) / 1000.0 / replies.size());
+            }
+        }
+    }
+
+    // Shapes follow ChatBotService: slot listings, appointment summaries, apologies, free text
+    private static List<String> transcripts(Random random, int count) {
+        List<String> replies = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            StringBuilder reply = new StringBuilder();
+            switch (random.nextInt(4)) {
+                case 0 -> {
+                    reply.append("Here are the available appointment slots for the next few days:\n");
+                    int days = 2 + random.nextInt(10);
+                    for (int d = 0; d < days; d++) {
+                        reply.append(String.format("%n2025-%02d-%02d:%n", 1 + random.nextInt(12), 1 + random.nextInt(28)));
+                        int doctors = 1 + random.nextInt(4);
+                        for (int k = 0; k < doctors; k++) {
+                            reply.append("- ").append(DOCTORS[random.nextInt(DOCTORS.length)]).append(" (")
+                                    .append(SPECIALTIES[random.nextInt(SPECIALTIES.length)]).append("): ");
+                            int slots = 2 + random.nextInt(6);
+                            for (int s = 0; s < slots; s++) {
+                                int hour = 9 + random.nextInt(8);
+                                reply.append(String.format("%02d:00-%02d:30", hour, hour)).append(s + 1 < slots ? ", " : "\n");
+                            }
+                        }
+                    }
+                    reply.append("\nWould you like me to book one of these times for you? Just tell me the doctor, date and time.");
+                }
+                case 1 -> {
+                    int n = 1 + random.nextInt(6);
+                    reply.append("Found ").append(n).append(" appointment(s) for you:\n");
+                    for (int k = 0; k < n; k++) {
+                        reply.append(String.format("- Doctor: %s, Date: 2025-%02d-%02d, Time: %02d:%02d%n",
+                                DOCTORS[random.nextInt(DOCTORS.length)], 1 + random.nextInt(12), 1 + random.nextInt(28),
+                                9 + random.nextInt(8), random.nextBoolean() ? 0 : 30));
+                    }
+                    reply.append("If you need to reschedule or cancel any of these, let me know and I'll take care of it.");
+                }
+                case 2 -> reply.append(random.nextBoolean()
+                        ? "I apologize, but I encountered an error. Please try again."
+                        : "Sure! Which date works best for you?");
+                default -> {
+                    String specialty = SPECIALTIES[random.nextInt(SPECIALTIES.length)];
+                    reply.append("Thank you for reaching out. Based on what you've described, a visit with one of our ")
+                            .append(specialty).append(" specialists would be a good next step. ");
+                    reply.append("Here are the ").append(specialty).append(" doctors available: ");
+                    int n = 2 + random.nextInt(5);
+                    for (int k = 0; k < n; k++) {
+                        reply.append(DOCTORS[random.nextInt(DOCTORS.length)]).append(" - ").append(specialty).append(k + 1 < n ? ", " : ". ");
+                    }
+                    reply.append("Each appointment lasts 30 minutes. Please bring any previous test results, a list of your current ")
+                            .append("medications and your insurance card. If your symptoms get worse before your appointment, ")
+                            .append("please call emergency services or visit the nearest emergency room.");
+                }
+            }
+            replies.add(reply.toString());
+        }
+        return replies;
+    }
+}
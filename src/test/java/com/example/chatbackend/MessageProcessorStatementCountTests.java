@@ -0,0 +1,312 @@
+package com.example.chatbackend;
+
+import com.example.chat.ChatApplication;
+import com.example.chat.dto.ChatMessageDto;
+import com.example.chat.dto.SendAckDto;
+import com.example.chat.entity.*;
+import com.example.chat.repository.ChatRoomRepository;
+import com.example.chat.repository.MessageRepository;
+import com.example.chat.repository.OutboxEventRepository;
+import com.example.chat.repository.UserRepository;
+import com.example.chat.service.BotReplyDispatcher;
+import com.example.chat.service.ChatService;
+import com.example.chat.service.MessageProcessor;
+import com.example.chat.service.MessageSearchIndex;
+import com.example.chat.service.MessageWriter;
+import com.example.chat.service.OutboxRelay;
+import com.example.chat.service.PresenceService;
+import com.example.chat.service.RecentMessageCache;
+import com.example.chat.service.SendDeduplicator;
+import com.example.chat.service.UserIdentityCache;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import jakarta.persistence.EntityManagerFactory;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.context.annotation.Import;
+import org.springframework.messaging.simp.SimpMessagingTemplate;
+import org.springframework.test.context.ContextConfiguration;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.argThat;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoInteractions;
+import static org.mockito.Mockito.when;
+
+@DataJpaTest(properties = {
+        "spring.jpa.properties.hibernate.dialect=org.hibernate.dialect.H2Dialect",
+        "spring.jpa.properties.hibernate.generate_statistics=true",
+        "spring.sql.init.mode=never"
+})
+@ContextConfiguration(classes = ChatApplication.class)
+@Import({MessageProcessor.class, MessageWriter.class, SendDeduplicator.class, UserIdentityCache.class, SimpleMeterRegistry.class})
+// Let every repository call commit on its own, as it does in production
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+class MessageProcessorStatementCountTests {
+
+    @Autowired
+    private MessageProcessor messageProcessor;
+    @Autowired
+    private MessageWriter messageWriter;
+    @Autowired
+    private MessageRepository messageRepository;
+    @Autowired
+    private ChatRoomRepository chatRoomRepository;
+    @Autowired
+    private UserRepository userRepository;
+    @Autowired
+    private OutboxEventRepository outboxEventRepository;
+    @Autowired
+    private UserIdentityCache userIdentityCache;
+    @Autowired
+    private EntityManagerFactory entityManagerFactory;
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @MockBean
+    private PresenceService presenceService;
+    @MockBean
+    private ChatService chatService;
+    @MockBean
+    private BotReplyDispatcher botReplyDispatcher;
+    @MockBean
+    private RecentMessageCache recentMessageCache;
+    @MockBean
+    private MessageSearchIndex messageSearchIndex;
+    @MockBean
+    private OutboxRelay outboxRelay;
+
+    private User alice;
+    private User bob;
+    private User bot;
+
+    @BeforeEach
+    void setUp() {
+        messageRepository.deleteAll();
+        outboxEventRepository.deleteAll();
+        chatRoomRepository.deleteAll();
+        userRepository.deleteAll();
+        userIdentityCache.clear();
+
+        alice = userRepository.save(user("alice", false));
+        bob = userRepository.save(user("bob", false));
+        bot = userRepository.save(user("DoctorAssistant", true));
+    }
+
+    @Test
+    void messageToOnlineUserIsInsertedOnceWithFinalStatus() {
+        ChatRoom room = room(alice, bob);
+        when(presenceService.isUserOnline("bob")).thenReturn(true);
+
+        Statistics stats = statistics();
+        messageProcessor.processIncomingMessage(message(room, alice, bob));
+
+        // chat room + sender + receiver lookups, seq reservation + read-back, then the message and its outbox row
+        assertThat(stats.getPrepareStatementCount()).isEqualTo(7);
+        assertThat(stats.getEntityInsertCount()).isEqualTo(2);
+        assertThat(stats.getEntityUpdateCount()).isZero();
+        assertThat(messageRepository.findAll())
+                .singleElement()
+                .extracting(Message::getStatus)
+                .isEqualTo(MessageStatus.DELIVERED);
+        verify(outboxRelay).wake();
+    }
+
+    @Test
+    void cachedUsersLeaveOnlyTheRoomLookupAndTheWrite() {
+        ChatRoom room = room(alice, bob);
+        when(presenceService.isUserOnline("bob")).thenReturn(true);
+        messageProcessor.processIncomingMessage(message(room, alice, bob));
+
+        Statistics stats = statistics();
+        messageProcessor.processIncomingMessage(message(room, alice, bob));
+
+        // chat room lookup, seq reservation + read-back, message and outbox row
+        assertThat(stats.getPrepareStatementCount()).isEqualTo(5);
+        assertThat(messageRepository.findAll()).hasSize(2);
+    }
+
+    @Test
+    void messageToOfflineUserIsInsertedOnceAsPending() {
+        ChatRoom room = room(alice, bob);
+        when(presenceService.isUserOnline("bob")).thenReturn(false);
+
+        Statistics stats = statistics();
+        messageProcessor.processIncomingMessage(message(room, alice, bob));
+
+        assertThat(stats.getPrepareStatementCount()).isEqualTo(6);
+        assertThat(stats.getEntityInsertCount()).isEqualTo(1);
+        assertThat(stats.getEntityUpdateCount()).isZero();
+        assertThat(messageRepository.findAll())
+                .singleElement()
+                .extracting(Message::getStatus)
+                .isEqualTo(MessageStatus.PENDING);
+        assertThat(outboxEventRepository.count()).isZero();
+    }
+
+    @Test
+    void messageToBotIsInsertedOnceAndHandedToTheBotWorker() {
+        ChatRoom room = room(alice, bot);
+
+        Statistics stats = statistics();
+        messageProcessor.processIncomingMessage(message(room, alice, bot));
+
+        // the reply is written by BotReplyDispatcher, off this thread
+        assertThat(stats.getPrepareStatementCount()).isEqualTo(7);
+        assertThat(stats.getEntityInsertCount()).isEqualTo(2);
+        assertThat(stats.getEntityUpdateCount()).isZero();
+        assertThat(messageRepository.findAll())
+                .singleElement()
+                .extracting(Message::getStatus)
+                .isEqualTo(MessageStatus.DELIVERED);
+        verify(botReplyDispatcher).submit(any(), any(), any(), any());
+        verifyNoInteractions(presenceService);
+    }
+
+    @Test
+    void messagesGetConsecutiveSequenceNumbersPerRoom() {
+        ChatRoom first = room(alice, bob);
+        ChatRoom second = room(bob, alice);
+
+        messageProcessor.processIncomingMessages(List.of(
+                message(first, alice, bob), message(second, bob, alice), message(first, alice, bob)));
+        messageProcessor.processIncomingMessage(message(first, bob, alice));
+
+        assertThat(messageRepository.findAll())
+                .filteredOn(m -> m.getChatRoom().getId().equals(first.getId()))
+                .extracting(Message::getSeq)
+                .containsExactlyInAnyOrder(1L, 2L, 3L);
+        assertThat(chatRoomRepository.findLastSeq(first.getId())).isEqualTo(3);
+        assertThat(chatRoomRepository.findLastSeq(second.getId())).isEqualTo(1);
+    }
+
+    @Test
+    void retriedSendIsAckedAgainWithoutTouchingTheDatabase() {
+        ChatRoom room = room(alice, bob);
+        UUID clientMessageId = UUID.randomUUID();
+        when(presenceService.isUserOnline("bob")).thenReturn(true);
+        messageProcessor.processIncomingMessage(message(room, alice, bob, clientMessageId));
+
+        Statistics stats = statistics();
+        messageProcessor.processIncomingMessage(message(room, alice, bob, clientMessageId));
+
+        assertThat(stats.getPrepareStatementCount()).isZero();
+        assertThat(messageRepository.findAll()).hasSize(1);
+        assertThat(outboxEventRepository.count()).isEqualTo(1);
+        verify(chatService).acknowledge(eq("alice"), argThat(ack -> !ack.isDuplicate()));
+        verify(chatService).acknowledge(eq("alice"), argThat(SendAckDto::isDuplicate));
+    }
+
+    @Test
+    void sendStoredElsewhereIsReplayedAndTheRestOfTheBatchWritten() {
+        ChatRoom room = room(alice, bob);
+        UUID clientMessageId = UUID.randomUUID();
+        // Written by another instance, so this one's window has never seen it
+        messageWriter.insert(List.of(Message.builder()
+                .chatRoom(room).sender(alice).receiver(bob).content("Hello")
+                .timestamp(LocalDateTime.now()).status(MessageStatus.DELIVERED).messageType(MessageType.TEXT)
+                .clientMessageId(clientMessageId)
+                .build()));
+
+        messageProcessor.processIncomingMessages(List.of(
+                message(room, alice, bob, clientMessageId),
+                message(room, alice, bob, clientMessageId),
+                message(room, bob, alice, UUID.randomUUID())));
+
+        assertThat(messageRepository.findAll())
+                .extracting(Message::getSeq)
+                .containsExactlyInAnyOrder(1L, 2L);
+        verify(chatService).acknowledge(eq("alice"), argThat(ack -> ack.isDuplicate() && ack.getSeq() == 1L));
+        verify(chatService).acknowledge(eq("bob"), argThat(ack -> !ack.isDuplicate() && ack.getSeq() == 2L));
+    }
+
+    @Test
+    void outboxIsRelayedToTheRoomTopicAndEmptied() {
+        ChatRoom room = room(alice, bob);
+        UUID clientMessageId = UUID.randomUUID();
+        when(presenceService.isUserOnline(any())).thenReturn(true);
+        messageProcessor.processIncomingMessage(message(room, alice, bob, clientMessageId));
+        messageProcessor.processIncomingMessage(message(room, bob, alice));
+        SimpMessagingTemplate messagingTemplate = mock(SimpMessagingTemplate.class);
+        OutboxRelay relay = new OutboxRelay(outboxEventRepository, messagingTemplate,
+                new TransactionTemplate(transactionManager), new SimpleMeterRegistry(), 1);
+
+        assertThat(relay.relayPending()).isEqualTo(2);
+
+        verify(messagingTemplate, times(2)).send(eq("/topic/messages/" + room.getId()), argThat(frame -> {
+            String json = new String((byte[]) frame.getPayload(), StandardCharsets.UTF_8);
+            return json.contains("\"username\":\"alice\"") && json.contains("\"content\":\"Hello\"");
+        }));
+        verify(messagingTemplate).send(any(String.class), argThat(frame ->
+                new String((byte[]) frame.getPayload(), StandardCharsets.UTF_8).contains(clientMessageId.toString())));
+        assertThat(outboxEventRepository.count()).isZero();
+    }
+
+    @Test
+    void statusChangeIsASingleTargetedUpdate() {
+        ChatRoom room = room(alice, bob);
+        messageProcessor.processIncomingMessage(message(room, alice, bob));
+        Message stored = messageRepository.findAll().get(0);
+
+        Statistics stats = statistics();
+        messageRepository.updateStatus(stored.getId(), MessageStatus.READ);
+
+        assertThat(stats.getPrepareStatementCount()).isEqualTo(1);
+        assertThat(stats.getEntityUpdateCount()).isZero();
+        assertThat(messageRepository.findById(stored.getId()))
+                .get()
+                .extracting(Message::getStatus)
+                .isEqualTo(MessageStatus.READ);
+    }
+
+    private Statistics statistics() {
+        Statistics stats = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+        stats.clear();
+        return stats;
+    }
+
+    private ChatRoom room(User user1, User user2) {
+        return chatRoomRepository.save(ChatRoom.builder().user1(user1).user2(user2).build());
+    }
+
+    private static User user(String username, boolean isBot) {
+        return User.builder()
+                .username(username)
+                .password("secret")
+                .isBot(isBot)
+                .build();
+    }
+
+    private static ChatMessageDto message(ChatRoom room, User from, User to, UUID clientMessageId) {
+        ChatMessageDto dto = message(room, from, to);
+        dto.setClientMessageId(clientMessageId);
+        return dto;
+    }
+
+    private static ChatMessageDto message(ChatRoom room, User from, User to) {
+        ChatMessageDto dto = new ChatMessageDto();
+        dto.setChatRoomId(room.getId());
+        dto.setFrom(from.getId());
+        dto.setTo(to.getId());
+        dto.setContent("Hello");
+        dto.setMessageType(MessageType.TEXT);
+        return dto;
+    }
+}
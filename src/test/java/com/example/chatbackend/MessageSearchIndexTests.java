@@ -0,0 +1,81 @@
+package com.example.chatbackend;
+
+import com.example.chat.dto.MessageView;
+import com.example.chat.entity.MessageStatus;
+import com.example.chat.entity.MessageType;
+import com.example.chat.entity.TimeOrderedUuidGenerator;
+import com.example.chat.service.MessageSearchIndex;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class MessageSearchIndexTests {
+
+    private static final UUID ROOM = UUID.randomUUID();
+    private static final UUID OTHER_ROOM = UUID.randomUUID();
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void ranksMatchesOfAllTermsWithinTheSearchedRooms() {
+        MessageSearchIndex index = new MessageSearchIndex(dir.toString(), 1000, 8, 1024, 10_000);
+        MessageView focused = message(ROOM, "Cardiology appointment with Dr. Smith");
+        MessageView diluted = message(ROOM, "Can I get an appointment next week? Cardiology or anything else is fine, "
+                + "I just need someone to look at my results before the weekend");
+        index.index(List.of(
+                focused,
+                diluted,
+                message(ROOM, "appointment booked"),
+                message(OTHER_ROOM, "Cardiology appointment tomorrow")));
+
+        MessageSearchIndex.SearchResult result = index.search(List.of(ROOM), "cardiology APPOINTMENT", 0, 10);
+
+        assertThat(result.getTotal()).isEqualTo(2);
+        assertThat(result.getHits()).extracting(MessageSearchIndex.Hit::getMessageId)
+                .containsExactly(focused.getId(), diluted.getId());
+        assertThat(index.search(List.of(ROOM), "tomorrow", 0, 10).getTotal()).isZero();
+    }
+
+    @Test
+    void flushedAndMergedSegmentsSurviveAReopen() {
+        MessageSearchIndex index = new MessageSearchIndex(dir.toString(), 1000, 2, 1024, 10_000);
+        for (int i = 0; i < 4; i++) {
+            index.index(List.of(message(ROOM, "refill prescription " + i), message(OTHER_ROOM, "refill " + i)));
+            index.flush();
+        }
+        index.index(List.of(message(ROOM, "refill prescription unflushed")));
+        index.close();
+
+        MessageSearchIndex reopened = new MessageSearchIndex(dir.toString(), 1000, 2, 1024, 10_000);
+
+        assertThat(reopened.search(List.of(ROOM), "refill prescription", 0, 2).getTotal()).isEqualTo(5);
+        assertThat(reopened.search(List.of(ROOM, OTHER_ROOM), "refill", 3, 10).getHits()).hasSize(6);
+        assertThat(dir.toFile().list((d, name) -> name.startsWith("seg-"))).hasSizeLessThanOrEqualTo(2);
+    }
+
+    @Test
+    void catchUpRescansDoNotIndexAMessageTwice() {
+        MessageSearchIndex index = new MessageSearchIndex(dir.toString(), 1000, 8, 1024, 10_000);
+        MessageView live = message(ROOM, "referral letter");
+        assertThat(index.index(List.of(live))).isEqualTo(1);
+        index.close();
+
+        // Reopened, the ids of the last window count as indexed, as they do before a flush
+        MessageSearchIndex reopened = new MessageSearchIndex(dir.toString(), 1000, 8, 1024, 10_000);
+        assertThat(reopened.index(List.of(live, message(ROOM, "referral form")))).isEqualTo(1);
+
+        assertThat(reopened.search(List.of(ROOM), "referral", 0, 10).getTotal()).isEqualTo(2);
+    }
+
+    private static MessageView message(UUID chatRoomId, String content) {
+        return new MessageView(TimeOrderedUuidGenerator.next(), chatRoomId, null, UUID.randomUUID(), UUID.randomUUID(),
+                content, null, LocalDateTime.now(), MessageStatus.DELIVERED, MessageType.TEXT);
+    }
+}
@@ -0,0 +1,43 @@
+package com.example.chatbackend;
+
+import com.example.chat.entity.TimeOrderedUuidGenerator;
+import org.junit.jupiter.api.Test;
+
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class TimeOrderedUuidGeneratorTests {
+
+    @Test
+    void idsAreVersion7AndIncreaseInByteOrder() {
+        UUID previous = TimeOrderedUuidGenerator.next();
+        for (int i = 0; i < 10_000; i++) {
+            UUID next = TimeOrderedUuidGenerator.next();
+            assertThat(next.version()).isEqualTo(7);
+            assertThat(next.variant()).isEqualTo(2);
+            // BINARY(16) compares unsigned bytes, most significant long first
+            assertThat(Long.compareUnsigned(next.getMostSignificantBits(), previous.getMostSignificantBits()))
+                    .isPositive();
+            previous = next;
+        }
+    }
+
+    @Test
+    void idsCarryTheirCreationTime() {
+        long before = System.currentTimeMillis();
+        UUID id = TimeOrderedUuidGenerator.next();
+
+        assertThat(id.getMostSignificantBits() >>> 16).isGreaterThanOrEqualTo(before);
+    }
+
+    @Test
+    void binaryOrderComparesUnsignedLikeMysql() {
+        UUID low = new UUID(0x7FFF_FFFF_FFFF_7000L, 0);
+        UUID high = new UUID(0x8000_0000_0000_7000L, 0);
+
+        assertThat(low.compareTo(high)).isPositive();
+        assertThat(TimeOrderedUuidGenerator.BINARY_ORDER.compare(low, high)).isNegative();
+        assertThat(TimeOrderedUuidGenerator.BINARY_ORDER.compare(new UUID(1, -1), new UUID(1, 1))).isPositive();
+    }
+}
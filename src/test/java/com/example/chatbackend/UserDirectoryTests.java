@@ -0,0 +1,145 @@
+package com.example.chatbackend;
+
+import com.example.chat.dto.UserDirectoryPageDto;
+import com.example.chat.dto.UserDto;
+import com.example.chat.entity.User;
+import com.example.chat.repository.UserRepository;
+import com.example.chat.service.UserChangedEvent;
+import com.example.chat.service.UserDirectory;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.domain.PageImpl;
+import org.springframework.data.domain.Pageable;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class UserDirectoryTests {
+
+    private final UserRepository userRepository = mock(UserRepository.class);
+    private final UserDirectory directory = new UserDirectory(userRepository, new ObjectMapper(), 2, 100, 3, 16, 60_000);
+
+    @Test
+    void cursorPagesWalkEveryoneOnceWithBotsPinnedFirst() {
+        load(user("zed", null, null, false), user("carol", null, null, false), user("helper", null, null, true),
+                user("DoctorAssistant", null, null, true), user("alice", null, null, false), user("bob", null, null, false));
+
+        UserDirectoryPageDto first = directory.page(null, null, null);
+        UserDirectoryPageDto second = directory.page(null, first.getNext(), null);
+
+        assertThat(usernames(first)).containsExactly("DoctorAssistant", "helper", "alice", "bob");
+        assertThat(usernames(second)).containsExactly("carol", "zed");
+        assertThat(second.getNext()).isNull();
+        assertThatThrownBy(() -> directory.page(null, "not-a-cursor", null)).isInstanceOf(IllegalArgumentException.class);
+    }
+
+    @Test
+    void prefixMatchesUsernameAndNamesListingEachUserOnce() {
+        load(user("annie", "Ann", "Smith", false), user("jsmith", "John", "Smith", false),
+                user("bob", "Annabel", "Jones", false), user("carol", null, null, false));
+
+        List<String> found = new ArrayList<>();
+        UserDirectoryPageDto page = directory.page(" AN", null, null);
+        found.addAll(usernames(page));
+        while (page.getNext() != null) {
+            page = directory.page(" AN", page.getNext(), null);
+            found.addAll(usernames(page));
+        }
+
+        assertThat(found).containsExactly("annie", "bob");
+        assertThat(usernames(directory.page("smi", null, 10))).containsExactlyInAnyOrder("annie", "jsmith");
+    }
+
+    @Test
+    void registrationMovesTheVersionAndShowsUpInTheDelta() {
+        load(user("alice", null, null, false));
+        String loaded = directory.version();
+        UserDirectory.RenderedPage before = directory.render(null, null, null);
+        assertThat(directory.render(null, null, null).getBody()).isSameAs(before.getBody());
+
+        User bob = user("bob", null, null, false);
+        when(userRepository.findById(bob.getId())).thenReturn(Optional.of(bob));
+        directory.onUserChanged(new UserChangedEvent(bob.getId(), "bob"));
+        directory.onUserChanged(new UserChangedEvent(bob.getId(), "bob"));
+
+        // The repeated event changes nothing, so it is no second version
+        assertThat(number(directory.version()) - number(loaded)).isEqualTo(1);
+        assertThat(directory.render(null, null, null).getVersion()).isEqualTo(directory.version());
+        assertThat(new String(directory.render(null, null, null).getBody())).contains("\"bob\"");
+        assertThat(directory.changesSince(loaded).getChanged()).extracting(UserDto::getUsername).containsExactly("bob");
+        assertThat(directory.changesSince(directory.version()).getChanged()).isEmpty();
+        assertThat(directory.changesSince("0." + 1).isReset()).isTrue();
+    }
+
+    @Test
+    void sharedVersionsAreAppliedInOrderAndAGapReloads() {
+        directory.useSharedVersions(() -> "e.5");
+        User alice = user("alice", null, null, false);
+        load(alice);
+        assertThat(directory.version()).isEqualTo("e.5");
+
+        User bob = user("bob", null, null, false);
+        when(userRepository.findById(bob.getId())).thenReturn(Optional.of(bob));
+        directory.onUserChanged(new UserChangedEvent(bob.getId(), "bob"));
+        assertThat(directory.version()).isEqualTo("e.5");
+
+        directory.onSharedChange(new UserChangedEvent(bob.getId(), "bob"), "e", 6);
+        directory.onSharedChange(new UserChangedEvent(bob.getId(), "bob"), "e", 6);
+        assertThat(directory.version()).isEqualTo("e.6");
+        assertThat(directory.changesSince("e.5").getChanged()).extracting(UserDto::getUsername).containsExactly("bob");
+
+        // Change 7 never arrived: bob is gone from the database and the listing is read again
+        when(userRepository.findAll(any(Pageable.class))).thenReturn(new PageImpl<>(List.of(alice)));
+        directory.onSharedChange(new UserChangedEvent(alice.getId(), "alice"), "e", 8);
+        assertThat(directory.version()).isEqualTo("e.8");
+        assertThat(usernames(directory.page(null, null, null))).containsExactly("alice");
+        assertThat(directory.changesSince("e.6").isReset()).isTrue();
+    }
+
+    @Test
+    void catchUpAddsUsersRegisteredOnAnotherInstance() {
+        User alice = user("alice", null, null, false);
+        alice.setCreatedAt(LocalDateTime.of(2026, 1, 1, 12, 0));
+        load(alice);
+        String loaded = directory.version();
+
+        User bob = user("bob", null, null, false);
+        bob.setCreatedAt(LocalDateTime.of(2026, 1, 1, 12, 5));
+        when(userRepository.findByCreatedAtGreaterThanEqual(eq(LocalDateTime.of(2026, 1, 1, 11, 59)), any(Pageable.class)))
+                .thenReturn(List.of(alice, bob));
+        directory.catchUp();
+        directory.catchUp();
+
+        assertThat(usernames(directory.page(null, null, null))).containsExactly("alice", "bob");
+        assertThat(number(directory.version()) - number(loaded)).isEqualTo(1);
+        assertThat(directory.changesSince(loaded).getChanged()).extracting(UserDto::getUsername).containsExactly("bob");
+    }
+
+    private static long number(String version) {
+        return Long.parseLong(version.substring(version.indexOf('.') + 1));
+    }
+
+    private void load(User... users) {
+        when(userRepository.findAll(any(Pageable.class))).thenReturn(new PageImpl<>(List.of(users)));
+        directory.load();
+    }
+
+    private static List<String> usernames(UserDirectoryPageDto page) {
+        return page.getUsers().stream().map(UserDto::getUsername).toList();
+    }
+
+    private static User user(String username, String firstName, String lastName, boolean isBot) {
+        return User.builder().id(UUID.randomUUID()).username(username).firstName(firstName).lastName(lastName)
+                .password("secret").isBot(isBot).build();
+    }
+}
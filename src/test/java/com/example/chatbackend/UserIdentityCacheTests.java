@@ -0,0 +1,69 @@
+package com.example.chatbackend;
+
+import com.example.chat.dto.UserIdentity;
+import com.example.chat.entity.User;
+import com.example.chat.repository.UserRepository;
+import com.example.chat.service.UserChangedEvent;
+import com.example.chat.service.UserIdentityCache;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Optional;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class UserIdentityCacheTests {
+
+    private final UserRepository userRepository = mock(UserRepository.class);
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    @Test
+    void lookupsByIdAndUsernameShareOneEntryUntilTheUserChanges() {
+        User alice = user("alice");
+        when(userRepository.findByUsername("alice")).thenReturn(Optional.of(alice));
+        UserIdentityCache cache = new UserIdentityCache(userRepository, meterRegistry, 100);
+
+        assertThat(cache.byUsername("alice")).map(UserIdentity::getId).contains(alice.getId());
+        assertThat(cache.byId(alice.getId())).map(UserIdentity::getUsername).contains("alice");
+        assertThat(cache.byIds(List.of(alice.getId()))).containsOnlyKeys(alice.getId());
+        verify(userRepository, times(1)).findByUsername("alice");
+        assertThat(meterRegistry.counter("chat.user-cache.requests", "result", "hit").count()).isEqualTo(2);
+
+        cache.invalidate(new UserChangedEvent(null, "alice"));
+        when(userRepository.findById(alice.getId())).thenReturn(Optional.of(alice));
+        cache.byId(alice.getId());
+        verify(userRepository).findById(alice.getId());
+    }
+
+    @Test
+    void leastRecentlyUsedUserIsEvictedPastTheBound() {
+        User alice = user("alice");
+        User bob = user("bob");
+        User carol = user("carol");
+        when(userRepository.findAllById(any())).thenReturn(List.of(alice, bob));
+        UserIdentityCache cache = new UserIdentityCache(userRepository, meterRegistry, 2);
+        cache.byIds(List.of(alice.getId(), bob.getId()));
+
+        cache.byId(alice.getId());
+        when(userRepository.findByUsername("carol")).thenReturn(Optional.of(carol));
+        cache.byUsername("carol");
+
+        assertThat(cache.size()).isEqualTo(2);
+        when(userRepository.findByUsername("bob")).thenReturn(Optional.of(bob));
+        cache.byUsername("bob");
+        verify(userRepository).findByUsername("bob");
+        cache.byUsername("carol");
+        verify(userRepository, times(1)).findByUsername("carol");
+    }
+
+    private static User user(String username) {
+        return User.builder().id(UUID.randomUUID()).username(username).password("secret").build();
+    }
+}
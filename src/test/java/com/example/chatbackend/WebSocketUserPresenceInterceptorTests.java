@@ -0,0 +1,64 @@
+package com.example.chatbackend;
+
+import com.example.chat.config.WebSocketUserPresenceInterceptor;
+import com.example.chat.service.JwtPrincipal;
+import com.example.chat.service.JwtProvider;
+import com.example.chat.service.UserIdentityCache;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.MessageChannel;
+import org.springframework.messaging.simp.stomp.StompCommand;
+import org.springframework.messaging.simp.stomp.StompHeaderAccessor;
+import org.springframework.messaging.support.MessageBuilder;
+import org.springframework.messaging.support.MessageHeaderAccessor;
+
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.Mockito.RETURNS_DEEP_STUBS;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verifyNoInteractions;
+
+class WebSocketUserPresenceInterceptorTests {
+
+    private final JwtProvider jwtProvider = new JwtProvider("testsecrettestsecrettestsecret123", 100, new SimpleMeterRegistry());
+    private final UserIdentityCache userIdentityCache = mock(UserIdentityCache.class);
+    @SuppressWarnings("unchecked")
+    private final WebSocketUserPresenceInterceptor interceptor = new WebSocketUserPresenceInterceptor(
+            mock(RedisTemplate.class, RETURNS_DEEP_STUBS), jwtProvider, userIdentityCache);
+
+    @Test
+    void connectBindsTheTokensUserToTheSession() {
+        UUID userId = UUID.randomUUID();
+        Message<?> connect = connect("Bearer " + jwtProvider.generateToken(userId, "alice"));
+
+        interceptor.preSend(connect, mock(MessageChannel.class));
+
+        assertThat(MessageHeaderAccessor.getAccessor(connect, StompHeaderAccessor.class).getUser())
+                .isInstanceOfSatisfying(JwtPrincipal.class, user -> {
+                    assertThat(user.getUserId()).isEqualTo(userId);
+                    assertThat(user.getName()).isEqualTo("alice");
+                });
+        verifyNoInteractions(userIdentityCache);
+    }
+
+    @Test
+    void connectWithoutAValidTokenIsRefused() {
+        assertThatThrownBy(() -> interceptor.preSend(connect(null), mock(MessageChannel.class)))
+                .hasMessageContaining("token");
+        assertThatThrownBy(() -> interceptor.preSend(connect("Bearer not-a-jwt"), mock(MessageChannel.class)))
+                .isInstanceOf(RuntimeException.class);
+    }
+
+    private static Message<?> connect(String authorization) {
+        StompHeaderAccessor accessor = StompHeaderAccessor.create(StompCommand.CONNECT);
+        if (authorization != null) {
+            accessor.setNativeHeader("Authorization", authorization);
+        }
+        accessor.setLeaveMutable(true);
+        return MessageBuilder.createMessage(new byte[0], accessor.getMessageHeaders());
+    }
+}